@@ -0,0 +1,95 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.nca.graph.transform.idmap.IdMap;
+import uk.gov.nca.graph.transform.idmap.IdMapType;
+
+/**
+ * Benchmarks looking up and adding IDs in each type of {@link IdMap}. Lookups are made from
+ * several threads at once, as they are when edges are transformed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IdMapBenchmark {
+
+    @Param({"HASH", "COMPACT", "MAPPED"})
+    public IdMapType idMapType;
+
+    @Param({"1000000"})
+    public int size;
+
+    private IdMap ids;
+    private IdMap populating;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ids = idMapType.create(null);
+        for (long i = 0; i < size; i++)
+            ids.put(i, i + size);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        populating = idMapType.create(null);
+        next = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        populating.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ids.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object get() {
+        return ids.get(ThreadLocalRandom.current().nextLong(size));
+    }
+
+    @Benchmark
+    public void put() {
+        //A single thread, so next doesn't need to be synchronised
+        long id = next++;
+        populating.put(id, id + size);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.benchmark;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.gov.nca.graph.transform.elasticsearch.IndexMode;
+import uk.gov.nca.graph.transform.elasticsearch.RawDocumentWriter;
+
+/**
+ * Benchmarks converting every vertex in a graph into a raw Elasticsearch document and index
+ * request, as the raw phase of TransformToElasticsearch does
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RawDocumentBenchmark {
+
+    private RawDocumentWriter writer;
+
+    @Setup
+    public void setup() throws IOException {
+        writer = new RawDocumentWriter("raw_");
+    }
+
+    @Benchmark
+    public void writeDocuments(SyntheticGraph graph, Blackhole blackhole) throws IOException {
+        Iterator<Vertex> vertices = graph.getGraph().vertices();
+        while (vertices.hasNext()) {
+            Vertex v = vertices.next();
+
+            byte[] doc = writer.write(v);
+            if (doc != null)
+                blackhole.consume(IndexMode.INDEX.request(writer.getIndex(v.label()), writer.getType(v.label()), String.valueOf(v.id()), doc));
+        }
+    }
+}
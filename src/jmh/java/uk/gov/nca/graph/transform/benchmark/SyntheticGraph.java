@@ -0,0 +1,72 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.benchmark;
+
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.gov.nca.graph.transform.loadtest.SyntheticGraphGenerator;
+import uk.gov.nca.graph.transform.loadtest.SyntheticGraphGenerator.Degree;
+
+/**
+ * A synthetic TinkerGraph, shared by the benchmarks that read a source graph. The number of
+ * vertices, the number of properties on each vertex, and the mean and distribution of vertex
+ * out degree are all parameters, so that each benchmark is run over graphs of different shapes.
+ *
+ * The graph is generated by {@link SyntheticGraphGenerator} from a fixed seed, so is the same
+ * for every run and every version.
+ */
+@State(Scope.Benchmark)
+public class SyntheticGraph {
+
+    @Param({"10000", "100000"})
+    public int vertices;
+
+    @Param({"4", "16"})
+    public int properties;
+
+    @Param({"5"})
+    public int meanDegree;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    public Degree degree;
+
+    private Graph graph;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        graph = new SyntheticGraphGenerator()
+            .setVertices(vertices)
+            .setProperties(properties)
+            .setMeanDegree(meanDegree)
+            .setDegree(degree)
+            .generate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        graph.close();
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+}
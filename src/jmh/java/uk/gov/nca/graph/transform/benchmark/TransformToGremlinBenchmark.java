@@ -0,0 +1,68 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToGremlin;
+import uk.gov.nca.graph.transform.TransformToGremlinOptions;
+import uk.gov.nca.graph.transform.idmap.IdMapType;
+
+/**
+ * Benchmarks transforming a graph into a new, empty, TinkerGraph with {@link TransformToGremlin}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformToGremlinBenchmark {
+
+    @Param({"HASH", "COMPACT"})
+    public IdMapType idMapType;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"true", "false"})
+    public boolean groupEdgesByOutVertex;
+
+    @Benchmark
+    public TransformResult transformGraph(SyntheticGraph graph) throws Exception {
+        TransformToGremlinOptions options = new TransformToGremlinOptions()
+            .setIdMapType(idMapType)
+            .setThreads(threads)
+            .setGroupEdgesByOutVertex(groupEdgesByOutVertex);
+
+        try (Graph target = TinkerGraph.open()) {
+            return TransformToGremlin.transformGraph(graph.getGraph(), target, options);
+        }
+    }
+}
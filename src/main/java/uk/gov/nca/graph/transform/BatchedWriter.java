@@ -0,0 +1,192 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import org.apache.tinkerpop.gremlin.process.remote.traversal.strategy.decoration.RemoteStrategy;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * Writes elements to a target graph in batches, submitting each batch as a single traversal
+ * rather than making a round trip per element. Each element is written by its own child
+ * traversal, created with {@link #addVertex(String)} or {@link #addEdge(Object, String, Object)}.
+ * A write which produces nothing (for instance, because the vertex an edge is attached to can't
+ * be found) is reported as not written, and doesn't affect the rest of the batch; but a write
+ * which throws an exception fails the whole batch.
+ *
+ * If the traversal source is remote (e.g. connected to Gremlin Server), then up to maxInFlight
+ * batches are submitted asynchronously at once. Otherwise batches are written synchronously on
+ * the calling thread, so that they are part of that thread's transaction.
+ *
+ * Callbacks are always called on the thread that calls {@link #add(GraphTraversal, BiConsumer)}
+ * or {@link #flush()}, with the ID of the new element; or null and the exception if the batch
+ * failed; or null and null if the element wasn't written. This class is not thread safe, and
+ * each thread should have its own instance.
+ */
+class BatchedWriter {
+
+  private static final String WRITTEN = "written";
+  private static final String INDEX = "i";
+  private static final String ID = "id";
+  private static final String OUT = "out";
+
+  private final GraphTraversalSource g;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final boolean remote;
+  private final Object writeLock;
+
+  private List<GraphTraversal<?, ? extends Element>> writes = new ArrayList<>();
+  private List<BiConsumer<Object, Exception>> callbacks = new ArrayList<>();
+  private final Deque<Batch> inFlight = new ArrayDeque<>();
+
+  /**
+   * Create a new writer, writing batchSize elements at a time through g. The writeLock, if not
+   * null, is held whilst writing synchronously.
+   */
+  BatchedWriter(GraphTraversalSource g, int batchSize, int maxInFlight, Object writeLock) {
+    this.g = g;
+    this.batchSize = Math.max(1, batchSize);
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.remote = g.getStrategies().getStrategy(RemoteStrategy.class).isPresent();
+    this.writeLock = writeLock;
+  }
+
+  /**
+   * Create a write which adds a vertex with the given label. Properties can be added to the
+   * returned traversal.
+   */
+  static GraphTraversal<Vertex, Vertex> addVertex(String label) {
+    return __.addV(label);
+  }
+
+  /**
+   * Create a write which adds an edge with the given label between two existing vertices.
+   * Properties can be added to the returned traversal. If either vertex doesn't exist, the write
+   * produces nothing rather than throwing an exception.
+   */
+  static GraphTraversal<Object, Edge> addEdge(Object outId, String label, Object inId) {
+    //Looking up the in vertex with to(__.V(inId)) throws if it is missing, so both vertices are found first
+    return __.V(outId).as(OUT).V(inId).addE(label).from(OUT);
+  }
+
+  /**
+   * Add the anonymous traversal write, which should create a single element, to the current
+   * batch, and submit the batch if it is full
+   */
+  void add(GraphTraversal<?, ? extends Element> write, BiConsumer<Object, Exception> callback) {
+    writes.add(write);
+    callbacks.add(callback);
+
+    if (writes.size() >= batchSize)
+      submit();
+  }
+
+  /**
+   * Submit the current batch, and wait for all submitted batches to complete
+   */
+  void flush() {
+    submit();
+
+    while (!inFlight.isEmpty())
+      complete(inFlight.poll());
+  }
+
+  private void submit() {
+    if (writes.isEmpty())
+      return;
+
+    //A single traverser passes through every write, each of which records the ID it created
+    GraphTraversal<Integer, Integer> traversal = g.inject(0);
+    for (int i = 0; i < writes.size(); i++)
+      traversal = traversal.sideEffect(writes.get(i).project(INDEX, ID).by(__.constant(i)).by(T.id).store(WRITTEN));
+
+    GraphTraversal<Integer, Collection<Map<String, Object>>> batch = traversal.cap(WRITTEN);
+
+    CompletableFuture<Collection<Map<String, Object>>> future;
+    if (remote) {
+      future = batch.promise(t -> t.next());
+    } else {
+      future = new CompletableFuture<>();
+      try {
+        future.complete(write(batch));
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    inFlight.add(new Batch(future, callbacks));
+    writes = new ArrayList<>();
+    callbacks = new ArrayList<>();
+
+    //Process completed batches in order, waiting for the oldest if too many are in flight
+    while (!inFlight.isEmpty() && (inFlight.size() > maxInFlight || inFlight.peek().future.isDone()))
+      complete(inFlight.poll());
+  }
+
+  private Collection<Map<String, Object>> write(GraphTraversal<Integer, Collection<Map<String, Object>>> batch) {
+    if (writeLock == null)
+      return batch.next();
+
+    synchronized (writeLock) {
+      return batch.next();
+    }
+  }
+
+  private static void complete(Batch batch) {
+    Collection<Map<String, Object>> written;
+    try {
+      written = batch.future.join();
+    } catch (CompletionException ce) {
+      Exception e = ce.getCause() instanceof Exception ? (Exception) ce.getCause() : ce;
+      batch.callbacks.forEach(c -> c.accept(null, e));
+      return;
+    }
+
+    Map<Integer, Object> ids = new HashMap<>();
+    for (Map<String, Object> w : written)
+      ids.put(((Number) w.get(INDEX)).intValue(), w.get(ID));
+
+    for (int i = 0; i < batch.callbacks.size(); i++)
+      batch.callbacks.get(i).accept(ids.get(i), null);
+  }
+
+  private static class Batch {
+    private final CompletableFuture<Collection<Map<String, Object>>> future;
+    private final List<BiConsumer<Object, Exception>> callbacks;
+
+    Batch(CompletableFuture<Collection<Map<String, Object>>> future, List<BiConsumer<Object, Exception>> callbacks) {
+      this.future = future;
+      this.callbacks = callbacks;
+    }
+  }
+}
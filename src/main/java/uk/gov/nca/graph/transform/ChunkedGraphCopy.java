@@ -0,0 +1,390 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty.Cardinality;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+import org.apache.tinkerpop.gremlin.structure.io.gryo.GryoMapper;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
+import org.apache.tinkerpop.shaded.kryo.io.Input;
+import org.apache.tinkerpop.shaded.kryo.io.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.idmap.IdMap;
+import uk.gov.nca.graph.transform.idmap.IdMapType;
+import uk.gov.nca.graph.transform.partition.AutoVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+
+/**
+ * Copies a graph via a set of compressed chunk files on local disk, so that the copy can be
+ * written and read in parallel.
+ *
+ * The source graph is split into partitions, and for each partition a vertex chunk and an edge
+ * chunk (containing the out edges of the partition's vertices) are written in parallel. All the
+ * vertex chunks are then read into the target graph in parallel, followed by all the edge chunks.
+ *
+ * Each chunk is a GZIP compressed stream of records, read and written through NIO file channels.
+ * Each record is preceded by a true marker, and the stream ends with a false marker. IDs and
+ * property values are serialised with the Gryo mapper of the source graph, which is used for reading
+ * the chunks as well so that any custom serialisers registered by the source graph are applied.
+ * Meta-properties are not copied.
+ */
+class ChunkedGraphCopy {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedGraphCopy.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long COMMIT_SIZE = 10000;
+
+  private ChunkedGraphCopy(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Copy source into target, using chunkCount chunks and threads. Returns true if successful.
+   */
+  static boolean copy(Graph source, Graph target, int chunkCount) {
+    Path directory;
+    try {
+      directory = Files.createTempDirectory("copygraph");
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to create temporary directory", ioe);
+      return false;
+    }
+
+    TransformResult result = new TransformResult();
+    ExecutorService executor = Workers.newExecutor("copygraph", chunkCount, false);
+
+    //Kryo instances aren't thread safe, so each task creates its own from the same mapper
+    GryoMapper mapper = source.io(IoCore.gryo()).mapper().create();
+
+    try (IdMap ids = IdMapType.COMPACT.create(null)) {
+      List<VertexPartition> partitions = new AutoVertexPartitioner().partition(source, chunkCount);
+
+      LOGGER.info("Writing source graph into {} chunks in {}", partitions.size(), directory);
+      Map<String, Runnable> writeTasks = new LinkedHashMap<>();
+      for (int i = 0; i < partitions.size(); i++) {
+        VertexPartition partition = partitions.get(i);
+        Path vertexFile = vertexFile(directory, i);
+        Path edgeFile = edgeFile(directory, i);
+
+        writeTasks.put("Write chunk " + i, () -> writeChunk(source, mapper, partition, vertexFile, edgeFile));
+      }
+
+      if (!Workers.runAll(executor, writeTasks, true, result))
+        return false;
+
+      //Graphs without transactions (e.g. TinkerGraph) generally aren't safe for concurrent writes
+      Object writeLock = target.features().graph().supportsTransactions() ? null : new Object();
+
+      LOGGER.info("Reading vertex chunks into target graph");
+      Map<String, Runnable> vertexTasks = new LinkedHashMap<>();
+      for (int i = 0; i < partitions.size(); i++) {
+        Path vertexFile = vertexFile(directory, i);
+        vertexTasks.put("Read vertex chunk " + i, () -> readVertices(target, mapper, vertexFile, ids, writeLock, result));
+      }
+
+      if (!Workers.runAll(executor, vertexTasks, true, result))
+        return false;
+
+      ids.freeze();
+
+      LOGGER.info("Reading edge chunks into target graph");
+      Map<String, Runnable> edgeTasks = new LinkedHashMap<>();
+      for (int i = 0; i < partitions.size(); i++) {
+        Path edgeFile = edgeFile(directory, i);
+        edgeTasks.put("Read edge chunk " + i, () -> readEdges(target, mapper, edgeFile, ids, writeLock, result));
+      }
+
+      if (!Workers.runAll(executor, edgeTasks, true, result))
+        return false;
+
+      if (!result.isSuccessful())
+        LOGGER.error("Failures occurred whilst copying graph: {}", result.getFailures());
+
+      return result.isSuccessful();
+    } finally {
+      Workers.shutdown(executor);
+      deleteDirectory(directory);
+    }
+  }
+
+  private static Path vertexFile(Path directory, int chunk) {
+    return directory.resolve("vertices-" + chunk + ".gz");
+  }
+
+  private static Path edgeFile(Path directory, int chunk) {
+    return directory.resolve("edges-" + chunk + ".gz");
+  }
+
+  private static void writeChunk(Graph source, GryoMapper mapper, VertexPartition partition, Path vertexFile, Path edgeFile) {
+    Kryo kryo = mapper.createMapper();
+
+    try (Output output = openOutput(vertexFile)) {
+      Iterator<Vertex> vertices = partition.traversal(source.traversal());
+      while (vertices.hasNext()) {
+        checkInterrupted();
+        writeVertex(kryo, output, vertices.next());
+      }
+      output.writeBoolean(false);
+    }
+
+    try (Output output = openOutput(edgeFile)) {
+      Iterator<Edge> edges = partition.traversal(source.traversal()).outE();
+      while (edges.hasNext()) {
+        checkInterrupted();
+        writeEdge(kryo, output, edges.next());
+      }
+      output.writeBoolean(false);
+    }
+  }
+
+  private static void writeVertex(Kryo kryo, Output output, Vertex v) {
+    output.writeBoolean(true);
+    kryo.writeClassAndObject(output, v.id());
+    output.writeString(v.label());
+
+    List<VertexProperty<Object>> properties = new ArrayList<>();
+    v.properties().forEachRemaining(properties::add);
+
+    output.writeVarInt(properties.size(), true);
+    for (VertexProperty<Object> p : properties) {
+      output.writeString(p.key());
+      kryo.writeClassAndObject(output, p.value());
+    }
+  }
+
+  private static void writeEdge(Kryo kryo, Output output, Edge e) {
+    output.writeBoolean(true);
+    kryo.writeClassAndObject(output, e.id());
+    output.writeString(e.label());
+    kryo.writeClassAndObject(output, e.outVertex().id());
+    kryo.writeClassAndObject(output, e.inVertex().id());
+
+    List<Property<Object>> properties = new ArrayList<>();
+    e.properties().forEachRemaining(properties::add);
+
+    output.writeVarInt(properties.size(), true);
+    for (Property<Object> p : properties) {
+      output.writeString(p.key());
+      kryo.writeClassAndObject(output, p.value());
+    }
+  }
+
+  private static void readVertices(Graph target, GryoMapper mapper, Path vertexFile, IdMap ids, Object writeLock, TransformResult result) {
+    Kryo kryo = mapper.createMapper();
+    Graph.Features.VertexFeatures features = target.features().vertex();
+    CommitBatcher batcher = new CommitBatcher(target, "vertex", COMMIT_SIZE, 0, result);
+
+    //IDs are only published once their batch is committed, so that edges aren't attached to rolled back vertices
+    boolean transactional = target.features().graph().supportsTransactions();
+    List<Object> pendingIds = new ArrayList<>();
+    batcher.setCommitListener(committed -> {
+      if (committed) {
+        for (int i = 0; i < pendingIds.size(); i += 2)
+          ids.put(pendingIds.get(i), pendingIds.get(i + 1));
+      }
+      pendingIds.clear();
+    });
+
+    try (Input input = openInput(vertexFile)) {
+      while (input.readBoolean()) {
+        checkInterrupted();
+
+        Object id = kryo.readClassAndObject(input);
+        String label = input.readString();
+
+        List<Object> vertexArguments = new ArrayList<>();
+        vertexArguments.add(T.label);
+        vertexArguments.add(label);
+
+        if (features.supportsUserSuppliedIds() && features.willAllowId(id)) {
+          vertexArguments.add(T.id);
+          vertexArguments.add(id);
+        }
+
+        //Keys which appear more than once are multi-properties, and have to be added individually
+        Map<String, List<Object>> properties = readProperties(kryo, input);
+        List<Object> multiProperties = new ArrayList<>();
+        properties.forEach((k, values) -> {
+          for (Object value : values) {
+            List<Object> arguments = values.size() == 1 ? vertexArguments : multiProperties;
+            arguments.add(k);
+            arguments.add(value);
+          }
+        });
+
+        try {
+          Vertex v = locked(writeLock, () -> {
+            Vertex newV = target.addVertex(vertexArguments.toArray());
+            for (int i = 0; i < multiProperties.size(); i += 2)
+              newV.property(Cardinality.list, (String) multiProperties.get(i), multiProperties.get(i + 1));
+
+            return newV;
+          });
+
+          if (transactional) {
+            pendingIds.add(id);
+            pendingIds.add(v.id());
+          } else {
+            ids.put(id, v.id());
+          }
+          batcher.added(v);
+        } catch (Exception e) {
+          batcher.failed(id, e);
+        }
+      }
+    } finally {
+      batcher.commit();
+    }
+  }
+
+  private static void readEdges(Graph target, GryoMapper mapper, Path edgeFile, IdMap ids, Object writeLock, TransformResult result) {
+    Kryo kryo = mapper.createMapper();
+    Graph.Features.EdgeFeatures features = target.features().edge();
+    CommitBatcher batcher = new CommitBatcher(target, "edge", COMMIT_SIZE, 0, result);
+
+    VertexCache cache = new VertexCache(target, 10000);
+    if (target.features().graph().supportsTransactions())
+      batcher.setCommitListener(committed -> cache.clear());
+
+    try (Input input = openInput(edgeFile)) {
+      while (input.readBoolean()) {
+        checkInterrupted();
+
+        Object id = kryo.readClassAndObject(input);
+        String label = input.readString();
+        Object outId = ids.get(kryo.readClassAndObject(input));
+        Object inId = ids.get(kryo.readClassAndObject(input));
+        Map<String, List<Object>> properties = readProperties(kryo, input);
+
+        Vertex out = outId == null ? null : cache.get(outId);
+        Vertex in = inId == null ? null : cache.get(inId);
+        if (out == null || in == null) {
+          LOGGER.warn("Couldn't find vertices for edge {}", id);
+          result.increment("edge.skipped", 1);
+          continue;
+        }
+
+        List<Object> edgeArguments = new ArrayList<>();
+        if (features.supportsUserSuppliedIds() && features.willAllowId(id)) {
+          edgeArguments.add(T.id);
+          edgeArguments.add(id);
+        }
+        properties.forEach((k, values) -> {
+          edgeArguments.add(k);
+          edgeArguments.add(values.get(values.size() - 1));
+        });
+
+        try {
+          Edge e = locked(writeLock, () -> out.addEdge(label, in, edgeArguments.toArray()));
+          batcher.added(e);
+        } catch (Exception e) {
+          batcher.failed(id, e);
+        }
+      }
+    } finally {
+      batcher.commit();
+    }
+  }
+
+  private static Map<String, List<Object>> readProperties(Kryo kryo, Input input) {
+    int count = input.readVarInt(true);
+
+    Map<String, List<Object>> properties = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      String key = input.readString();
+      properties.computeIfAbsent(key, k -> new ArrayList<>(1)).add(kryo.readClassAndObject(input));
+    }
+
+    return properties;
+  }
+
+  private static <R> R locked(Object writeLock, Supplier<R> writer) {
+    if (writeLock == null)
+      return writer.get();
+
+    synchronized (writeLock) {
+      return writer.get();
+    }
+  }
+
+  private static void checkInterrupted() {
+    if (Thread.currentThread().isInterrupted())
+      throw new CancellationException(Thread.currentThread().getName() + " has been cancelled");
+  }
+
+  private static Output openOutput(Path file) {
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) {
+        {
+          //Favour speed over size, as chunks are only temporary
+          def.setLevel(Deflater.BEST_SPEED);
+        }
+      };
+
+      return new Output(gzip, BUFFER_SIZE);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Unable to open chunk " + file + " for writing", ioe);
+    }
+  }
+
+  private static Input openInput(Path file) {
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+      return new Input(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Unable to open chunk " + file + " for reading", ioe);
+    }
+  }
+
+  private static void deleteDirectory(Path directory) {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    } catch (IOException ioe) {
+      LOGGER.warn("Unable to delete temporary directory {}", directory, ioe);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Commits elements written to a graph in batches, limited by number of elements and/or an
+ * estimate of their size in bytes, so that transactional graphs don't have to hold an entire
+ * transformation in a single transaction.
+ *
+ * The time taken by each commit is recorded in the result as elementType.commitLatency.
+ *
+ * A batch that fails to commit is rolled back and recorded as a failure, but doesn't prevent
+ * subsequent batches from being committed. For graphs that don't support transactions,
+ * batches are counted but nothing is committed.
+ *
+ * Transactions in TinkerPop are bound to a thread, so an instance of this class must only be
+ * used by a single thread.
+ */
+class CommitBatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CommitBatcher.class);
+
+  private final Graph graph;
+  private final boolean transactional;
+  private final String elementType;
+  private final long maxElements;
+  private final long maxBytes;
+  private final TransformResult result;
+
+  private Consumer<Boolean> commitListener = null;
+
+  private long batch = 1;
+  private long elements = 0;
+  private long bytes = 0;
+  private long failures = 0;
+  private long total = 0;
+  private long totalFailed = 0;
+
+  /**
+   * Create a new batcher for the given elementType (used in logs and the result), which commits
+   * after maxElements or maxBytes (whichever comes first). A limit of 0 or less is ignored.
+   */
+  CommitBatcher(Graph graph, String elementType, long maxElements, long maxBytes, TransformResult result) {
+    this.graph = graph;
+    this.transactional = graph.features().graph().supportsTransactions();
+    this.elementType = elementType;
+    this.maxElements = maxElements;
+    this.maxBytes = maxBytes;
+    this.result = result;
+  }
+
+  /**
+   * Set a listener to be called at the end of every batch, with true if the batch has been
+   * committed (or the graph doesn't support transactions) or false if it was rolled back. This
+   * can be used, for instance, to discard elements bound to the previous transaction.
+   */
+  void setCommitListener(Consumer<Boolean> commitListener) {
+    this.commitListener = commitListener;
+  }
+
+  /**
+   * Record that element has been written to the graph, committing the batch if it is full
+   */
+  void added(Element element) {
+    elements++;
+    total++;
+
+    if (maxBytes > 0)
+      bytes += estimateSize(element);
+
+    commitIfFull();
+  }
+
+  /**
+   * Record that an element with the given label and properties (as alternating keys and values)
+   * has been written to the graph, committing the batch if it is full. This is used where the
+   * written element itself isn't available.
+   */
+  void added(String label, List<Object> keyValues) {
+    elements++;
+    total++;
+
+    if (maxBytes > 0) {
+      long size = label.length();
+      for (int i = 0; i + 1 < keyValues.size(); i += 2)
+        size += estimateSize(String.valueOf(keyValues.get(i)), keyValues.get(i + 1));
+
+      bytes += size;
+    }
+
+    commitIfFull();
+  }
+
+  private void commitIfFull() {
+    if ((maxElements > 0 && elements >= maxElements) || (maxBytes > 0 && bytes >= maxBytes))
+      commit();
+  }
+
+  /**
+   * Record that an element couldn't be written to the graph, as part of the current batch
+   */
+  void failed(Object sourceId, Exception e) {
+    LOGGER.warn("Unable to write {} {} in batch {}", elementType, sourceId, batch, e);
+    failures++;
+  }
+
+  /**
+   * Commit the current batch, if there is anything in it
+   */
+  void commit() {
+    if (elements == 0 && failures == 0)
+      return;
+
+    if (transactional) {
+      long start = System.currentTimeMillis();
+      try {
+        graph.tx().commit();
+        result.recordLatency(elementType + ".commitLatency", System.currentTimeMillis() - start);
+      } catch (Exception e) {
+        LOGGER.error("Unable to commit {} batch {}, containing {} {}s", elementType, batch, elements, elementType, e);
+        rollback();
+
+        result.increment(elementType + ".failed", elements);
+        totalFailed += elements;
+        failures = 0;
+        result.addFailure("Unable to commit " + elementType + " batch " + batch + ": " + e.getMessage());
+
+        nextBatch(false);
+        return;
+      }
+    }
+
+    result.increment(elementType, elements);
+    if (failures > 0) {
+      result.increment(elementType + ".failed", failures);
+      totalFailed += failures;
+      result.addFailure(failures + " " + elementType + "s couldn't be written in batch " + batch);
+    }
+
+    if (transactional)
+      LOGGER.info("Committed {} batch {}, {} {}s processed in total", elementType, batch, total, elementType);
+
+    nextBatch(true);
+  }
+
+  private void rollback() {
+    try {
+      graph.tx().rollback();
+    } catch (Exception e) {
+      LOGGER.warn("Unable to roll back {} batch {}", elementType, batch, e);
+    }
+  }
+
+  /**
+   * Returns the total number of elements which have failed to be written or committed
+   */
+  long getFailed() {
+    return totalFailed;
+  }
+
+  private void nextBatch(boolean committed) {
+    if (commitListener != null)
+      commitListener.accept(committed);
+
+    batch++;
+    elements = 0;
+    bytes = 0;
+    failures = 0;
+  }
+
+  private static long estimateSize(Element element) {
+    long size = element.label().length();
+
+    Iterator<? extends Property<Object>> properties = element.properties();
+    while (properties.hasNext()) {
+      Property<Object> property = properties.next();
+      size += estimateSize(property.key(), property.value());
+    }
+
+    return size;
+  }
+
+  private static long estimateSize(String key, Object value) {
+    if (value instanceof CharSequence)
+      return key.length() + ((CharSequence) value).length();
+
+    return key.length() + 8L;
+  }
+}
@@ -18,8 +18,16 @@ package uk.gov.nca.graph.transform;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.nca.graph.utils.GraphUtils;
@@ -27,21 +35,66 @@ import uk.gov.nca.graph.utils.GraphUtils;
 /**
  * Utility to help copy one graph into another.
  *
- * This is done by temporarily writing the source graph into a Gryo file, and then
- * reading this back into the target graph.
+ * By default, this is done by serialising the source graph into Gryo on one thread, whilst
+ * simultaneously deserialising it into the target graph on another, via a bounded in-memory pipe.
+ * Alternatively, the source graph can be written to disk (either as a single temporary Gryo file,
+ * or as a set of compressed chunks which can be written and read in parallel) and then read back
+ * into the target graph.
  */
 public class CopyGraph {
   private static final Logger LOGGER = LoggerFactory.getLogger(CopyGraph.class);
+  private static final int PIPE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * How the graph is transferred from the source to the target
+   */
+  public enum Mode {
+    /**
+     * Stream the graph through a bounded in-memory pipe, reading and writing at the same time
+     */
+    STREAM,
+
+    /**
+     * Write the whole graph into a temporary file before reading it back, for readers which
+     * require random access to the data
+     */
+    TEMP_FILE,
+
+    /**
+     * Write the graph into a set of compressed chunk files in parallel, and then read them
+     * back in parallel; vertices first, followed by edges
+     */
+    CHUNKED
+  }
 
   private CopyGraph(){
     //Do nothing
   }
 
   /**
-   * Copies the source graph into the target graph. If dropExisting is set to true,
-   * then any existing data in the target graph is first removed.
+   * Copies the source graph into the target graph, streaming the data between them. If
+   * dropExisting is set to true, then any existing data in the target graph is first removed.
    */
   public static boolean copyGraph(Graph source, Graph target, boolean dropExisting) {
+    return copyGraph(source, target, dropExisting, Mode.STREAM);
+  }
+
+  /**
+   * Copies the source graph into the target graph, using the specified mode. If dropExisting
+   * is set to true, then any existing data in the target graph is first removed.
+   */
+  public static boolean copyGraph(Graph source, Graph target, boolean dropExisting, Mode mode) {
+    return copyGraph(source, target, dropExisting, mode, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Copies the source graph into the target graph, using the specified mode. If dropExisting
+   * is set to true, then any existing data in the target graph is first removed.
+   *
+   * The number of threads is only used by {@link Mode#CHUNKED}, which writes one chunk of
+   * vertices and one chunk of edges per thread.
+   */
+  public static boolean copyGraph(Graph source, Graph target, boolean dropExisting, Mode mode, int threads) {
     if(dropExisting){
       LOGGER.info("Clearing existing target graph");
       GraphUtils.clearGraph(target);
@@ -52,6 +105,16 @@ public class CopyGraph {
       }
     }
 
+    if(mode == Mode.TEMP_FILE)
+      return copyViaTempFile(source, target);
+
+    if(mode == Mode.CHUNKED)
+      return ChunkedGraphCopy.copy(source, target, Math.max(1, threads));
+
+    return copyViaStream(source, target);
+  }
+
+  private static boolean copyViaTempFile(Graph source, Graph target) {
     LOGGER.info("Creating temporary file");
 
     File tempFile;
@@ -79,4 +142,52 @@ public class CopyGraph {
 
     return writeResult;
   }
+
+  private static boolean copyViaStream(Graph source, Graph target) {
+    LOGGER.info("Streaming Gryo from source graph to target graph");
+
+    PipedOutputStream pipeOut = new PipedOutputStream();
+    PipedInputStream pipeIn;
+    try {
+      pipeIn = new PipedInputStream(pipeOut, PIPE_BUFFER_SIZE);
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to create pipe", ioe);
+      return false;
+    }
+
+    ExecutorService executor = Workers.newExecutor("copygraph-writer", 1, false);
+    try {
+      Future<?> writer = executor.submit(() -> {
+        try (OutputStream out = pipeOut) {
+          source.io(IoCore.gryo()).writer().create().writeGraph(out, source);
+        }
+        return null;
+      });
+
+      boolean readResult = true;
+      try (InputStream in = pipeIn) {
+        target.io(IoCore.gryo()).reader().create().readGraph(in, target);
+        GraphUtils.commitGraph(target);
+      } catch (Exception e) {
+        //Closing the pipe (which happens automatically here) stops the writer from blocking
+        LOGGER.error("Unable to read Gryo into target graph", e);
+        readResult = false;
+      }
+
+      try {
+        writer.get();
+      } catch (ExecutionException ee) {
+        LOGGER.error("Unable to write Gryo from source graph", ee.getCause());
+        return false;
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        LOGGER.error("Interrupted whilst waiting for source graph to be written");
+        return false;
+      }
+
+      return readResult;
+    } finally {
+      Workers.shutdown(executor);
+    }
+  }
 }
@@ -0,0 +1,150 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.ScanResult;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.rules.TransformRule;
+
+/**
+ * Finds the {@link TransformRule}s to use in a transformation, without scanning the whole
+ * classpath unless it has to. Rules are found, in order of preference, by:
+ *
+ * <ol>
+ *   <li>An explicit list of rule classes and/or packages containing rules, where only the
+ *   listed packages are scanned</li>
+ *   <li>Rules registered with {@link ServiceLoader}, in a
+ *   <code>META-INF/services/uk.gov.nca.graph.transform.rules.TransformRule</code> file</li>
+ *   <li>Scanning the whole classpath for implementations of TransformRule</li>
+ * </ol>
+ *
+ * The results of scanning are cached, so that repeated transformations within the same JVM
+ * don't need to scan again.
+ */
+class RuleDiscovery {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RuleDiscovery.class);
+
+  private static final Map<Set<String>, List<Class<? extends TransformRule>>> SCAN_CACHE = new ConcurrentHashMap<>();
+
+  private RuleDiscovery(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Returns the concrete rule classes named by, or in the packages named by, rules. If rules is
+   * empty, then rules registered with ServiceLoader are returned, or if there aren't any then
+   * the whole classpath is scanned.
+   */
+  static List<Class<? extends TransformRule>> discover(Collection<String> rules) {
+    if (rules != null && !rules.isEmpty())
+      return fromAllowlist(rules);
+
+    List<Class<? extends TransformRule>> services = fromServiceLoader();
+    if (!services.isEmpty()) {
+      LOGGER.info("Found {} TransformRules registered with ServiceLoader", services.size());
+      return services;
+    }
+
+    LOGGER.info("No TransformRules are registered with ServiceLoader, so the whole classpath will be scanned");
+    return scan(Collections.emptySet());
+  }
+
+  private static List<Class<? extends TransformRule>> fromAllowlist(Collection<String> rules) {
+    Set<Class<? extends TransformRule>> classes = new LinkedHashSet<>();
+    Set<String> packages = new LinkedHashSet<>();
+
+    for (String name : rules) {
+      Class<?> clazz;
+      try {
+        clazz = Class.forName(name);
+      } catch (ClassNotFoundException e) {
+        //Not a class, so assume it's a package
+        packages.add(name);
+        continue;
+      }
+
+      if (TransformRule.class.isAssignableFrom(clazz) && isConcrete(clazz)) {
+        classes.add(clazz.asSubclass(TransformRule.class));
+      } else {
+        LOGGER.warn("{} is not a concrete TransformRule, and will be ignored", name);
+      }
+    }
+
+    if (!packages.isEmpty())
+      classes.addAll(scan(packages));
+
+    return new ArrayList<>(classes);
+  }
+
+  private static List<Class<? extends TransformRule>> fromServiceLoader() {
+    List<Class<? extends TransformRule>> classes = new ArrayList<>();
+
+    Iterator<TransformRule> iter = ServiceLoader.load(TransformRule.class).iterator();
+    while (true) {
+      try {
+        if (!iter.hasNext())
+          break;
+
+        classes.add(iter.next().getClass());
+      } catch (ServiceConfigurationError e) {
+        LOGGER.error("Couldn't load TransformRule registered with ServiceLoader", e);
+      }
+    }
+
+    return classes;
+  }
+
+  private static List<Class<? extends TransformRule>> scan(Set<String> packages) {
+    return SCAN_CACHE.computeIfAbsent(packages, p -> {
+      long start = System.currentTimeMillis();
+
+      ClassGraph classGraph = new ClassGraph().enableClassInfo();
+      if (!p.isEmpty())
+        classGraph.whitelistPackages(p.toArray(new String[0]));
+
+      List<Class<? extends TransformRule>> classes = new ArrayList<>();
+      try (ScanResult sr = classGraph.scan()) {
+        for (Class<TransformRule> clazz : sr.getClassesImplementing(TransformRule.class.getName()).loadClasses(TransformRule.class, true)) {
+          if (isConcrete(clazz))
+            classes.add(clazz);
+        }
+      }
+
+      LOGGER.info("Found {} TransformRules in {} ms by scanning {}", classes.size(), System.currentTimeMillis() - start, p.isEmpty() ? "the classpath" : p);
+      return Collections.unmodifiableList(classes);
+    });
+  }
+
+  private static boolean isConcrete(Class<?> clazz) {
+    return !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers());
+  }
+}
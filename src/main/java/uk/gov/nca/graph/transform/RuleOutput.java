@@ -0,0 +1,114 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.elasticsearch.BulkSink;
+import uk.gov.nca.graph.transform.elasticsearch.IndexMode;
+import uk.gov.nca.graph.transform.rules.TransformRule;
+
+/**
+ * Sink for the objects produced by a {@link TransformRule}, which adds them to bulk requests and
+ * submits them to the pipeline as they fill up, so that the rule's output isn't held in memory.
+ * Objects are counted in the result, under rule. followed by the rule's simple name, as they are
+ * submitted, so that the rate at which each rule produces output can be monitored.
+ *
+ * This class is not thread safe, so each thread producing output for a rule should have its own
+ * instance.
+ */
+class RuleOutput implements Consumer<Map<String, Object>> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RuleOutput.class);
+
+  /**
+   * Prefix of the checkpoint task recording that a rule has completed
+   */
+  static final String TASK_PREFIX = "rule/";
+
+  private final TransformRule rule;
+  private final BulkSink pipeline;
+  private final String index;
+  private final IndexMode indexMode;
+  private final Collection<CompletableFuture<Void>> submitted;
+  private final TransformResult result;
+  private final String counter;
+
+  private BulkRequest br = new BulkRequest();
+  private long count = 0;
+
+  /**
+   * Create a new output for rule, writing to indices prefixed with indexPrefix. If submitted
+   * isn't null, then the future of each submitted bulk request is added to it.
+   */
+  RuleOutput(TransformRule rule, BulkSink pipeline, String indexPrefix, IndexMode indexMode, Collection<CompletableFuture<Void>> submitted, TransformResult result) {
+    this.rule = rule;
+    this.pipeline = pipeline;
+    this.index = (indexPrefix + rule.getIndex()).toLowerCase();
+    this.indexMode = indexMode;
+    this.submitted = submitted;
+    this.result = result;
+    this.counter = "rule." + rule.getClass().getSimpleName();
+  }
+
+  @Override
+  public void accept(Map<String, Object> obj) {
+    if(Thread.currentThread().isInterrupted())
+      throw new CancellationException("Rule " + rule.getClass().getSimpleName() + " has been cancelled");
+
+    br.add(indexMode.request(index, rule.getType(), rule.getId(obj), obj));
+    count++;
+
+    //Flush whilst the rule is still producing output, so we don't hold the whole output in memory
+    if (pipeline.isFull(br)) {
+      submit();
+
+      LOGGER.info("{} has ingested {} objects produced by rule {}", Thread.currentThread().getName(), count, rule.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Submit any objects which haven't yet been submitted
+   */
+  void flush() {
+    if (br.numberOfActions() > 0)
+      submit();
+  }
+
+  /**
+   * Returns the number of objects produced so far
+   */
+  long getCount() {
+    return count;
+  }
+
+  private void submit() {
+    result.increment(counter, br.numberOfActions());
+
+    CompletableFuture<Void> future = pipeline.submit(br);
+    if (submitted != null)
+      submitted.add(future);
+
+    br = new BulkRequest();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.metrics.LatencyHistogram;
+
+/**
+ * The outcome of a transformation, recording any failures that occurred alongside counts of
+ * the elements that were processed. This class is thread safe.
+ *
+ * Whilst the transformation is running, the counts, along with latency histograms and gauges
+ * of its current state, can be read to monitor progress (see
+ * {@link uk.gov.nca.graph.transform.metrics.MetricsPublisher}).
+ */
+public class TransformResult {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransformResult.class);
+
+  private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+  private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+  private volatile boolean cancelled = false;
+
+  /**
+   * Record a failure, described by message
+   */
+  public void addFailure(String message) {
+    failures.add(message);
+  }
+
+  /**
+   * Record that the transformation was cancelled before it could complete
+   */
+  public void setCancelled() {
+    cancelled = true;
+  }
+
+  /**
+   * Increment the named counter by delta
+   */
+  public void increment(String counter, long delta) {
+    counts.computeIfAbsent(counter, k -> new AtomicLong()).addAndGet(delta);
+  }
+
+  /**
+   * Returns the current value of the named counter, or 0 if it has never been incremented
+   */
+  public long getCount(String counter) {
+    AtomicLong count = counts.get(counter);
+    return count == null ? 0L : count.get();
+  }
+
+  /**
+   * Returns a sorted copy of all counters
+   */
+  public Map<String, Long> getCounts() {
+    Map<String, Long> copy = new TreeMap<>();
+    counts.forEach((k, v) -> copy.put(k, v.get()));
+
+    return copy;
+  }
+
+  /**
+   * Record a latency, in milliseconds, in the named histogram
+   */
+  public void recordLatency(String histogram, long millis) {
+    histograms.computeIfAbsent(histogram, k -> new LatencyHistogram()).record(millis);
+  }
+
+  /**
+   * Returns a sorted copy of all histograms
+   */
+  public Map<String, LatencyHistogram> getHistograms() {
+    return new TreeMap<>(histograms);
+  }
+
+  /**
+   * Add a gauge, which reports the current value of something (such as a queue length) each
+   * time it is read, replacing any existing gauge with the same name
+   */
+  public void addGauge(String gauge, Supplier<? extends Number> value) {
+    gauges.put(gauge, value);
+  }
+
+  /**
+   * Remove the named gauge, for instance once the thing it measures no longer exists
+   */
+  public void removeGauge(String gauge) {
+    gauges.remove(gauge);
+  }
+
+  /**
+   * Returns the current value of all gauges, sorted by name. Gauges which can't currently be
+   * read are omitted.
+   */
+  public Map<String, Number> getGauges() {
+    Map<String, Number> values = new TreeMap<>();
+    gauges.forEach((k, v) -> {
+      try {
+        Number value = v.get();
+        if (value != null)
+          values.put(k, value);
+      } catch (RuntimeException e) {
+        LOGGER.debug("Unable to read gauge {}", k, e);
+      }
+    });
+
+    return values;
+  }
+
+  /**
+   * Returns a copy of the failures recorded so far
+   */
+  public List<String> getFailures() {
+    synchronized (failures) {
+      return new ArrayList<>(failures);
+    }
+  }
+
+  /**
+   * Returns true if the transformation was cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Returns true if the transformation ran to completion without any failures
+   */
+  public boolean isSuccessful() {
+    return !cancelled && failures.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "TransformResult{successful=" + isSuccessful() + ", cancelled=" + cancelled
+        + ", counts=" + getCounts() + ", failures=" + getFailures().size() + "}";
+  }
+}
@@ -16,26 +16,51 @@ limitations under the License.
 
 package uk.gov.nca.graph.transform;
 
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ScanResult;
 import java.io.IOException;
-import java.lang.reflect.Modifier;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.checkpoint.Checkpoint;
+import uk.gov.nca.graph.transform.delta.DeltaState;
+import uk.gov.nca.graph.transform.elasticsearch.BulkController;
+import uk.gov.nca.graph.transform.elasticsearch.BulkFileLoader;
+import uk.gov.nca.graph.transform.elasticsearch.BulkFileSink;
+import uk.gov.nca.graph.transform.elasticsearch.BulkPipeline;
+import uk.gov.nca.graph.transform.elasticsearch.BulkSink;
+import uk.gov.nca.graph.transform.elasticsearch.IndexBootstrap;
+import uk.gov.nca.graph.transform.elasticsearch.IndexMode;
+import uk.gov.nca.graph.transform.elasticsearch.RawDocumentWriter;
+import uk.gov.nca.graph.transform.elasticsearch.SchemaInference;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+import uk.gov.nca.graph.transform.metrics.MetricsPublisher;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+import uk.gov.nca.graph.transform.rules.PartitionedTransformRule;
 import uk.gov.nca.graph.transform.rules.TransformRule;
+import uk.gov.nca.graph.transform.rules.VisitorTransformRule;
 
 /**
  * Transforms a graph into Elasticsearch, using all {@link TransformRule}s currently on the
@@ -44,7 +69,6 @@ import uk.gov.nca.graph.transform.rules.TransformRule;
 public class TransformToElasticsearch {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TransformToElasticsearch.class);
-  private static final int BULK_SIZE = 5000000;  //5MB Size
 
   private TransformToElasticsearch(){
     //Private constructor for utility class
@@ -60,161 +84,455 @@ public class TransformToElasticsearch {
    * This operation is performed multi-threaded where possible, with the number of threads set by
    * threadCount.
    */
-  public static void transformGraph(Graph sourceGraph, RestClientBuilder targetClient, String rawIndexPrefix, String objIndexPrefix, int threadCount) {
-
-    final String rawIndexPrefixNotNull = (rawIndexPrefix == null) ? "" : rawIndexPrefix;
-    final String objIndexPrefixNotNull = (objIndexPrefix == null) ? "" : objIndexPrefix;
+  public static TransformResult transformGraph(Graph sourceGraph, RestClientBuilder targetClient, String rawIndexPrefix, String objIndexPrefix, int threadCount) {
+    return transformGraph(sourceGraph, targetClient, new TransformToElasticsearchOptions()
+        .setRawIndexPrefix(rawIndexPrefix)
+        .setObjectIndexPrefix(objIndexPrefix)
+        .setThreads(threadCount));
+  }
 
+  /**
+   * Process the sourceGraph using the transform rules on the classpath, and output the results
+   * into Elasticsearch via the REST API, as configured by options.
+   *
+   * The returned result records whether the transformation completed successfully.
+   *
+   * If a checkpoint file is configured, then each raw partition and each rule is recorded in it
+   * once all of its documents have been written. If the transformation is resumed, then recorded
+   * partitions and rules are skipped; partitions and rules which were in progress are repeated.
+   *
+   * If a delta state file is configured, then the transformation is incremental. Only raw
+   * documents for vertices which have changed since the last successful run are indexed, and only rules
+   * whose input labels include a changed vertex are run. Rules which don't override
+   * {@link TransformRule#getId(Map)} are never run incrementally, as they would duplicate their output. The state is saved if the run succeeds.
+   *
+   * Raw documents are given the ID of their vertex, and the output of rules is given the ID
+   * returned by {@link TransformRule#getId(Map)}, so that re-running the transformation replaces
+   * existing documents according to the configured {@link IndexMode}.
+   *
+   * Unless disabled, indices are created before loading with mappings inferred from a sample of
+   * vertices (for raw indices) or provided by {@link TransformRule#getMapping()}, and refreshes
+   * and replicas are disabled until loading has finished. See {@link IndexBootstrap}. If an index
+   * can't be prepared, its documents are still written but a failure is recorded.
+   */
+  public static TransformResult transformGraph(Graph sourceGraph, RestClientBuilder targetClient, TransformToElasticsearchOptions options) {
+    TransformResult result = new TransformResult();
     RestHighLevelClient client = new RestHighLevelClient(targetClient);
 
-    LOGGER.info("Checking connection to Elasticsearch");
     try {
-      if (!client.ping(RequestOptions.DEFAULT)) {
-        throw new IOException("Unable to ping server");
+      LOGGER.info("Checking connection to Elasticsearch");
+      try {
+        if (!client.ping(RequestOptions.DEFAULT)) {
+          throw new IOException("Unable to ping server");
+        }
+      } catch (IOException ioe) {
+        LOGGER.error("Unable to connect to Elasticsearch", ioe);
+        result.addFailure("Unable to connect to Elasticsearch: " + ioe.getMessage());
+        return result;
       }
+
+      BulkController controller = new BulkController(options);
+      IndexBootstrap bootstrap = options.isBootstrapIndices() ? new IndexBootstrap(client, options.getReplicas(), controller) : null;
+      transform(sourceGraph, new BulkPipeline(client, options.getMaxInFlight(), controller, result), bootstrap, options, result);
+    } finally {
+      try {
+        client.close();
+      } catch (IOException e) {
+        //Do nothing, closing client anyway
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Process the sourceGraph as {@link #transformGraph(Graph, RestClientBuilder, TransformToElasticsearchOptions)}
+   * does, but write the results into bulk files in directory rather than to a live cluster. The
+   * files can later be loaded into Elasticsearch with {@link BulkFileLoader}.
+   *
+   * Indices aren't bootstrapped, so will be created dynamically when the files are loaded unless
+   * they have been created beforehand.
+   */
+  public static TransformResult transformGraphToFiles(Graph sourceGraph, Path directory, TransformToElasticsearchOptions options) {
+    TransformResult result = new TransformResult();
+
+    BulkFileSink sink;
+    try {
+      sink = new BulkFileSink(directory, options.getBulkFileMaxBytes(), new BulkController(options), result);
     } catch (IOException ioe) {
-      LOGGER.error("Unable to connect to Elasticsearch", ioe);
-      return;
+      LOGGER.error("Unable to create bulk file directory {}", directory, ioe);
+      result.addFailure("Unable to create bulk file directory " + directory + ": " + ioe.getMessage());
+      return result;
     }
 
-    LOGGER.info("Transforming content from Graph to Elasticsearch (raw) using {} threads", threadCount);
-    //Can't use sourceGraph.vertices() as it doesn't seem to work correctly across multiple threads (for TinkerGraph at least)
-    Iterator<Vertex> iterVertices = sourceGraph.traversal().V().toList().iterator();
+    transform(sourceGraph, sink, null, options, result);
+
+    return result;
+  }
+
+  private static void transform(Graph sourceGraph, BulkSink sink, IndexBootstrap bootstrap, TransformToElasticsearchOptions options, TransformResult result) {
+    //The publisher is closed last, so that its final report includes everything written by the sink
+    MetricsPublisher metrics = MetricsPublisher.start(TransformToElasticsearch.class.getSimpleName(), result,
+        options.getMetricsFile(), options.getMetricsFormat(), options.getMetricsInterval());
+    try (BulkSink pipeline = sink) {
+      Checkpoint opened;
+      try {
+        opened = options.getCheckpointFile() == null ? Checkpoint.disabled()
+            : Checkpoint.open(options.getCheckpointFile(), options.isResume());
+      } catch (IOException ioe) {
+        LOGGER.error("Unable to open checkpoint file {}", options.getCheckpointFile(), ioe);
+        result.addFailure("Unable to open checkpoint file " + options.getCheckpointFile() + ": " + ioe.getMessage());
+        return;
+      }
+
+      try (Checkpoint checkpoint = opened) {
+        DeltaState delta = null;
+        if (options.getDeltaStateFile() != null) {
+          try {
+            delta = DeltaState.load(options.getDeltaStateFile(), options.getTimestampProperty(), createKryo(sourceGraph));
+          } catch (IOException ioe) {
+            LOGGER.error("Unable to load delta state from {}", options.getDeltaStateFile(), ioe);
+            result.addFailure("Unable to load delta state from " + options.getDeltaStateFile() + ": " + ioe.getMessage());
+            return;
+          }
+        }
+
+        //Finding the labels means reading every vertex, so is only done once, for partitioning and bootstrapping
+        List<String> labels = sourceGraph.traversal().V().label().dedup().toList();
+        List<VertexPartition> partitions = options.getPartitioner().partition(sourceGraph, options.getPartitions(), labels);
+
+        try {
+          if (bootstrap != null)
+            bootstrapRawIndices(sourceGraph, labels, bootstrap, options, result);
 
-    Thread.UncaughtExceptionHandler h = (th, ex) -> LOGGER.error("Uncaught exception thrown by thread {}",
-        th.getName(), ex);
+          transformRaw(sourceGraph, partitions, pipeline, options, checkpoint, delta, result);
+          if (result.isCancelled())
+            return;
 
-    List<Thread> rawThreads = new ArrayList<>();
-    for(int i = 0; i < threadCount; i++) {
-      Thread t = new Thread(new RawTransformer(iterVertices, client, rawIndexPrefixNotNull));
-      t.setUncaughtExceptionHandler(h);
-      t.start();
-      rawThreads.add(t);
+          pipeline.flush();
+
+          transformRules(sourceGraph, partitions, pipeline, options, checkpoint, bootstrap, delta == null ? null : delta.getChangedLabels(), result);
+
+          //Make sure everything has been written before restoring index settings or saving state
+          pipeline.flush();
+        } finally {
+          //Always restore index settings, even if the transformation failed
+          if (bootstrap != null)
+            bootstrap.finish(options.getForceMergeSegments(), result);
+        }
+
+        if (delta != null && result.isSuccessful())
+          saveDelta(sourceGraph, delta, options, result);
+      }
+    } finally {
+      metrics.close();
     }
 
-    while(rawThreads.stream().anyMatch(Thread::isAlive)){
-      //Do nothing, wait for threads to finish
+    if (result.isSuccessful()) {
+      LOGGER.info("Finished transforming to Elasticsearch");
+    } else {
+      LOGGER.warn("Finished transforming to Elasticsearch, with {} failures", result.getFailures().size());
     }
+  }
+
+  private static Kryo createKryo(Graph graph) {
+    return graph.io(IoCore.gryo()).mapper().create().createMapper();
+  }
 
-    //TODO: Add a mapping
+  private static void bootstrapRawIndices(Graph sourceGraph, List<String> labels, IndexBootstrap bootstrap, TransformToElasticsearchOptions options, TransformResult result) {
+    //Labels whose vertices are all excluded by the filter don't need an index
+    ElementFilter filter = options.getFilter();
+    List<String> rawLabels = labels.stream()
+        .filter(filter::includesLabel)
+        .filter(l -> !filter.filtersVertices() || filter.vertices(sourceGraph.traversal().V().hasLabel(l)).hasNext())
+        .collect(Collectors.toList());
+    LOGGER.info("Preparing {} raw indices", rawLabels.size());
 
-    //Loop through all the rules to produce processed objects
-    LOGGER.info("Transforming content from Graph to Elasticsearch (processed), 1 thread per rule");
+    for (String label : rawLabels) {
+      Map<String, Object> mapping = options.getMappingSampleSize() > 0
+          ? SchemaInference.inferRawMapping(sourceGraph, label, options.getMappingSampleSize(), options.getFilter()) : null;
+
+      prepareIndex(bootstrap, (options.getRawIndexPrefix() + label).toLowerCase(), "raw_" + label, mapping, result);
+    }
+  }
+
+  private static void prepareIndex(IndexBootstrap bootstrap, String index, String type, Map<String, Object> mapping, TransformResult result) {
+    try {
+      bootstrap.prepare(index, type, mapping);
+    } catch (Exception e) {
+      //Documents are still written, but the index won't have the expected settings or mapping
+      LOGGER.error("Unable to prepare index {}, so it will be created dynamically", index, e);
+      result.addFailure("Unable to prepare index " + index + ": " + e.getMessage());
+    }
+  }
 
-    ScanResult sr = new ClassGraph().enableClassInfo().scan();
+  private static void saveDelta(Graph sourceGraph, DeltaState delta, TransformToElasticsearchOptions options, TransformResult result) {
+    try {
+      delta.save(options.getDeltaStateFile(), createKryo(sourceGraph));
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to save delta state to {}", options.getDeltaStateFile(), ioe);
+      result.addFailure("Unable to save delta state to " + options.getDeltaStateFile() + ": " + ioe.getMessage());
+    }
+  }
+
+  private static void transformRaw(Graph sourceGraph, List<VertexPartition> allPartitions, BulkSink pipeline, TransformToElasticsearchOptions options, Checkpoint checkpoint, DeltaState delta, TransformResult result) {
+    //Each worker streams its own partitions, rather than sharing an iterator
+    Queue<VertexPartition> partitions = allPartitions.stream()
+        .filter(p -> !checkpoint.isComplete(RawTransformer.TASK_PREFIX + p.getName()))
+        .collect(Collectors.toCollection(ConcurrentLinkedQueue::new));
+
+    if (partitions.size() < allPartitions.size()) {
+      LOGGER.info("Skipping {} partitions which have already been completed", allPartitions.size() - partitions.size());
+
+      //Keep the previous state of skipped vertices, rather than treating them as new on the next run
+      if (delta != null) {
+        allPartitions.stream()
+            .filter(p -> !partitions.contains(p))
+            .forEach(p -> options.getFilter().vertices(sourceGraph.traversal(), p).id().forEachRemaining(delta::carryForward));
+      }
+    }
 
-    List<Class<TransformRule>> transformRulesClasses = sr.getClassesImplementing(TransformRule.class.getName())
-        .loadClasses(TransformRule.class, true);
+    LOGGER.info("Transforming content from Graph to Elasticsearch (raw) using {} threads and {} partitions", options.getThreads(), partitions.size());
 
-    List<Thread> ruleThreads = new ArrayList<>();
+    Map<String, Runnable> rawTasks = new LinkedHashMap<>();
+    for(int i = 0; i < options.getThreads(); i++) {
+      rawTasks.put("RawTransformer " + i, new RawTransformer(sourceGraph, partitions, pipeline, options.getRawIndexPrefix(), options.getIndexMode(), options.getFilter(), checkpoint, delta, result));
+    }
+
+    result.addGauge("partitions.pending", partitions::size);
+
+    ExecutorService executor = Workers.newExecutor("raw-transformer", options.getThreads(), options.isVirtualThreads());
+    try {
+      Workers.runAll(executor, rawTasks, true, result);
+    } finally {
+      Workers.shutdown(executor);
+      result.removeGauge("partitions.pending");
+    }
+  }
+
+  private static void transformRules(Graph sourceGraph, List<VertexPartition> partitions, BulkSink pipeline, TransformToElasticsearchOptions options, Checkpoint checkpoint, IndexBootstrap bootstrap, Set<String> changedLabels, TransformResult result) {
+    //Loop through all the rules to produce processed objects
+    LOGGER.info("Transforming content from Graph to Elasticsearch (processed), using {} threads", options.getRuleThreads());
 
+    List<Class<? extends TransformRule>> transformRulesClasses = RuleDiscovery.discover(options.getRules());
 
-    for (Class<TransformRule> clazz : transformRulesClasses) {
-      if (Modifier.isAbstract(clazz.getModifiers())) {
+    Map<String, Runnable> ruleTasks = new LinkedHashMap<>();
+    List<VisitorTransformRule> visitorRules = new ArrayList<>();
+    List<PartitionedRuleTransformer> partitionedRules = new ArrayList<>();
+
+    for (Class<? extends TransformRule> clazz : transformRulesClasses) {
+      if (checkpoint.isComplete(RuleOutput.TASK_PREFIX + clazz.getName())) {
+        LOGGER.info("Skipping TransformRule {}, which has already been completed", clazz.getName());
         continue;
       }
 
-      LOGGER.info("Creating new thread for TransformRule {}", clazz.getName());
+      LOGGER.info("Creating new task for TransformRule {}", clazz.getName());
 
       TransformRule rule;
       try {
         rule = clazz.getConstructor().newInstance();
       } catch (Exception e) {
         LOGGER.error("Couldn't instantiate TransformRule {}", clazz.getName(), e);
+        result.addFailure("Couldn't instantiate TransformRule " + clazz.getName());
         continue;
       }
 
-      Thread t = new Thread(new RuleTransformer(rule, sourceGraph, client, objIndexPrefixNotNull));
-      t.setUncaughtExceptionHandler(
-          (th, ex) -> LOGGER.error("Uncaught exception thrown by thread {} ({})",
-          th.getName(), rule.getClass().getSimpleName(), ex));
-      ruleThreads.add(t);
-      t.start();
+      if (changedLabels != null && !rule.getInputLabels().isEmpty() && Collections.disjoint(rule.getInputLabels(), changedLabels)) {
+        LOGGER.info("Skipping TransformRule {}, as none of its input labels have changed", clazz.getName());
+        continue;
+      }
+
+      //Without stable IDs, re-running a rule would add a second copy of every object it produces
+      if (changedLabels != null && !hasStableIds(rule)) {
+        LOGGER.warn("Skipping TransformRule {}, as it doesn't override getId() so can't be run incrementally", clazz.getName());
+        result.increment("rule.skipped", 1);
+        continue;
+      }
+
+      if (bootstrap != null)
+        prepareIndex(bootstrap, (options.getObjectIndexPrefix() + rule.getIndex()).toLowerCase(), rule.getType(), rule.getMapping(), result);
+
+      //Visitor rules share a single scan of the graph, rather than each running separately
+      if (rule instanceof VisitorTransformRule) {
+        visitorRules.add((VisitorTransformRule) rule);
+        continue;
+      }
+
+      if (rule instanceof PartitionedTransformRule) {
+        partitionedRules.add(new PartitionedRuleTransformer((PartitionedTransformRule) rule, sourceGraph, pipeline, options.getObjectIndexPrefix(), options.getIndexMode(), checkpoint, result));
+        continue;
+      }
+
+      ruleTasks.put("TransformRule " + clazz.getSimpleName(), new RuleTransformer(rule, sourceGraph, pipeline, options.getObjectIndexPrefix(), options.getIndexMode(), checkpoint, result));
     }
 
-    while(ruleThreads.stream().anyMatch(Thread::isAlive)){
-      //Do nothing, wait for threads to finish
+    new VisitorScan(sourceGraph, visitorRules, partitions, pipeline, options, checkpoint, result).run();
+
+    //Whole rules are submitted first, as they are likely to take longest, and partitions of
+    //partitioned rules then fill in around them on the same pool
+    if (!partitionedRules.isEmpty()) {
+      for (PartitionedRuleTransformer transformer : partitionedRules) {
+        for (VertexPartition partition : partitions)
+          ruleTasks.put("TransformRule " + transformer.getName() + " partition " + partition.getName(), transformer.partition(partition));
+      }
     }
 
+    if (ruleTasks.isEmpty() || result.isCancelled())
+      return;
+
+    //Rules are independent of each other, so a failing rule shouldn't cancel the others
+    ExecutorService executor = Workers.newWorkStealingExecutor("rule-transformer", options.getRuleThreads(), options.isVirtualThreads());
+    result.addGauge("rule.queuedTasks", () -> Workers.queueDepth(executor));
     try {
-      client.close();
-    } catch (IOException e) {
-      //Do nothing, closing client anyway
+      Workers.runAll(executor, ruleTasks, false, result);
+    } finally {
+      Workers.shutdown(executor);
+      result.removeGauge("rule.queuedTasks");
     }
-    LOGGER.info("Finished transforming to Elasticsearch");
+
+    for (PartitionedRuleTransformer transformer : partitionedRules)
+      transformer.finish();
   }
 
-  private static synchronized void submitBulkRequest(RestHighLevelClient client, BulkRequest bulkRequest) {
+  private static boolean hasStableIds(TransformRule rule) {
     try {
-      client.bulk(bulkRequest, RequestOptions.DEFAULT);
-    } catch (Exception e) {
-      LOGGER.error("Unable to write vertices to Elasticsearch", e);
+      return rule.getClass().getMethod("getId", Map.class).getDeclaringClass() != TransformRule.class;
+    } catch (NoSuchMethodException e) {
+      return false;
     }
   }
 
   private static class RawTransformer implements Runnable{
 
-    private final Iterator<Vertex> vertexIterator;
-    private final RestHighLevelClient restClient;
-    private final String indexPrefix;
+    private static final String TASK_PREFIX = "raw/";
 
-    public RawTransformer(Iterator<Vertex> vertexIterator, RestHighLevelClient restClient, String indexPrefix){
-      this.vertexIterator = vertexIterator;
-      this.restClient = restClient;
-      this.indexPrefix = indexPrefix;
+    private final Graph graph;
+    private final Queue<VertexPartition> partitions;
+    private final BulkSink pipeline;
+    private final RawDocumentWriter writer;
+    private final IndexMode indexMode;
+    private final ElementFilter filter;
+    private final Checkpoint checkpoint;
+    private final DeltaState delta;
+    private final TransformResult result;
+
+    private BulkRequest br = new BulkRequest();
+    private List<CompletableFuture<Void>> submitted = new ArrayList<>();
+    private long count = 0;
+    private long reported = 0;
+    private long unchanged = 0;
+
+    public RawTransformer(Graph graph, Queue<VertexPartition> partitions, BulkSink pipeline, String indexPrefix, IndexMode indexMode, ElementFilter filter, Checkpoint checkpoint, DeltaState delta, TransformResult result){
+      this.graph = graph;
+      this.partitions = partitions;
+      this.pipeline = pipeline;
+      try {
+        this.writer = new RawDocumentWriter(indexPrefix, filter);
+      } catch (IOException ioe) {
+        throw new UncheckedIOException("Unable to create document writer", ioe);
+      }
+      this.indexMode = indexMode;
+      this.filter = filter;
+      this.checkpoint = checkpoint;
+      this.delta = delta;
+      this.result = result;
     }
 
     @Override
     public void run() {
-      BulkRequest br = new BulkRequest();
+      try {
+        VertexPartition partition;
+        while ((partition = partitions.poll()) != null) {
+          if (!transformPartition(partition)) {
+            LOGGER.warn("{} has been cancelled after ingesting {} raw vertices", Thread.currentThread().getName(), count);
+            return;
+          }
+
+          if (checkpoint.isEnabled()) {
+            //Don't carry documents over into the next partition, so this one can be recorded as complete
+            submit();
+            checkpoint.completeWhenDone(TASK_PREFIX + partition.getName(), submitted);
+            submitted = new ArrayList<>();
+          }
+        }
 
-      long count = 0;
+        if (br.numberOfActions() > 0)
+          pipeline.submit(br);
+      } finally {
+        reportCount();
+        result.increment("raw.unchanged", unchanged);
+      }
 
-      while(true) {
-        Vertex v;
+      LOGGER.info("{} has finished ingesting {} raw vertices", Thread.currentThread().getName(), count);
+    }
 
-        if(!vertexIterator.hasNext())
-          break;
+    private boolean transformPartition(VertexPartition partition) {
+      LOGGER.debug("{} is ingesting raw vertices from partition {}", Thread.currentThread().getName(), partition.getName());
 
-        try {
-          v = vertexIterator.next();
-        } catch (NoSuchElementException e) {
-          //No more vertices to process
-          break;
-        }
+      Iterator<Vertex> vertexIterator = filter.vertices(graph.traversal(), partition);
+      while (vertexIterator.hasNext()) {
+        if (Thread.currentThread().isInterrupted())
+          return false;
 
-        if(!includeVertex(v))
+        Vertex v = vertexIterator.next();
+        if (delta != null && !delta.isChanged(v)) {
+          unchanged++;
           continue;
+        }
 
-        //Transform from vertex to document
-        Map<String, Object> doc = new HashMap<>();
-        doc.put("originalId", v.id());
+        //Transform from vertex to document, and add to bulk request
+        DocWriteRequest<?> request = request(v);
 
-        v.properties().forEachRemaining(p -> doc.put(p.key(), p.value()));
+        //Only keep vertices with properties
+        if (request == null)
+          continue;
 
-        //Add vertex to bulk request
-        String index = indexPrefix + v.label();
-        br.add(new IndexRequest(index.toLowerCase(), "raw_" + v.label()).source(doc));
+        br.add(request);
         count++;
 
-        if (br.estimatedSizeInBytes() >= BULK_SIZE) {  //5MB Size
-          submitBulkRequest(restClient, br);
-          br = new BulkRequest();
+        if (pipeline.isFull(br)) {
+          submit();
 
           LOGGER.info("{} has ingested {} raw vertices", Thread.currentThread().getName(), count);
         }
+      }
+
+      return true;
+    }
+
+    private DocWriteRequest<?> request(Vertex v) {
+      String label = v.label();
+      String id = String.valueOf(v.id());
 
+      //Scripted updates need the document as parameters, so it isn't serialised here
+      if (indexMode == IndexMode.UPDATE_IF_CHANGED) {
+        Map<String, Object> doc = writer.toMap(v);
+        return doc == null ? null : indexMode.request(writer.getIndex(label), writer.getType(label), id, doc);
       }
 
-      if(br.numberOfActions() > 0)
-        submitBulkRequest(restClient, br);
+      byte[] doc;
+      try {
+        doc = writer.write(v);
+      } catch (IOException ioe) {
+        throw new UncheckedIOException("Unable to serialise vertex " + v.id(), ioe);
+      }
 
-      LOGGER.info("{} has finished ingesting {} raw vertices", Thread.currentThread().getName(), count);
+      return doc == null ? null : indexMode.request(writer.getIndex(label), writer.getType(label), id, doc);
     }
 
-    private static boolean includeVertex(Vertex v) {
-      //Only keep vertices with properties
-      return v.properties().hasNext();
+    private void submit() {
+      CompletableFuture<Void> future = pipeline.submit(br);
+      if (checkpoint.isEnabled())
+        submitted.add(future);
+
+      br = new BulkRequest();
+      reportCount();
+    }
+
+    private void reportCount() {
+      //Counted as each request is submitted, rather than at the end, so progress can be monitored
+      result.increment("raw", count - reported);
+      reported = count;
     }
   }
 
@@ -222,39 +540,103 @@ public class TransformToElasticsearch {
 
     private final TransformRule rule;
     private final Graph graph;
-    private final RestHighLevelClient restClient;
+    private final BulkSink pipeline;
     private final String indexPrefix;
+    private final IndexMode indexMode;
+    private final Checkpoint checkpoint;
+    private final TransformResult result;
 
-    public RuleTransformer(TransformRule rule, Graph graph, RestHighLevelClient restClient, String indexPrefix){
+    public RuleTransformer(TransformRule rule, Graph graph, BulkSink pipeline, String indexPrefix, IndexMode indexMode, Checkpoint checkpoint, TransformResult result){
       this.rule = rule;
       this.graph = graph;
-      this.restClient = restClient;
+      this.pipeline = pipeline;
       this.indexPrefix = indexPrefix;
+      this.indexMode = indexMode;
+      this.checkpoint = checkpoint;
+      this.result = result;
     }
 
     @Override
     public void run() {
-      BulkRequest br = new BulkRequest();
+      List<CompletableFuture<Void>> submitted = checkpoint.isEnabled() ? new ArrayList<>() : null;
+      RuleOutput output = new RuleOutput(rule, pipeline, indexPrefix, indexMode, submitted, result);
 
-      long count = 0;
+      rule.transform(graph, output);
+      output.flush();
 
-      for (Map<String, Object> obj : rule.transform(graph)) {   //TODO: Multi-thread this too?
-        String index = indexPrefix + rule.getIndex();
-        br.add(new IndexRequest(index.toLowerCase(), rule.getType()).source(obj));
-        count++;
+      if (submitted != null)
+        checkpoint.completeWhenDone(RuleOutput.TASK_PREFIX + rule.getClass().getName(), submitted);
+
+      LOGGER.info("{} has finished ingesting {} objects produced by rule {}", Thread.currentThread().getName(), output.getCount(), rule.getClass().getSimpleName());
+    }
+  }
+
+  private static class PartitionedRuleTransformer {
+
+    private final PartitionedTransformRule rule;
+    private final Graph graph;
+    private final BulkSink pipeline;
+    private final String indexPrefix;
+    private final IndexMode indexMode;
+    private final Checkpoint checkpoint;
+    private final TransformResult result;
 
-        if (br.estimatedSizeInBytes() >= BULK_SIZE) {
-          submitBulkRequest(restClient, br);
-          br = new BulkRequest();
+    private final Queue<CompletableFuture<Void>> submitted;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicBoolean failed = new AtomicBoolean();
 
-          LOGGER.info("{} has ingested {} objects produced by rule {}", Thread.currentThread().getName(), count, rule.getClass().getSimpleName());
+    public PartitionedRuleTransformer(PartitionedTransformRule rule, Graph graph, BulkSink pipeline, String indexPrefix, IndexMode indexMode, Checkpoint checkpoint, TransformResult result){
+      this.rule = rule;
+      this.graph = graph;
+      this.pipeline = pipeline;
+      this.indexPrefix = indexPrefix;
+      this.indexMode = indexMode;
+      this.checkpoint = checkpoint;
+      this.result = result;
+
+      this.submitted = checkpoint.isEnabled() ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    public String getName() {
+      return rule.getClass().getSimpleName();
+    }
+
+    /**
+     * Returns a task which transforms a single partition of the graph using this rule
+     */
+    public Runnable partition(VertexPartition partition) {
+      return () -> {
+        //There's no point transforming the rest of the graph if the rule can't be completed
+        if (failed.get()) {
+          LOGGER.info("Skipping partition {} of rule {}, as another partition has failed", partition.getName(), getName());
+          return;
         }
-      }
 
-      if(br.numberOfActions() > 0)
-        submitBulkRequest(restClient, br);
+        RuleOutput output = new RuleOutput(rule, pipeline, indexPrefix, indexMode, submitted, result);
+
+        try {
+          rule.transform(graph, partition, output);
+          output.flush();
+        } catch (RuntimeException e) {
+          failed.set(true);
+          throw e;
+        } finally {
+          count.addAndGet(output.getCount());
+        }
+
+        LOGGER.info("{} has finished ingesting {} objects produced by rule {} from partition {}", Thread.currentThread().getName(), output.getCount(), getName(), partition.getName());
+      };
+    }
+
+    /**
+     * Record the output of the rule, once all its partitions have been run
+     */
+    public void finish() {
+      //The rule is only complete if every partition ran to completion
+      if (submitted != null && !failed.get() && !result.isCancelled())
+        checkpoint.completeWhenDone(RuleOutput.TASK_PREFIX + rule.getClass().getName(), submitted);
 
-      LOGGER.info("{} has finished ingesting {} objects produced by rule {}", Thread.currentThread().getName(), count, rule.getClass().getSimpleName());
+      LOGGER.info("Finished ingesting {} objects produced by rule {}", count.get(), getName());
     }
   }
 }
@@ -0,0 +1,407 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import uk.gov.nca.graph.transform.elasticsearch.IndexMode;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+import uk.gov.nca.graph.transform.metrics.MetricsFormat;
+import uk.gov.nca.graph.transform.partition.AutoVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartitioner;
+
+/**
+ * Options controlling how {@link TransformToElasticsearch} transforms a graph. The setters
+ * return this object, so that calls can be chained.
+ */
+public class TransformToElasticsearchOptions {
+
+  private String rawIndexPrefix = "";
+  private String objectIndexPrefix = "";
+  private int threads = 4;
+  private VertexPartitioner partitioner = new AutoVertexPartitioner();
+  private int partitions = 0;
+  private boolean virtualThreads = false;
+  private int ruleThreads = 0;
+  private List<String> rules = new ArrayList<>();
+  private int maxInFlight = 4;
+  private long bulkMinBytes = 1000000;  //1MB
+  private long bulkMaxBytes = 20000000; //20MB
+  private int bulkMinActions = 100;
+  private int bulkMaxActions = 10000;
+  private long bulkTargetLatency = 5000;
+  private int bulkRetries = 5;
+  private long bulkBackoff = 500;
+  private long bulkFileMaxBytes = 1000000000; //1GB
+  private IndexMode indexMode = IndexMode.INDEX;
+  private boolean bootstrapIndices = true;
+  private int mappingSampleSize = 1000;
+  private int replicas = 1;
+  private int forceMergeSegments = 0;
+  private Path checkpointFile = null;
+  private boolean resume = false;
+  private Path deltaStateFile = null;
+  private String timestampProperty = null;
+  private ElementFilter filter = new ElementFilter();
+  private Path metricsFile = null;
+  private MetricsFormat metricsFormat = MetricsFormat.JSON;
+  private long metricsInterval = 10000;
+
+  /**
+   * Prefix to use for indices containing raw data
+   */
+  public String getRawIndexPrefix() {
+    return rawIndexPrefix;
+  }
+  public TransformToElasticsearchOptions setRawIndexPrefix(String rawIndexPrefix) {
+    this.rawIndexPrefix = rawIndexPrefix == null ? "" : rawIndexPrefix;
+    return this;
+  }
+
+  /**
+   * Prefix to use for indices containing the output of TransformRules
+   */
+  public String getObjectIndexPrefix() {
+    return objectIndexPrefix;
+  }
+  public TransformToElasticsearchOptions setObjectIndexPrefix(String objectIndexPrefix) {
+    this.objectIndexPrefix = objectIndexPrefix == null ? "" : objectIndexPrefix;
+    return this;
+  }
+
+  /**
+   * Number of threads to use when ingesting raw data
+   */
+  public int getThreads() {
+    return threads;
+  }
+  public TransformToElasticsearchOptions setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+    return this;
+  }
+
+  /**
+   * Partitioner used to split the vertices of the graph between workers, which defaults to an
+   * {@link AutoVertexPartitioner}
+   */
+  public VertexPartitioner getPartitioner() {
+    return partitioner;
+  }
+  public TransformToElasticsearchOptions setPartitioner(VertexPartitioner partitioner) {
+    this.partitioner = partitioner == null ? new AutoVertexPartitioner() : partitioner;
+    return this;
+  }
+
+  /**
+   * Number of partitions to request from the partitioner, which defaults to the number of threads
+   */
+  public int getPartitions() {
+    return partitions > 0 ? partitions : threads;
+  }
+  public TransformToElasticsearchOptions setPartitions(int partitions) {
+    this.partitions = partitions;
+    return this;
+  }
+
+  /**
+   * Whether to run work on virtual threads, where supported by the JVM
+   */
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+  public TransformToElasticsearchOptions setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+    return this;
+  }
+
+  /**
+   * Number of threads shared by all TransformRules, which defaults to the number of processors
+   */
+  public int getRuleThreads() {
+    return ruleThreads > 0 ? ruleThreads : Runtime.getRuntime().availableProcessors();
+  }
+  public TransformToElasticsearchOptions setRuleThreads(int ruleThreads) {
+    this.ruleThreads = ruleThreads;
+    return this;
+  }
+
+  /**
+   * Names of the TransformRule classes, or of packages containing them, to use. If empty, rules
+   * registered with ServiceLoader are used, or failing that the whole classpath is scanned.
+   */
+  public List<String> getRules() {
+    return rules;
+  }
+  public TransformToElasticsearchOptions setRules(Collection<String> rules) {
+    this.rules = rules == null ? new ArrayList<>() : new ArrayList<>(rules);
+    return this;
+  }
+
+  /**
+   * Maximum number of bulk requests that can be in flight to Elasticsearch at once
+   */
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+  public TransformToElasticsearchOptions setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = Math.max(1, maxInFlight);
+    return this;
+  }
+
+  /**
+   * Minimum size of a bulk request in bytes, below which the size won't be reduced
+   */
+  public long getBulkMinBytes() {
+    return bulkMinBytes;
+  }
+  public TransformToElasticsearchOptions setBulkMinBytes(long bulkMinBytes) {
+    this.bulkMinBytes = Math.max(1, bulkMinBytes);
+    return this;
+  }
+
+  /**
+   * Maximum size of a bulk request in bytes
+   */
+  public long getBulkMaxBytes() {
+    return bulkMaxBytes;
+  }
+  public TransformToElasticsearchOptions setBulkMaxBytes(long bulkMaxBytes) {
+    this.bulkMaxBytes = Math.max(1, bulkMaxBytes);
+    return this;
+  }
+
+  /**
+   * Minimum number of actions in a bulk request, below which the size won't be reduced
+   */
+  public int getBulkMinActions() {
+    return bulkMinActions;
+  }
+  public TransformToElasticsearchOptions setBulkMinActions(int bulkMinActions) {
+    this.bulkMinActions = Math.max(1, bulkMinActions);
+    return this;
+  }
+
+  /**
+   * Maximum number of actions in a bulk request
+   */
+  public int getBulkMaxActions() {
+    return bulkMaxActions;
+  }
+  public TransformToElasticsearchOptions setBulkMaxActions(int bulkMaxActions) {
+    this.bulkMaxActions = Math.max(1, bulkMaxActions);
+    return this;
+  }
+
+  /**
+   * Target latency of a bulk request in milliseconds. Bulk requests which are slower than this
+   * cause the size of subsequent requests to be reduced.
+   */
+  public long getBulkTargetLatency() {
+    return bulkTargetLatency;
+  }
+  public TransformToElasticsearchOptions setBulkTargetLatency(long bulkTargetLatency) {
+    this.bulkTargetLatency = Math.max(1, bulkTargetLatency);
+    return this;
+  }
+
+  /**
+   * Number of times to retry rejected items, failed bulk requests and failed index preparation
+   * before giving up on them
+   */
+  public int getBulkRetries() {
+    return bulkRetries;
+  }
+  public TransformToElasticsearchOptions setBulkRetries(int bulkRetries) {
+    this.bulkRetries = Math.max(0, bulkRetries);
+    return this;
+  }
+
+  /**
+   * Time in milliseconds to wait before the first retry, which doubles for each subsequent retry
+   */
+  public long getBulkBackoff() {
+    return bulkBackoff;
+  }
+  public TransformToElasticsearchOptions setBulkBackoff(long bulkBackoff) {
+    this.bulkBackoff = Math.max(1, bulkBackoff);
+    return this;
+  }
+
+  /**
+   * Maximum size in bytes (before compression) of each file written when transforming to bulk
+   * files, after which a new file is started
+   */
+  public long getBulkFileMaxBytes() {
+    return bulkFileMaxBytes;
+  }
+  public TransformToElasticsearchOptions setBulkFileMaxBytes(long bulkFileMaxBytes) {
+    this.bulkFileMaxBytes = Math.max(1, bulkFileMaxBytes);
+    return this;
+  }
+
+  /**
+   * How documents with an ID are written, if they may already exist in Elasticsearch
+   */
+  public IndexMode getIndexMode() {
+    return indexMode;
+  }
+  public TransformToElasticsearchOptions setIndexMode(IndexMode indexMode) {
+    this.indexMode = indexMode == null ? IndexMode.INDEX : indexMode;
+    return this;
+  }
+
+  /**
+   * Whether to create indices before loading, and disable refreshes and replicas whilst loading
+   */
+  public boolean isBootstrapIndices() {
+    return bootstrapIndices;
+  }
+  public TransformToElasticsearchOptions setBootstrapIndices(boolean bootstrapIndices) {
+    this.bootstrapIndices = bootstrapIndices;
+    return this;
+  }
+
+  /**
+   * Number of vertices of each label to sample when inferring mappings for raw indices, or 0 to
+   * use dynamic mapping
+   */
+  public int getMappingSampleSize() {
+    return mappingSampleSize;
+  }
+  public TransformToElasticsearchOptions setMappingSampleSize(int mappingSampleSize) {
+    this.mappingSampleSize = Math.max(0, mappingSampleSize);
+    return this;
+  }
+
+  /**
+   * Number of replicas to give indices created by the transformation, once loading has finished
+   */
+  public int getReplicas() {
+    return replicas;
+  }
+  public TransformToElasticsearchOptions setReplicas(int replicas) {
+    this.replicas = Math.max(0, replicas);
+    return this;
+  }
+
+  /**
+   * Number of segments to force merge indices down to once loading has finished, or 0 to not
+   * force merge
+   */
+  public int getForceMergeSegments() {
+    return forceMergeSegments;
+  }
+  public TransformToElasticsearchOptions setForceMergeSegments(int forceMergeSegments) {
+    this.forceMergeSegments = Math.max(0, forceMergeSegments);
+    return this;
+  }
+
+  /**
+   * File in which to record progress, so that the transformation can be resumed if it stops
+   * part way through, or null to disable checkpointing
+   */
+  public Path getCheckpointFile() {
+    return checkpointFile;
+  }
+  public TransformToElasticsearchOptions setCheckpointFile(Path checkpointFile) {
+    this.checkpointFile = checkpointFile;
+    return this;
+  }
+
+  /**
+   * Whether to resume from the progress already recorded in the checkpoint file, rather than
+   * starting again. The partitioner and number of partitions must be the same as previously.
+   */
+  public boolean isResume() {
+    return resume;
+  }
+  public TransformToElasticsearchOptions setResume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  /**
+   * File holding the state of the graph as of the last successful run, so that only vertices
+   * which have changed since are transformed, or null to transform the whole graph
+   */
+  public Path getDeltaStateFile() {
+    return deltaStateFile;
+  }
+  public TransformToElasticsearchOptions setDeltaStateFile(Path deltaStateFile) {
+    this.deltaStateFile = deltaStateFile;
+    return this;
+  }
+
+  /**
+   * Property holding the time each vertex was last modified, used to detect changed vertices in
+   * an incremental transformation, or null to detect changes by comparing content hashes
+   */
+  public String getTimestampProperty() {
+    return timestampProperty;
+  }
+  public TransformToElasticsearchOptions setTimestampProperty(String timestampProperty) {
+    this.timestampProperty = timestampProperty == null || timestampProperty.isEmpty() ? null : timestampProperty;
+    return this;
+  }
+
+  /**
+   * Filter determining which elements and properties are read from the source graph
+   */
+  public ElementFilter getFilter() {
+    return filter;
+  }
+  public TransformToElasticsearchOptions setFilter(ElementFilter filter) {
+    this.filter = filter == null ? new ElementFilter() : filter;
+    return this;
+  }
+
+  /**
+   * File to periodically append metrics to whilst transforming, or null to only publish
+   * metrics over JMX
+   */
+  public Path getMetricsFile() {
+    return metricsFile;
+  }
+  public TransformToElasticsearchOptions setMetricsFile(Path metricsFile) {
+    this.metricsFile = metricsFile;
+    return this;
+  }
+
+  /**
+   * Format of the metrics file
+   */
+  public MetricsFormat getMetricsFormat() {
+    return metricsFormat;
+  }
+  public TransformToElasticsearchOptions setMetricsFormat(MetricsFormat metricsFormat) {
+    this.metricsFormat = metricsFormat == null ? MetricsFormat.JSON : metricsFormat;
+    return this;
+  }
+
+  /**
+   * Interval in milliseconds between writing metrics to the metrics file
+   */
+  public long getMetricsInterval() {
+    return metricsInterval;
+  }
+  public TransformToElasticsearchOptions setMetricsInterval(long metricsInterval) {
+    this.metricsInterval = metricsInterval;
+    return this;
+  }
+}
@@ -16,18 +16,41 @@ limitations under the License.
 
 package uk.gov.nca.graph.transform;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.gov.nca.graph.utils.GraphUtils;
+import uk.gov.nca.graph.transform.checkpoint.Checkpoint;
+import uk.gov.nca.graph.transform.checkpoint.ProgressLog;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+import uk.gov.nca.graph.transform.idmap.IdMap;
+import uk.gov.nca.graph.transform.metrics.MetricsPublisher;
+import uk.gov.nca.graph.transform.partition.HashVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
 
 /**
  * Transform a source graph into another Tinkerpop graph. This is different to copying, as copying
@@ -38,6 +61,14 @@ public class TransformToGremlin {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TransformToGremlin.class);
 
+  private static final String VERTEX = "vertex";
+  private static final String EDGE = "edge";
+
+  /**
+   * Number of elements written in each batch to a target traversal source, if not configured
+   */
+  public static final int DEFAULT_WRITE_BATCH_SIZE = 500;
+
   private TransformToGremlin(){
     //Private constructor for utility class
   }
@@ -45,101 +76,592 @@ public class TransformToGremlin {
   /**
    * Transform a source graph into a target graph, without preserving the original ID
    */
-  public static void transformGraph(Graph sourceGraph, Graph targetGraph) {
-    transformGraph(sourceGraph, targetGraph, false);
+  public static TransformResult transformGraph(Graph sourceGraph, Graph targetGraph) {
+    return transformGraph(sourceGraph, targetGraph, false);
   }
 
   /**
    * Transform a source graph into a target graph
    */
-  public static void transformGraph(Graph sourceGraph, Graph targetGraph, boolean preserveOriginalId) {
-    Map<Object, Object> ids = new HashMap<>();
+  public static TransformResult transformGraph(Graph sourceGraph, Graph targetGraph, boolean preserveOriginalId) {
+    return transformGraph(sourceGraph, targetGraph, new TransformToGremlinOptions().setPreserveOriginalId(preserveOriginalId));
+  }
+
+  /**
+   * Transform a source graph into a target graph, as configured by options.
+   *
+   * Vertices are transformed first, followed by edges. Each phase is split into partitions,
+   * which are shared between the configured number of threads. Each thread writes to the target
+   * graph in its own transaction, so if the target graph doesn't support transactions then writes
+   * from different threads are serialised.
+   *
+   * If the target graph supports transactions, then elements are committed in batches. A batch
+   * which fails to commit is recorded in the returned result, and the transformation continues
+   * with the next batch.
+   *
+   * If a checkpoint file is configured, then each completed partition is recorded in it, along
+   * with the source and target IDs of each committed element. If the transformation is resumed,
+   * then completed partitions are skipped, the ID map is restored, and elements already committed
+   * from partially completed partitions aren't written again.
+   *
+   * If a write batch size is configured, then elements are written through a traversal of the
+   * target graph in batches, rather than individually.
+   */
+  public static TransformResult transformGraph(Graph sourceGraph, Graph targetGraph, TransformToGremlinOptions options) {
+    GraphTraversalSource target = options.getWriteBatchSize() > 0 ? targetGraph.traversal() : null;
+    return transform(sourceGraph, targetGraph, target, options.getWriteBatchSize(), options);
+  }
+
+  /**
+   * Transform a source graph into the graph behind target, which may be remote (e.g. Gremlin
+   * Server), as configured by options.
+   *
+   * Elements are always written through target in batches of the configured write batch size,
+   * or {@link #DEFAULT_WRITE_BATCH_SIZE} if it isn't configured. Each batch is a single traversal,
+   * so there is one round trip per batch rather than per element, and if target is remote then
+   * each thread has several batches in flight at once.
+   */
+  public static TransformResult transformGraph(Graph sourceGraph, GraphTraversalSource target, TransformToGremlinOptions options) {
+    int batchSize = options.getWriteBatchSize() > 0 ? options.getWriteBatchSize() : DEFAULT_WRITE_BATCH_SIZE;
+    return transform(sourceGraph, target.getGraph(), target, batchSize, options);
+  }
+
+  private static TransformResult transform(Graph sourceGraph, Graph targetGraph, GraphTraversalSource target, int writeBatchSize, TransformToGremlinOptions options) {
+    TransformResult result = new TransformResult();
+
+    //Graphs without transactions (e.g. TinkerGraph) generally aren't safe for concurrent writes
+    Object writeLock = options.getThreads() > 1 && !targetGraph.features().graph().supportsTransactions() ? new Object() : null;
+
+    Supplier<BatchedWriter> writers = target == null ? null
+        : () -> new BatchedWriter(target, writeBatchSize, options.getWriteBatchesInFlight(), writeLock);
+
+    Checkpoint opened;
+    try {
+      opened = options.getCheckpointFile() == null ? Checkpoint.disabled()
+          : Checkpoint.open(options.getCheckpointFile(), options.isResume());
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to open checkpoint file {}", options.getCheckpointFile(), ioe);
+      result.addFailure("Unable to open checkpoint file " + options.getCheckpointFile() + ": " + ioe.getMessage());
+      return result;
+    }
+
+    try (Checkpoint checkpoint = opened; IdMap ids = options.getIdMapType().create(options.getIdMapDirectory())) {
+      //The publisher is closed before the ID map, so that its final report includes the map's size
+      MetricsPublisher metrics = MetricsPublisher.start(TransformToGremlin.class.getSimpleName(), result,
+          options.getMetricsFile(), options.getMetricsFormat(), options.getMetricsInterval());
+      try {
+        result.addGauge("idmap.size", ids::size);
 
-    LOGGER.info("Transforming vertices from Graph to Graph");
-    long vertexCount = 0L;
+        List<VertexPartition> partitions = options.getPartitioner().partition(sourceGraph, options.getPartitions());
 
-    Iterator<Vertex> iterVertices = sourceGraph.vertices();
-    while(iterVertices.hasNext()){
-      Vertex v = iterVertices.next();
+        if (options.isResume() && !restoreIds(sourceGraph, partitions, checkpoint, ids, result))
+          return result;
 
-      if(includeVertex(v)) {
-        vertexCount++;
+        List<VertexPartition> vertexPartitions = incomplete(partitions, checkpoint, VERTEX);
+        LOGGER.info("Transforming vertices from Graph to Graph using {} threads and {} partitions", options.getThreads(), vertexPartitions.size());
+        runPartitioned("vertex-transformer", vertexPartitions, options,
+            queue -> new VertexTransformer(sourceGraph, targetGraph, queue, options, ids, checkpoint, writeLock, writers, result), result);
+        LOGGER.info("Finished processing {} vertices, ID map contains {} IDs", result.getCount("vertex"), ids.size());
 
-        List<Object> vertexArguments = new ArrayList<>();
-        vertexArguments.add(T.label);
-        vertexArguments.add(v.label());
+        //Edges only read the ID map, so it no longer needs to be locked
+        ids.freeze();
 
-        if (preserveOriginalId) {
-          vertexArguments.add("originalId");
-          vertexArguments.add(v.id());
+        if (!result.isCancelled()) {
+          //Scanning edges reads them all through a single traversal, so there is only one partition to read
+          List<VertexPartition> edgePartitions = incomplete(options.isGroupEdgesByOutVertex() ? partitions
+              : new HashVertexPartitioner().partition(sourceGraph, 1), checkpoint, EDGE);
+          LOGGER.info("Transforming edges from Graph to Graph using {} threads and {} partitions", options.getThreads(), edgePartitions.size());
+          runPartitioned("edge-transformer", edgePartitions, options,
+              queue -> new EdgeTransformer(sourceGraph, targetGraph, queue, options, ids, checkpoint, writeLock, writers, result), result);
+          LOGGER.info("Finished processing {} edges", result.getCount("edge"));
         }
+      } finally {
+        metrics.close();
+      }
+    }
 
-        v.properties().forEachRemaining(vp -> {
-          if (vp.isPresent() && vp.value() != null) {
-            vertexArguments.add(vp.key());
-            vertexArguments.add(vp.value());
-          }
-        });
+    if (result.isSuccessful()) {
+      LOGGER.info("Finished transforming graph");
+    } else {
+      LOGGER.warn("Finished transforming graph, with {} failures", result.getFailures().size());
+    }
+
+    return result;
+  }
+
+  private static String task(String elementType, VertexPartition partition) {
+    return elementType + "/" + partition.getName();
+  }
+
+  private static List<VertexPartition> incomplete(List<VertexPartition> partitions, Checkpoint checkpoint, String elementType) {
+    List<VertexPartition> incomplete = partitions.stream()
+        .filter(p -> !checkpoint.isComplete(task(elementType, p)))
+        .collect(Collectors.toList());
+
+    if (incomplete.size() < partitions.size())
+      LOGGER.info("Skipping {} partitions which have already been completed", partitions.size() - incomplete.size());
 
-        Vertex newV = targetGraph.addVertex(vertexArguments.toArray(new Object[vertexArguments.size()]));
-        ids.put(v.id(), newV.id());
+    return incomplete;
+  }
+
+  private static boolean restoreIds(Graph sourceGraph, List<VertexPartition> partitions, Checkpoint checkpoint, IdMap ids, TransformResult result) {
+    LOGGER.info("Restoring ID map from checkpoint {}", checkpoint.getFile());
+
+    Kryo kryo = createKryo(sourceGraph);
+    try {
+      for (VertexPartition partition : partitions) {
+        for (Path log : checkpoint.getLogs(task(VERTEX, partition)))
+          ProgressLog.read(log, kryo, ids::put);
       }
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to restore ID map from checkpoint", ioe);
+      result.addFailure("Unable to restore ID map from checkpoint: " + ioe.getMessage());
+      return false;
+    }
+
+    LOGGER.info("Restored {} IDs from checkpoint", ids.size());
+    return true;
+  }
+
+  private static Kryo createKryo(Graph graph) {
+    return graph.io(IoCore.gryo()).mapper().create().createMapper();
+  }
+
+  private static void runPartitioned(String name, List<VertexPartition> partitions, TransformToGremlinOptions options,
+      Function<Queue<VertexPartition>, Runnable> transformerFactory, TransformResult result) {
+    Queue<VertexPartition> queue = new ConcurrentLinkedQueue<>(partitions);
 
-      if (vertexCount % 10000 == 0)
-        LOGGER.info("{} vertices processed", vertexCount);
+    Map<String, Runnable> tasks = new LinkedHashMap<>();
+    for (int i = 0; i < options.getThreads(); i++)
+      tasks.put(name + " " + i, transformerFactory.apply(queue));
+
+    result.addGauge("partitions.pending", queue::size);
+
+    ExecutorService executor = Workers.newExecutor(name, options.getThreads(), false);
+    try {
+      Workers.runAll(executor, tasks, true, result);
+    } finally {
+      Workers.shutdown(executor);
+      result.removeGauge("partitions.pending");
     }
+  }
 
-    LOGGER.info("Finished processing {} vertices", vertexCount);
+  private abstract static class PartitionTransformer<E> implements Runnable {
 
-    LOGGER.info("Transforming edges from Graph to Graph");
-    long edgeCount = 0L;
+    private final Queue<VertexPartition> partitions;
+    private final String elementType;
+    protected final Graph sourceGraph;
+    protected final Graph targetGraph;
+    protected final Checkpoint checkpoint;
+    protected final Object writeLock;
+    protected final TransformResult result;
+    protected final CommitBatcher batcher;
+    protected final BatchedWriter writer;
 
-    Iterator<Edge> iterEdges = sourceGraph.edges();
-    while(iterEdges.hasNext()){
-      Edge e = iterEdges.next();
-      edgeCount++;
+    protected long count = 0L;
+    protected ProgressLog log = null;
 
-      if(includeEdge(e)) {
-        Object outId = ids.get(e.outVertex().id());
-        Object inId = ids.get(e.inVertex().id());
+    public PartitionTransformer(Graph sourceGraph, Graph targetGraph, Queue<VertexPartition> partitions, String elementType,
+        TransformToGremlinOptions options, Checkpoint checkpoint, Object writeLock, Supplier<BatchedWriter> writers, TransformResult result) {
+      this.sourceGraph = sourceGraph;
+      this.targetGraph = targetGraph;
+      this.partitions = partitions;
+      this.elementType = elementType;
+      this.checkpoint = checkpoint;
+      this.writeLock = writeLock;
+      this.result = result;
 
-        if (outId == null || inId == null) {
-          LOGGER.warn("Couldn't find ID in map");
-          return;
-        }
+      this.batcher = new CommitBatcher(targetGraph, elementType, options.getCommitElements(), options.getCommitBytes(), result);
+      this.batcher.setCommitListener(this::batchFinished);
+
+      //Writes are only batched if a supplier of writers has been given
+      this.writer = writers == null ? null : writers.get();
+    }
+
+    @Override
+    public void run() {
+      try {
+        VertexPartition partition;
+        while ((partition = partitions.poll()) != null) {
+          String task = task(elementType, partition);
+          long failed = batcher.getFailed();
+
+          if (checkpoint.isEnabled())
+            startTask(task);
 
-        Iterator<Vertex> src = targetGraph.vertices(outId);
-        Iterator<Vertex> tgt = targetGraph.vertices(inId);
+          Iterator<E> elements = read(partition, sourceGraph.traversal());
 
-        if (src.hasNext() && tgt.hasNext()) {
-          List<Object> edgeArguments = new ArrayList<>();
+          while (elements.hasNext()) {
+            if (Thread.currentThread().isInterrupted())
+              throw new CancellationException(Thread.currentThread().getName() + " has been cancelled");
+
+            transform(elements.next());
+          }
 
-          e.properties().forEachRemaining(ep -> {
-            if (ep.isPresent() && ep.value() != null) {
-              edgeArguments.add(ep.key());
-              edgeArguments.add(ep.value());
-            }
-          });
+          if (checkpoint.isEnabled()) {
+            //Commit at the end of each partition, so that it can be recorded as complete
+            flushWrites();
+            batcher.commit();
+            closeLog();
 
-          src.next().addEdge(e.label(), tgt.next(),
-              edgeArguments.toArray(new Object[edgeArguments.size()]));
+            if (batcher.getFailed() == failed)
+              checkpoint.complete(task);
+          }
         }
+      } finally {
+        flushWrites();
+        batcher.commit();
+        closeLog();
+
+        finish();
+      }
+    }
+
+    /**
+     * Called before a partition is read, when checkpointing is enabled
+     */
+    protected void startTask(String task) {
+      try {
+        log = new ProgressLog(checkpoint.newLog(task), createKryo(sourceGraph));
+      } catch (IOException ioe) {
+        throw new UncheckedIOException("Unable to create progress log for " + task, ioe);
+      }
+    }
+
+    /**
+     * Called whenever a batch has been committed or rolled back
+     */
+    protected void batchFinished(boolean committed) {
+      if (log == null)
+        return;
+
+      if (committed) {
+        log.flush();
+      } else {
+        log.discard();
       }
+    }
 
-      if (edgeCount % 10000 == 0)
-        LOGGER.info("{} edges processed", edgeCount);
+    private void flushWrites() {
+      if (writer != null)
+        writer.flush();
     }
 
-    LOGGER.info("Finished processing {} edges", edgeCount);
+    private void closeLog() {
+      if (log != null) {
+        log.close();
+        log = null;
+      }
+    }
+
+    /**
+     * Returns the elements to transform from partition
+     */
+    protected abstract Iterator<E> read(VertexPartition partition, GraphTraversalSource g);
+
+    /**
+     * Transform a single element into the target graph
+     */
+    protected abstract void transform(E element);
 
-    LOGGER.info("Committing graph");
-    GraphUtils.commitGraph(targetGraph);
+    /**
+     * Called once all partitions have been processed, or processing has stopped
+     */
+    protected abstract void finish();
+
+    /**
+     * Perform a write to the target graph, holding the write lock if there is one
+     */
+    protected <R> R write(Supplier<R> writer) {
+      if (writeLock == null)
+        return writer.get();
+
+      synchronized (writeLock) {
+        return writer.get();
+      }
+    }
   }
 
-  private static boolean includeVertex(Vertex v) {
-    return v != null;
+  private static class VertexTransformer extends PartitionTransformer<Vertex> {
+
+    private final TransformToGremlinOptions options;
+    private final IdMap ids;
+    private final boolean transactional;
+
+    //Source and target IDs, alternating, of vertices written in the current batch
+    private final List<Object> pendingIds = new ArrayList<>();
+
+    public VertexTransformer(Graph sourceGraph, Graph targetGraph, Queue<VertexPartition> partitions, TransformToGremlinOptions options,
+        IdMap ids, Checkpoint checkpoint, Object writeLock, Supplier<BatchedWriter> writers, TransformResult result) {
+      super(sourceGraph, targetGraph, partitions, VERTEX, options, checkpoint, writeLock, writers, result);
+      this.options = options;
+      this.ids = ids;
+      this.transactional = targetGraph.features().graph().supportsTransactions();
+    }
+
+    @Override
+    protected Iterator<Vertex> read(VertexPartition partition, GraphTraversalSource g) {
+      return options.getFilter().vertices(g, partition);
+    }
+
+    @Override
+    protected void transform(Vertex v) {
+      count++;
+
+      //Vertices restored from the checkpoint have already been written
+      if (options.isResume() && ids.get(v.id()) != null) {
+        result.increment("vertex.resumed", 1);
+        return;
+      }
+
+      List<Object> vertexArguments = new ArrayList<>();
+      vertexArguments.add(T.label);
+      vertexArguments.add(v.label());
+
+      if (options.isPreserveOriginalId()) {
+        vertexArguments.add("originalId");
+        vertexArguments.add(v.id());
+      }
+
+      options.getFilter().properties(v).forEachRemaining(vp -> {
+        if (vp.isPresent() && vp.value() != null) {
+          vertexArguments.add(vp.key());
+          vertexArguments.add(vp.value());
+        }
+      });
+
+      if (writer != null) {
+        writeBatched(v, vertexArguments);
+      } else {
+        try {
+          Vertex newV = write(() -> targetGraph.addVertex(vertexArguments.toArray(new Object[vertexArguments.size()])));
+          written(v.id(), newV.id());
+          if (log != null)
+            log.add(v.id(), newV.id());
+
+          batcher.added(newV);
+        } catch (Exception e) {
+          batcher.failed(v.id(), e);
+        }
+      }
+
+      if (count % 10000 == 0)
+        LOGGER.info("{} has processed {} vertices", Thread.currentThread().getName(), count);
+    }
+
+    private void writeBatched(Vertex v, List<Object> vertexArguments) {
+      //The label is the first pair of arguments, and the rest are properties
+      GraphTraversal<Vertex, Vertex> write = BatchedWriter.addVertex(v.label());
+      for (int i = 2; i < vertexArguments.size(); i += 2)
+        write = write.property(vertexArguments.get(i), vertexArguments.get(i + 1));
+
+      Object sourceId = v.id();
+      writer.add(write, (targetId, e) -> {
+        if (targetId != null) {
+          written(sourceId, targetId);
+          if (log != null)
+            log.add(sourceId, targetId);
+
+          batcher.added(v.label(), vertexArguments.subList(2, vertexArguments.size()));
+        } else {
+          batcher.failed(sourceId, e != null ? e : new IllegalStateException("Vertex wasn't created"));
+        }
+      });
+    }
+
+    private void written(Object sourceId, Object targetId) {
+      //Vertices in a transactional graph don't exist until their batch is committed, so edges can't be attached to them yet
+      if (transactional) {
+        pendingIds.add(sourceId);
+        pendingIds.add(targetId);
+      } else {
+        ids.put(sourceId, targetId);
+      }
+    }
+
+    @Override
+    protected void batchFinished(boolean committed) {
+      super.batchFinished(committed);
+
+      if (committed) {
+        for (int i = 0; i < pendingIds.size(); i += 2)
+          ids.put(pendingIds.get(i), pendingIds.get(i + 1));
+      }
+      pendingIds.clear();
+    }
+
+    @Override
+    protected void finish() {
+      LOGGER.info("{} has finished processing {} vertices", Thread.currentThread().getName(), count);
+    }
   }
-  private static boolean includeEdge(Edge e) {
-    return e != null;
+
+  private static class EdgeTransformer extends PartitionTransformer<Edge> {
+
+    private final TransformToGremlinOptions options;
+    private final IdMap ids;
+    private final VertexCache cache;
+    private final boolean transactional;
+    private final Set<Object> written = new HashSet<>();
+
+    public EdgeTransformer(Graph sourceGraph, Graph targetGraph, Queue<VertexPartition> partitions, TransformToGremlinOptions options,
+        IdMap ids, Checkpoint checkpoint, Object writeLock, Supplier<BatchedWriter> writers, TransformResult result) {
+      super(sourceGraph, targetGraph, partitions, EDGE, options, checkpoint, writeLock, writers, result);
+      this.options = options;
+      this.ids = ids;
+
+      this.cache = new VertexCache(targetGraph, options.getVertexCacheSize());
+      this.transactional = targetGraph.features().graph().supportsTransactions();
+    }
+
+    @Override
+    protected void startTask(String task) {
+      //Find the edges from a partially completed partition that have already been written
+      written.clear();
+      if (options.isResume()) {
+        try {
+          for (Path previous : checkpoint.getLogs(task))
+            ProgressLog.read(previous, createKryo(sourceGraph), (sourceId, targetId) -> written.add(sourceId));
+        } catch (IOException ioe) {
+          throw new UncheckedIOException("Unable to read progress logs for " + task, ioe);
+        }
+      }
+
+      super.startTask(task);
+    }
+
+    @Override
+    protected void batchFinished(boolean committed) {
+      super.batchFinished(committed);
+
+      //Vertices are bound to the transaction they were retrieved in, so can't be reused after it is committed
+      if (transactional)
+        cache.clear();
+    }
+
+    @Override
+    protected Iterator<Edge> read(VertexPartition partition, GraphTraversalSource g) {
+      ElementFilter filter = options.getFilter();
+      if (options.isGroupEdgesByOutVertex()) {
+        //Reading edges vertex by vertex means each out vertex is looked up once, and then served from the cache
+        return IteratorUtils.flatMap(filter.vertices(g, partition), filter::outEdges);
+      } else {
+        //Edges from vertices which have been filtered out are read, but skipped as their IDs aren't in the map
+        return filter.edges(g.E());
+      }
+    }
+
+    @Override
+    protected void transform(Edge e) {
+      count++;
+
+      if (!written.isEmpty() && written.contains(e.id())) {
+        result.increment("edge.resumed", 1);
+        return;
+      }
+
+      Object outId = ids.get(e.outVertex().id());
+      Object inId = ids.get(e.inVertex().id());
+
+      if (outId == null || inId == null) {
+        //Edges to vertices which have been filtered out are expected to be missing
+        if (options.getFilter().filtersVertices()) {
+          LOGGER.debug("Couldn't find ID in map for edge {}", e.id());
+        } else {
+          LOGGER.warn("Couldn't find ID in map for edge {}", e.id());
+        }
+        result.increment("edge.skipped", 1);
+        return;
+      }
+
+      if (writer != null) {
+        //Vertices are looked up by the batch traversal itself, so the cache isn't needed
+        writeBatched(e, outId, inId);
+      } else {
+        writeEdge(e, outId, inId);
+      }
+
+      if (count % 10000 == 0) {
+        if (isCacheUsed()) {
+          LOGGER.info("{} has processed {} edges, vertex cache hit rate {}%", Thread.currentThread().getName(), count, String.format("%.1f", cache.getHitRate()));
+        } else {
+          LOGGER.info("{} has processed {} edges", Thread.currentThread().getName(), count);
+        }
+      }
+    }
+
+    /**
+     * Returns true if vertices are looked up through the cache, and so its hit rate is worth reporting
+     */
+    private boolean isCacheUsed() {
+      return writer == null && options.getVertexCacheSize() > 0;
+    }
+
+    private List<Object> edgeArguments(Edge e) {
+      List<Object> edgeArguments = new ArrayList<>();
+
+      options.getFilter().properties(e).forEachRemaining(ep -> {
+        if (ep.isPresent() && ep.value() != null) {
+          edgeArguments.add(ep.key());
+          edgeArguments.add(ep.value());
+        }
+      });
+
+      return edgeArguments;
+    }
+
+    private void writeEdge(Edge e, Object outId, Object inId) {
+      Vertex src = cache.get(outId);
+      Vertex tgt = cache.get(inId);
+
+      if (src != null && tgt != null) {
+        List<Object> edgeArguments = edgeArguments(e);
+
+        try {
+          Edge newE = write(() -> src.addEdge(e.label(), tgt,
+              edgeArguments.toArray(new Object[edgeArguments.size()])));
+          if (log != null)
+            log.add(e.id(), null);
+
+          batcher.added(newE);
+        } catch (Exception ex) {
+          batcher.failed(e.id(), ex);
+        }
+      } else {
+        result.increment("edge.skipped", 1);
+      }
+    }
+
+    private void writeBatched(Edge e, Object outId, Object inId) {
+      GraphTraversal<Object, Edge> write = BatchedWriter.addEdge(outId, e.label(), inId);
+
+      List<Object> edgeArguments = edgeArguments(e);
+      for (int i = 0; i < edgeArguments.size(); i += 2)
+        write = write.property(edgeArguments.get(i), edgeArguments.get(i + 1));
+
+      Object sourceId = e.id();
+      writer.add(write, (targetId, ex) -> {
+        if (targetId != null) {
+          if (log != null)
+            log.add(sourceId, null);
+
+          batcher.added(e.label(), edgeArguments);
+        } else if (ex != null) {
+          batcher.failed(sourceId, ex);
+        } else {
+          //One of the vertices couldn't be found in the target graph
+          result.increment("edge.skipped", 1);
+        }
+      });
+    }
+
+    @Override
+    protected void finish() {
+      if (isCacheUsed()) {
+        LOGGER.info("{} has finished processing {} edges, vertex cache hit rate {}%", Thread.currentThread().getName(), count, String.format("%.1f", cache.getHitRate()));
+      } else {
+        LOGGER.info("{} has finished processing {} edges", Thread.currentThread().getName(), count);
+      }
+    }
   }
 }
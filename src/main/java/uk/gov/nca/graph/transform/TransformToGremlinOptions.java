@@ -0,0 +1,261 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.nio.file.Path;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+import uk.gov.nca.graph.transform.metrics.MetricsFormat;
+import uk.gov.nca.graph.transform.idmap.IdMapType;
+import uk.gov.nca.graph.transform.partition.AutoVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartitioner;
+
+/**
+ * Options controlling how {@link TransformToGremlin} transforms a graph. The setters
+ * return this object, so that calls can be chained.
+ */
+public class TransformToGremlinOptions {
+
+  private boolean preserveOriginalId = false;
+  private int threads = 1;
+  private VertexPartitioner partitioner = new AutoVertexPartitioner();
+  private int partitions = 0;
+  private IdMapType idMapType = IdMapType.COMPACT;
+  private Path idMapDirectory = null;
+  private long commitElements = 10000;
+  private long commitBytes = 0;
+  private int vertexCacheSize = 100000;
+  private boolean groupEdgesByOutVertex = true;
+  private Path checkpointFile = null;
+  private boolean resume = false;
+  private ElementFilter filter = new ElementFilter();
+  private Path metricsFile = null;
+  private MetricsFormat metricsFormat = MetricsFormat.JSON;
+  private long metricsInterval = 10000;
+  private int writeBatchSize = 0;
+  private int writeBatchesInFlight = 4;
+
+  /**
+   * Whether to add the original ID of each vertex as a property
+   */
+  public boolean isPreserveOriginalId() {
+    return preserveOriginalId;
+  }
+  public TransformToGremlinOptions setPreserveOriginalId(boolean preserveOriginalId) {
+    this.preserveOriginalId = preserveOriginalId;
+    return this;
+  }
+
+  /**
+   * Number of threads to use when transforming vertices and edges
+   */
+  public int getThreads() {
+    return threads;
+  }
+  public TransformToGremlinOptions setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+    return this;
+  }
+
+  /**
+   * Partitioner used to split the vertices (and their edges) of the graph between threads, which
+   * defaults to an {@link AutoVertexPartitioner}
+   */
+  public VertexPartitioner getPartitioner() {
+    return partitioner;
+  }
+  public TransformToGremlinOptions setPartitioner(VertexPartitioner partitioner) {
+    this.partitioner = partitioner == null ? new AutoVertexPartitioner() : partitioner;
+    return this;
+  }
+
+  /**
+   * Number of partitions to request from the partitioner, which defaults to the number of threads
+   */
+  public int getPartitions() {
+    return partitions > 0 ? partitions : threads;
+  }
+  public TransformToGremlinOptions setPartitions(int partitions) {
+    this.partitions = partitions;
+    return this;
+  }
+
+  /**
+   * The type of map used to hold the mapping from source to target IDs
+   */
+  public IdMapType getIdMapType() {
+    return idMapType;
+  }
+  public TransformToGremlinOptions setIdMapType(IdMapType idMapType) {
+    this.idMapType = idMapType == null ? IdMapType.COMPACT : idMapType;
+    return this;
+  }
+
+  /**
+   * Directory in which memory mapped ID maps are stored, or null to use the temporary directory
+   */
+  public Path getIdMapDirectory() {
+    return idMapDirectory;
+  }
+  public TransformToGremlinOptions setIdMapDirectory(Path idMapDirectory) {
+    this.idMapDirectory = idMapDirectory;
+    return this;
+  }
+
+  /**
+   * Number of elements to write to a transactional target graph before committing, or 0 to
+   * not limit batches by number of elements
+   */
+  public long getCommitElements() {
+    return commitElements;
+  }
+  public TransformToGremlinOptions setCommitElements(long commitElements) {
+    this.commitElements = Math.max(0, commitElements);
+    return this;
+  }
+
+  /**
+   * Estimated number of bytes to write to a transactional target graph before committing, or 0
+   * to not limit batches by size
+   */
+  public long getCommitBytes() {
+    return commitBytes;
+  }
+  public TransformToGremlinOptions setCommitBytes(long commitBytes) {
+    this.commitBytes = Math.max(0, commitBytes);
+    return this;
+  }
+
+  /**
+   * Maximum number of target vertices to cache whilst creating edges, or 0 to disable the cache.
+   * For transactional target graphs the cache is cleared on every commit, so it never holds more
+   * vertices than are looked up between commits (see {@link #getCommitElements()}).
+   */
+  public int getVertexCacheSize() {
+    return vertexCacheSize;
+  }
+  public TransformToGremlinOptions setVertexCacheSize(int vertexCacheSize) {
+    this.vertexCacheSize = Math.max(0, vertexCacheSize);
+    return this;
+  }
+
+  /**
+   * Whether to read edges grouped by their out vertex, rather than through a single traversal
+   * over all edges, so that each out vertex only needs to be looked up once. Edges are read
+   * partition by partition when grouped, but by a single thread otherwise.
+   */
+  public boolean isGroupEdgesByOutVertex() {
+    return groupEdgesByOutVertex;
+  }
+  public TransformToGremlinOptions setGroupEdgesByOutVertex(boolean groupEdgesByOutVertex) {
+    this.groupEdgesByOutVertex = groupEdgesByOutVertex;
+    return this;
+  }
+
+  /**
+   * File in which to record progress, so that the transformation can be resumed if it stops
+   * part way through, or null to disable checkpointing
+   */
+  public Path getCheckpointFile() {
+    return checkpointFile;
+  }
+  public TransformToGremlinOptions setCheckpointFile(Path checkpointFile) {
+    this.checkpointFile = checkpointFile;
+    return this;
+  }
+
+  /**
+   * Whether to resume from the progress already recorded in the checkpoint file, rather than
+   * starting again. The partitioner and number of partitions must be the same as previously.
+   */
+  public boolean isResume() {
+    return resume;
+  }
+  public TransformToGremlinOptions setResume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  /**
+   * Filter determining which elements and properties are read from the source graph
+   */
+  public ElementFilter getFilter() {
+    return filter;
+  }
+  public TransformToGremlinOptions setFilter(ElementFilter filter) {
+    this.filter = filter == null ? new ElementFilter() : filter;
+    return this;
+  }
+
+  /**
+   * File to periodically append metrics to whilst transforming, or null to only publish
+   * metrics over JMX
+   */
+  public Path getMetricsFile() {
+    return metricsFile;
+  }
+  public TransformToGremlinOptions setMetricsFile(Path metricsFile) {
+    this.metricsFile = metricsFile;
+    return this;
+  }
+
+  /**
+   * Format of the metrics file
+   */
+  public MetricsFormat getMetricsFormat() {
+    return metricsFormat;
+  }
+  public TransformToGremlinOptions setMetricsFormat(MetricsFormat metricsFormat) {
+    this.metricsFormat = metricsFormat == null ? MetricsFormat.JSON : metricsFormat;
+    return this;
+  }
+
+  /**
+   * Interval in milliseconds between writing metrics to the metrics file
+   */
+  public long getMetricsInterval() {
+    return metricsInterval;
+  }
+  public TransformToGremlinOptions setMetricsInterval(long metricsInterval) {
+    this.metricsInterval = metricsInterval;
+    return this;
+  }
+
+  /**
+   * Number of elements to write to the target graph in a single traversal, or 0 to write each
+   * element individually through the Graph API. Batching greatly reduces the number of round
+   * trips to a remote target graph.
+   */
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+  public TransformToGremlinOptions setWriteBatchSize(int writeBatchSize) {
+    this.writeBatchSize = writeBatchSize;
+    return this;
+  }
+
+  /**
+   * Maximum number of batches each thread has in flight at once, when writing in batches to a
+   * remote target graph
+   */
+  public int getWriteBatchesInFlight() {
+    return writeBatchesInFlight;
+  }
+  public TransformToGremlinOptions setWriteBatchesInFlight(int writeBatchesInFlight) {
+    this.writeBatchesInFlight = writeBatchesInFlight;
+    return this;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * Bounded cache of vertices in a graph, keyed by ID, which evicts the least recently used
+ * vertex once full. This avoids repeatedly looking up the same vertices in graphs where each
+ * lookup is a round trip or index seek.
+ *
+ * This class is not thread safe.
+ */
+class VertexCache {
+
+  private final Graph graph;
+  private final Map<Object, Vertex> cache;
+
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * Create a new cache of vertices in graph, holding at most capacity vertices. If capacity
+   * is 0 or less, then nothing is cached.
+   */
+  VertexCache(Graph graph, int capacity) {
+    this.graph = graph;
+    this.cache = new LinkedHashMap<Object, Vertex>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Vertex> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the vertex with the given ID, or null if it doesn't exist in the graph
+   */
+  Vertex get(Object id) {
+    Vertex v = cache.get(id);
+    if (v != null) {
+      hits++;
+      return v;
+    }
+
+    misses++;
+
+    Iterator<Vertex> iter = graph.vertices(id);
+    if (!iter.hasNext())
+      return null;
+
+    v = iter.next();
+    cache.put(id, v);
+
+    return v;
+  }
+
+  /**
+   * Remove all vertices from the cache, for instance because the transaction they were
+   * retrieved in has been committed
+   */
+  void clear() {
+    cache.clear();
+  }
+
+  /**
+   * Returns the percentage of lookups that have been served from the cache
+   */
+  double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0.0 : (100.0 * hits) / lookups;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.checkpoint.Checkpoint;
+import uk.gov.nca.graph.transform.elasticsearch.BulkSink;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+import uk.gov.nca.graph.transform.rules.VisitorTransformRule;
+
+/**
+ * Runs a set of {@link VisitorTransformRule}s with a single partitioned scan of the graph,
+ * passing each vertex to every rule interested in its label, and then finishes each rule.
+ *
+ * If a rule throws an exception whilst visiting a vertex, the failure is recorded and the rule
+ * isn't passed any further vertices, but the other rules carry on.
+ */
+class VisitorScan {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VisitorScan.class);
+
+  private final Graph graph;
+  private final List<VisitorTransformRule> rules;
+  private final List<VertexPartition> partitions;
+  private final BulkSink pipeline;
+  private final TransformToElasticsearchOptions options;
+  private final Checkpoint checkpoint;
+  private final TransformResult result;
+
+  private final Map<VisitorTransformRule, Collection<CompletableFuture<Void>>> submitted = new IdentityHashMap<>();
+  private final Set<VisitorTransformRule> failed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  VisitorScan(Graph graph, List<VisitorTransformRule> rules, List<VertexPartition> partitions, BulkSink pipeline, TransformToElasticsearchOptions options, Checkpoint checkpoint, TransformResult result) {
+    this.graph = graph;
+    this.rules = rules;
+    this.partitions = partitions;
+    this.pipeline = pipeline;
+    this.options = options;
+    this.checkpoint = checkpoint;
+    this.result = result;
+
+    for (VisitorTransformRule rule : rules)
+      submitted.put(rule, checkpoint.isEnabled() ? new ConcurrentLinkedQueue<>() : null);
+  }
+
+  /**
+   * Scan the graph and finish each rule, returning once all workers have finished
+   */
+  void run() {
+    if (rules.isEmpty())
+      return;
+
+    Queue<VertexPartition> queue = new ConcurrentLinkedQueue<>(partitions);
+    Set<String> labels = getLabels();
+
+    LOGGER.info("Scanning graph for {} visitor rules, using {} threads and {} partitions", rules.size(), options.getThreads(), queue.size());
+
+    Map<String, Runnable> tasks = new LinkedHashMap<>();
+    for (int i = 0; i < options.getThreads(); i++)
+      tasks.put("VisitorScan " + i, () -> scan(queue, labels));
+
+    ExecutorService executor = Workers.newExecutor("visitor-scan", options.getThreads(), options.isVirtualThreads());
+    try {
+      Workers.runAll(executor, tasks, true, result);
+    } finally {
+      Workers.shutdown(executor);
+    }
+
+    if (result.isCancelled())
+      return;
+
+    for (VisitorTransformRule rule : rules) {
+      if (!failed.contains(rule))
+        finish(rule);
+    }
+  }
+
+  /**
+   * Returns the labels that any rule is interested in, or null if a rule is interested in all
+   * vertices
+   */
+  private Set<String> getLabels() {
+    Set<String> labels = new HashSet<>();
+    for (VisitorTransformRule rule : rules) {
+      if (rule.getLabels().isEmpty())
+        return null;
+
+      labels.addAll(rule.getLabels());
+    }
+
+    return labels;
+  }
+
+  private void scan(Queue<VertexPartition> partitions, Set<String> labels) {
+    Map<VisitorTransformRule, RuleOutput> outputs = new IdentityHashMap<>();
+    Map<String, List<VisitorTransformRule>> rulesByLabel = new HashMap<>();
+    long count = 0;
+
+    try {
+      VertexPartition partition;
+      while ((partition = partitions.poll()) != null) {
+        //The labels are restricted before the partition, so that the graph can use them to avoid a full scan
+        GraphTraversal<Vertex, Vertex> traversal = graph.traversal().V();
+        if (labels != null)
+          traversal = traversal.hasLabel(P.within(labels));
+
+        Iterator<Vertex> vertices = partition.restrict(traversal);
+        while (vertices.hasNext()) {
+          if (Thread.currentThread().isInterrupted())
+            return;
+
+          Vertex v = vertices.next();
+          count++;
+
+          for (VisitorTransformRule rule : rulesByLabel.computeIfAbsent(v.label(), this::rulesFor))
+            visit(rule, v, outputs);
+
+          if (count % 100000 == 0)
+            LOGGER.info("{} has visited {} vertices", Thread.currentThread().getName(), count);
+        }
+      }
+    } finally {
+      for (Map.Entry<VisitorTransformRule, RuleOutput> e : outputs.entrySet()) {
+        if (!Thread.currentThread().isInterrupted())
+          e.getValue().flush();
+      }
+
+      result.increment("visitorScan.vertices", count);
+    }
+
+    LOGGER.info("{} has finished visiting {} vertices", Thread.currentThread().getName(), count);
+  }
+
+  private List<VisitorTransformRule> rulesFor(String label) {
+    List<VisitorTransformRule> interested = new ArrayList<>();
+    for (VisitorTransformRule rule : rules) {
+      if (rule.getLabels().isEmpty() || rule.getLabels().contains(label))
+        interested.add(rule);
+    }
+
+    return interested;
+  }
+
+  private void visit(VisitorTransformRule rule, Vertex v, Map<VisitorTransformRule, RuleOutput> outputs) {
+    if (failed.contains(rule))
+      return;
+
+    RuleOutput output = outputs.computeIfAbsent(rule, r -> new RuleOutput(r, pipeline,
+        options.getObjectIndexPrefix(), options.getIndexMode(), submitted.get(r), result));
+
+    try {
+      rule.visit(v, output);
+    } catch (RuntimeException e) {
+      if (failed.add(rule)) {
+        LOGGER.error("TransformRule {} failed whilst visiting vertex {}, and will be skipped", rule.getClass().getName(), v.id(), e);
+        result.addFailure("TransformRule " + rule.getClass().getName() + " failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void finish(VisitorTransformRule rule) {
+    RuleOutput output = new RuleOutput(rule, pipeline, options.getObjectIndexPrefix(), options.getIndexMode(), submitted.get(rule), result);
+
+    try {
+      rule.finish(output);
+      output.flush();
+    } catch (RuntimeException e) {
+      LOGGER.error("TransformRule {} failed whilst finishing", rule.getClass().getName(), e);
+      result.addFailure("TransformRule " + rule.getClass().getName() + " failed: " + e.getMessage());
+      return;
+    }
+
+    Collection<CompletableFuture<Void>> futures = submitted.get(rule);
+    if (futures != null)
+      checkpoint.completeWhenDone(RuleOutput.TASK_PREFIX + rule.getClass().getName(), futures);
+
+    LOGGER.info("Finished visitor rule {}", rule.getClass().getSimpleName());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility for running the work of a transformation on a managed executor, rather than on
+ * individually managed threads.
+ */
+public class Workers {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Workers.class);
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+  private Workers(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Create a new executor, named name, with a pool of threadCount threads.
+   *
+   * If virtualThreads is true and the JVM supports them, then each task is instead run on its
+   * own virtual thread. If the JVM doesn't support virtual threads, a pool of platform threads
+   * is used instead.
+   */
+  public static ExecutorService newExecutor(String name, int threadCount, boolean virtualThreads) {
+    if(virtualThreads) {
+      try {
+        return newVirtualThreadExecutor(name);
+      } catch (ReflectiveOperationException e) {
+        LOGGER.warn("Virtual threads are not supported by this JVM, a pool of {} threads will be used instead", threadCount);
+      }
+    }
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    return Executors.newFixedThreadPool(Math.max(1, threadCount),
+        r -> new Thread(r, name + "-" + threadNumber.incrementAndGet()));
+  }
+
+  /**
+   * Create a new work stealing executor, named name, with parallelism threads, so that tasks
+   * of very different sizes can share a pool without leaving threads idle. Tasks are started in
+   * the order they are submitted.
+   *
+   * If virtualThreads is true and the JVM supports them, then each task is instead run on its
+   * own virtual thread.
+   */
+  public static ExecutorService newWorkStealingExecutor(String name, int parallelism, boolean virtualThreads) {
+    if(virtualThreads) {
+      try {
+        return newVirtualThreadExecutor(name);
+      } catch (ReflectiveOperationException e) {
+        LOGGER.warn("Virtual threads are not supported by this JVM, a pool of {} threads will be used instead", parallelism);
+      }
+    }
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+      ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      t.setName(name + "-" + threadNumber.incrementAndGet());
+      return t;
+    }, null, true);
+  }
+
+  private static ExecutorService newVirtualThreadExecutor(String name) throws ReflectiveOperationException {
+    //Use reflection so that we can still run on JVMs without virtual thread support
+    Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+    Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+    builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+    ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+    return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+        .invoke(null, factory);
+  }
+
+  /**
+   * Run all the tasks on the executor, and wait for them to complete. The key of the tasks map
+   * is used to describe the task in logs and in the result.
+   *
+   * Any task that throws an exception is recorded as a failure in result. If cancelOnFailure is
+   * true, then the remaining tasks are cancelled when the first failure occurs. If the calling
+   * thread is interrupted whilst waiting, then all remaining tasks are cancelled and the result
+   * is marked as cancelled.
+   *
+   * Returns true if all tasks completed successfully.
+   */
+  public static boolean runAll(ExecutorService executor, Map<String, Runnable> tasks, boolean cancelOnFailure, TransformResult result) {
+    CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+    Map<Future<String>, String> futures = new HashMap<>();
+
+    tasks.forEach((name, task) -> futures.put(completionService.submit(task, name), name));
+
+    boolean success = true;
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        Future<String> future = completionService.take();
+
+        try {
+          future.get();
+        } catch (CancellationException ce) {
+          LOGGER.debug("Task {} was cancelled", futures.get(future));
+        } catch (ExecutionException ee) {
+          String name = futures.get(future);
+          LOGGER.error("Task {} failed", name, ee.getCause());
+          result.addFailure(name + " failed: " + ee.getCause());
+          success = false;
+
+          if (cancelOnFailure)
+            cancelAll(futures.keySet());
+        }
+      }
+    } catch (InterruptedException ie) {
+      LOGGER.warn("Interrupted whilst waiting for tasks to complete, remaining tasks will be cancelled");
+      Thread.currentThread().interrupt();
+
+      cancelAll(futures.keySet());
+      result.setCancelled();
+
+      return false;
+    }
+
+    return success;
+  }
+
+  private static void cancelAll(Iterable<Future<String>> futures) {
+    futures.forEach(f -> f.cancel(true));
+  }
+
+  /**
+   * Returns the number of tasks waiting to be run by the executor, or 0 if this can't be
+   * determined (e.g. for virtual threads, which don't queue tasks)
+   */
+  public static long queueDepth(ExecutorService executor) {
+    if (executor instanceof ForkJoinPool) {
+      ForkJoinPool pool = (ForkJoinPool) executor;
+      return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    } else if (executor instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executor).getQueue().size();
+    }
+
+    return 0;
+  }
+
+  /**
+   * Shutdown the executor, waiting a short time for any running tasks to finish
+   */
+  public static void shutdown(ExecutorService executor) {
+    executor.shutdownNow();
+
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        LOGGER.warn("Executor did not terminate within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the progress of a long running transformation in a local file, so that if the
+ * transformation stops part way through it can be resumed without repeating completed work.
+ *
+ * Progress is recorded as a set of completed tasks (e.g. a partition of vertices, or a rule),
+ * written one per line to the checkpoint file as soon as each task completes. Alongside the
+ * checkpoint file, a directory is used to hold {@link ProgressLog}s, which record progress within
+ * tasks (such as the IDs of elements already written).
+ *
+ * Task names must be the same each time the transformation is run, so partitioned tasks can only
+ * be resumed with the same partitioner and number of partitions.
+ *
+ * This class is thread safe.
+ */
+public class Checkpoint implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Checkpoint.class);
+
+  private final Path file;
+  private final Path directory;
+  private final Set<String> completed = ConcurrentHashMap.newKeySet();
+  private final FileChannel channel;
+
+  private Checkpoint(Path file, boolean resume) throws IOException {
+    this.file = file;
+    this.directory = Paths.get(file.toString() + ".d");
+
+    if (resume && Files.exists(file)) {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (!line.isEmpty())
+          completed.add(line);
+      }
+
+      LOGGER.info("Resuming from checkpoint {}, with {} tasks already completed", file, completed.size());
+    } else {
+      deleteLogs();
+    }
+
+    Files.createDirectories(directory);
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private Checkpoint() {
+    this.file = null;
+    this.directory = null;
+    this.channel = null;
+  }
+
+  /**
+   * Open the checkpoint held in file. If resume is true then any progress already recorded in
+   * the file is loaded, otherwise any existing progress is discarded.
+   */
+  public static Checkpoint open(Path file, boolean resume) throws IOException {
+    return new Checkpoint(file, resume);
+  }
+
+  /**
+   * Returns a checkpoint which doesn't record anything, for when checkpointing isn't required
+   */
+  public static Checkpoint disabled() {
+    return new Checkpoint();
+  }
+
+  /**
+   * Returns true if progress is being recorded
+   */
+  public boolean isEnabled() {
+    return channel != null;
+  }
+
+  /**
+   * Returns true if task has previously been recorded as complete
+   */
+  public boolean isComplete(String task) {
+    return completed.contains(task);
+  }
+
+  /**
+   * Record that task has completed, and write it to disk
+   */
+  public synchronized void complete(String task) {
+    if (!isEnabled() || !completed.add(task))
+      return;
+
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap((task + "\n").getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+
+      channel.force(false);
+      LOGGER.debug("Recorded task {} as complete", task);
+    } catch (IOException ioe) {
+      LOGGER.warn("Unable to record task {} as complete in checkpoint {}", task, file, ioe);
+    }
+  }
+
+  /**
+   * Record that task has completed once all of the futures have completed successfully.
+   * If any of them fail, the task isn't recorded.
+   */
+  public void completeWhenDone(String task, Collection<? extends CompletableFuture<?>> futures) {
+    if (!isEnabled())
+      return;
+
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+      if (e == null) {
+        complete(task);
+      } else {
+        LOGGER.warn("Task {} didn't complete successfully, so won't be recorded as complete", task);
+      }
+    });
+  }
+
+  /**
+   * Create a new log, in which progress within task can be recorded. A task may have several
+   * logs if it has been resumed.
+   */
+  public Path newLog(String task) throws IOException {
+    String prefix = logPrefix(task);
+    for (int i = 0; ; i++) {
+      Path log = directory.resolve(prefix + i + ".log");
+      if (!Files.exists(log))
+        return Files.createFile(log);
+    }
+  }
+
+  /**
+   * Returns all the logs previously created for task
+   */
+  public List<Path> getLogs(String task) throws IOException {
+    if (!isEnabled() || !Files.isDirectory(directory))
+      return Collections.emptyList();
+
+    List<Path> logs = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, logPrefix(task) + "*.log")) {
+      stream.forEach(logs::add);
+    }
+
+    Collections.sort(logs);
+    return logs;
+  }
+
+  private static String logPrefix(String task) {
+    //Task names may contain labels, which aren't necessarily valid file names
+    return task.replaceAll("[^A-Za-z0-9._-]", "_") + ".";
+  }
+
+  private void deleteLogs() throws IOException {
+    if (!Files.isDirectory(directory))
+      return;
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+      for (Path log : stream)
+        Files.delete(log);
+    }
+  }
+
+  /**
+   * Returns the file that progress is recorded in, or null if checkpointing is disabled
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!isEnabled())
+      return;
+
+    try {
+      channel.close();
+    } catch (IOException ioe) {
+      LOGGER.warn("Unable to close checkpoint {}", file, ioe);
+    }
+  }
+}
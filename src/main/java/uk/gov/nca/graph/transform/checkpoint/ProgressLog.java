@@ -0,0 +1,138 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.checkpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
+import org.apache.tinkerpop.shaded.kryo.KryoException;
+import org.apache.tinkerpop.shaded.kryo.io.Input;
+import org.apache.tinkerpop.shaded.kryo.io.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of pairs of objects (typically a source ID, and the corresponding target ID), recording
+ * progress within a task of a {@link Checkpoint}. Pairs are serialised with Kryo, for instance
+ * as created by a graph's Gryo mapper.
+ *
+ * Pairs are held in memory until {@link #flush()} is called, and can be discarded until then, so
+ * that only pairs which have been committed to the target are written to disk. If the process
+ * stops whilst writing, the log may end with an incomplete pair which is ignored when reading.
+ *
+ * This class is not thread safe.
+ */
+public class ProgressLog implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProgressLog.class);
+
+  private final Path file;
+  private final Kryo kryo;
+  private final FileChannel channel;
+  private final Output output;
+  private final List<Object> pending = new ArrayList<>();
+
+  /**
+   * Open a log, which will append to file
+   */
+  public ProgressLog(Path file, Kryo kryo) throws IOException {
+    this.file = file;
+    this.kryo = kryo;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+    OutputStream os = Channels.newOutputStream(channel);
+    this.output = new Output(os, 64 * 1024);
+  }
+
+  /**
+   * Add a pair to the log, which will be written on the next flush
+   */
+  public void add(Object key, Object value) {
+    pending.add(key);
+    pending.add(value);
+  }
+
+  /**
+   * Discard any pairs added since the last flush
+   */
+  public void discard() {
+    pending.clear();
+  }
+
+  /**
+   * Write any pairs added since the last flush to disk
+   */
+  public void flush() {
+    if (pending.isEmpty())
+      return;
+
+    for (Object o : pending)
+      kryo.writeClassAndObject(output, o);
+
+    output.flush();
+    pending.clear();
+
+    try {
+      channel.force(false);
+    } catch (IOException ioe) {
+      LOGGER.warn("Unable to force progress log {} to disk", file, ioe);
+    }
+  }
+
+  /**
+   * Flush the log and close the file
+   */
+  @Override
+  public void close() {
+    flush();
+    output.close();
+  }
+
+  /**
+   * Read all the pairs in file, passing each one to consumer, and return the number read
+   */
+  public static long read(Path file, Kryo kryo, BiConsumer<Object, Object> consumer) throws IOException {
+    long count = 0;
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Input input = new Input(Channels.newInputStream(channel), 64 * 1024)) {
+      while (!input.eof()) {
+        Object key;
+        Object value;
+        try {
+          key = kryo.readClassAndObject(input);
+          value = kryo.readClassAndObject(input);
+        } catch (KryoException ke) {
+          LOGGER.warn("Progress log {} ends with an incomplete entry, which will be ignored", file);
+          break;
+        }
+
+        consumer.accept(key, value);
+        count++;
+      }
+    }
+
+    return count;
+  }
+}
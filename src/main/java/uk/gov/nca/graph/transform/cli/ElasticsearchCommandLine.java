@@ -0,0 +1,138 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+
+/**
+ * Command line options shared by the tools which write to Elasticsearch
+ */
+class ElasticsearchCommandLine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchCommandLine.class);
+
+    private ElasticsearchCommandLine(){
+        //Private constructor for utility class
+    }
+
+    /**
+     * Add the options used to connect to Elasticsearch
+     */
+    static void addConnectionOptions(Options options) {
+        options.addOption(new Option("s", "scheme", true, "Elasticsearch scheme"));
+        options.addOption(new Option("h", "host", true, "Elasticsearch host"));
+        options.addOption(new Option("p", "port", true, "Elasticsearch port"));
+        options.addOption(new Option("c", "cluster", true, "Elasticsearch cluster"));
+        options.addOption(new Option("u", "username", true, "Elasticsearch username"));
+        options.addOption(new Option("w", "password", true, "Elasticsearch password"));
+    }
+
+    /**
+     * Add the options controlling how bulk requests are sent to Elasticsearch
+     */
+    static void addBulkOptions(Options options) {
+        options.addOption(new Option(null, "maxInFlight", true, "Maximum number of concurrent bulk requests to Elasticsearch"));
+        options.addOption(new Option(null, "bulkMinBytes", true, "Minimum size of a bulk request in bytes"));
+        options.addOption(new Option(null, "bulkMaxBytes", true, "Maximum size of a bulk request in bytes"));
+        options.addOption(new Option(null, "bulkMinActions", true, "Minimum number of actions in a bulk request"));
+        options.addOption(new Option(null, "bulkMaxActions", true, "Maximum number of actions in a bulk request"));
+        options.addOption(new Option(null, "bulkTargetLatency", true, "Target latency of a bulk request in milliseconds, above which bulk requests are made smaller"));
+        options.addOption(new Option(null, "bulkRetries", true, "Number of times to retry items rejected by Elasticsearch"));
+        options.addOption(new Option(null, "bulkBackoff", true, "Initial time in milliseconds to wait before retrying rejected items"));
+    }
+
+    /**
+     * Create a client builder from the connection options
+     */
+    static RestClientBuilder createClientBuilder(CommandLine cmd) {
+        String host = cmd.getOptionValue('h', "localhost");
+
+        int port;
+        try {
+            port = Integer.parseInt(cmd.getOptionValue('p', "9200"));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse port, default will be used");
+            port = 9200;
+        }
+
+        String scheme = cmd.getOptionValue('s', "https");
+
+        Settings.Builder settings = Settings.builder();
+        settings.put("cluster.name", cmd.getOptionValue('c', "elasticsearch"));
+
+        String username = cmd.getOptionValue('u');
+        String password = cmd.getOptionValue('w');
+
+        RestClientBuilder builder = RestClient.builder(new HttpHost(host, port, scheme));
+        if (username != null && !username.isEmpty() && password != null && !password
+            .isEmpty()) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY,
+                new UsernamePasswordCredentials(username, password));
+
+            builder = builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+                .setDefaultCredentialsProvider(credentialsProvider)
+            );
+        }
+
+        return builder;
+    }
+
+    /**
+     * Apply the bulk options to transformOptions
+     */
+    static TransformToElasticsearchOptions applyBulkOptions(CommandLine cmd, TransformToElasticsearchOptions transformOptions) {
+        TransformToElasticsearchOptions defaults = new TransformToElasticsearchOptions();
+        return transformOptions
+            .setMaxInFlight((int) parseLong(cmd, "maxInFlight", defaults.getMaxInFlight()))
+            .setBulkMinBytes(parseLong(cmd, "bulkMinBytes", defaults.getBulkMinBytes()))
+            .setBulkMaxBytes(parseLong(cmd, "bulkMaxBytes", defaults.getBulkMaxBytes()))
+            .setBulkMinActions((int) parseLong(cmd, "bulkMinActions", defaults.getBulkMinActions()))
+            .setBulkMaxActions((int) parseLong(cmd, "bulkMaxActions", defaults.getBulkMaxActions()))
+            .setBulkTargetLatency(parseLong(cmd, "bulkTargetLatency", defaults.getBulkTargetLatency()))
+            .setBulkRetries((int) parseLong(cmd, "bulkRetries", defaults.getBulkRetries()))
+            .setBulkBackoff(parseLong(cmd, "bulkBackoff", defaults.getBulkBackoff()));
+    }
+
+    /**
+     * Parse option as a long, returning defaultValue if it isn't present or can't be parsed
+     */
+    static long parseLong(CommandLine cmd, String option, long defaultValue) {
+        if(!cmd.hasOption(option))
+            return defaultValue;
+
+        try {
+            return Long.parseLong(cmd.getOptionValue(option));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse {}, default will be used", option);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.cli;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+
+/**
+ * Command line options used to filter the elements and properties read from a graph
+ */
+class FilterCommandLine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterCommandLine.class);
+
+    private FilterCommandLine(){
+        //Private constructor for utility class
+    }
+
+    /**
+     * Add the options used to create an {@link ElementFilter}
+     */
+    static void addFilterOptions(Options options) {
+        options.addOption(new Option(null, "vertexLabels", true, "Comma separated list of vertex labels to include (defaults to all labels)"));
+        options.addOption(new Option(null, "excludeVertexLabels", true, "Comma separated list of vertex labels to exclude"));
+        options.addOption(new Option(null, "edgeLabels", true, "Comma separated list of edge labels to include (defaults to all labels)"));
+        options.addOption(new Option(null, "excludeEdgeLabels", true, "Comma separated list of edge labels to exclude"));
+        options.addOption(new Option(null, "properties", true, "Comma separated list of property keys to include (defaults to all properties)"));
+        options.addOption(new Option(null, "excludeProperties", true, "Comma separated list of property keys to exclude"));
+        options.addOption(new Option(null, "has", true, "Comma separated list of key=value pairs, only including vertices with those (string) property values"));
+    }
+
+    /**
+     * Create a filter from the filter options
+     */
+    static ElementFilter createFilter(CommandLine cmd) {
+        ElementFilter filter = new ElementFilter()
+            .setVertexLabels(list(cmd, "vertexLabels"))
+            .setExcludedVertexLabels(list(cmd, "excludeVertexLabels"))
+            .setEdgeLabels(list(cmd, "edgeLabels"))
+            .setExcludedEdgeLabels(list(cmd, "excludeEdgeLabels"))
+            .setPropertyKeys(list(cmd, "properties"))
+            .setExcludedPropertyKeys(list(cmd, "excludeProperties"));
+
+        List<String> conditions = list(cmd, "has");
+        if(conditions != null) {
+            for(String condition : conditions) {
+                int i = condition.indexOf('=');
+                if(i <= 0) {
+                    LOGGER.error("Unable to parse condition {}, it will be ignored", condition);
+                    continue;
+                }
+
+                filter.addVertexCondition(condition.substring(0, i), P.eq(condition.substring(i + 1)));
+            }
+        }
+
+        return filter;
+    }
+
+    private static List<String> list(CommandLine cmd, String option) {
+        if(!cmd.hasOption(option))
+            return null;
+
+        return Arrays.asList(cmd.getOptionValue(option).split("\\s*,\\s*"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.cli;
+
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.addBulkOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.addConnectionOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.applyBulkOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.createClientBuilder;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.parseLong;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.addMetricsOptions;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFile;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFormat;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsInterval;
+import static uk.gov.nca.graph.utils.cli.CommandLineUtils.createRequiredOption;
+import static uk.gov.nca.graph.utils.cli.CommandLineUtils.parseCommandLine;
+
+import java.nio.file.Paths;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+import uk.gov.nca.graph.transform.elasticsearch.BulkFileLoader;
+
+public class LoadBulkFilesToElasticsearch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadBulkFilesToElasticsearch.class);
+
+    public static void main(String[] args) {
+        Options options = new Options();
+
+        options.addOption(createRequiredOption("d", "directory", true, "Directory containing bulk files written by TransformGraphToElasticsearch --outputDir"));
+        addConnectionOptions(options);
+        options.addOption(new Option("j", "threads", true, "Number of files to load in parallel (default 4)"));
+        options.addOption(new Option(null, "virtualThreads", false, "Run work on virtual threads, where supported by the JVM"));
+        addBulkOptions(options);
+        options.addOption(new Option(null, "checkpoint", true, "File in which to record which files have been loaded, so that loading can be resumed"));
+        options.addOption(new Option(null, "resume", false, "Resume from the progress recorded in the checkpoint file, skipping files that have already been loaded"));
+        addMetricsOptions(options);
+
+        CommandLine cmd = parseCommandLine(args, options, LoadBulkFilesToElasticsearch.class, "Load bulk files, previously written by TransformGraphToElasticsearch, into Elasticsearch");
+        if(cmd == null)
+            return;
+
+        if(cmd.hasOption("resume") && !cmd.hasOption("checkpoint")) {
+            LOGGER.error("A checkpoint file must be specified in order to resume");
+            return;
+        }
+
+        TransformToElasticsearchOptions loadOptions = applyBulkOptions(cmd, new TransformToElasticsearchOptions())
+            .setThreads((int) parseLong(cmd, "threads", 4))
+            .setVirtualThreads(cmd.hasOption("virtualThreads"))
+            .setCheckpointFile(cmd.hasOption("checkpoint") ? Paths.get(cmd.getOptionValue("checkpoint")) : null)
+            .setResume(cmd.hasOption("resume"))
+            .setMetricsFile(getMetricsFile(cmd))
+            .setMetricsFormat(getMetricsFormat(cmd))
+            .setMetricsInterval(getMetricsInterval(cmd));
+
+        LOGGER.info("Connecting to Elasticsearch");
+        TransformResult result = BulkFileLoader.load(Paths.get(cmd.getOptionValue('d')), createClientBuilder(cmd), loadOptions);
+        if(!result.isSuccessful())
+            LOGGER.error("Loading did not complete successfully: {}", result.getFailures());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.metrics.MetricsFormat;
+
+/**
+ * Command line options controlling where metrics are written whilst transforming
+ */
+class MetricsCommandLine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsCommandLine.class);
+
+    static final long DEFAULT_INTERVAL = 10000;
+
+    private MetricsCommandLine(){
+        //Private constructor for utility class
+    }
+
+    /**
+     * Add the options used to write metrics to a file
+     */
+    static void addMetricsOptions(Options options) {
+        options.addOption(new Option(null, "metricsFile", true, "File to periodically append metrics to (metrics are always available over JMX)"));
+        options.addOption(new Option(null, "metricsFormat", true, "Format of the metrics file: json (default) or csv"));
+        options.addOption(new Option(null, "metricsInterval", true, "Interval in milliseconds between writing metrics (default 10000)"));
+    }
+
+    /**
+     * Returns the metrics file, or null if one hasn't been specified
+     */
+    static Path getMetricsFile(CommandLine cmd) {
+        return cmd.hasOption("metricsFile") ? Paths.get(cmd.getOptionValue("metricsFile")) : null;
+    }
+
+    /**
+     * Returns the metrics format, or JSON if it isn't specified or recognised
+     */
+    static MetricsFormat getMetricsFormat(CommandLine cmd) {
+        try {
+            return MetricsFormat.valueOf(cmd.getOptionValue("metricsFormat", "json").toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            LOGGER.error("Unrecognised metrics format, default will be used");
+            return MetricsFormat.JSON;
+        }
+    }
+
+    /**
+     * Returns the interval between writing metrics
+     */
+    static long getMetricsInterval(CommandLine cmd) {
+        try {
+            return Long.parseLong(cmd.getOptionValue("metricsInterval", String.valueOf(DEFAULT_INTERVAL)));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse metrics interval, default will be used");
+            return DEFAULT_INTERVAL;
+        }
+    }
+}
@@ -16,25 +16,34 @@ limitations under the License.
 
 package uk.gov.nca.graph.transform.cli;
 
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.addBulkOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.addConnectionOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.applyBulkOptions;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.createClientBuilder;
+import static uk.gov.nca.graph.transform.cli.ElasticsearchCommandLine.parseLong;
+import static uk.gov.nca.graph.transform.cli.FilterCommandLine.addFilterOptions;
+import static uk.gov.nca.graph.transform.cli.FilterCommandLine.createFilter;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.addMetricsOptions;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFile;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFormat;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsInterval;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.createRequiredOption;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.parseCommandLine;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.util.GraphFactory;
-import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestClientBuilder;
-import org.elasticsearch.common.settings.Settings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
 import uk.gov.nca.graph.transform.TransformToElasticsearch;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+import uk.gov.nca.graph.transform.elasticsearch.IndexMode;
+import uk.gov.nca.graph.transform.partition.VertexPartitioners;
 import uk.gov.nca.graph.utils.GraphUtils;
 
 public class TransformGraphToElasticsearch {
@@ -48,54 +57,42 @@ public class TransformGraphToElasticsearch {
 
         options.addOption(new Option("r", "rawIndex", true, "Prefix to use for Elasticsearch indices when inserting raw data"));
         options.addOption(new Option("o", "objectIndex", true, "Prefix to use for Elasticsearch indices when inserting processed data"));
-        options.addOption(new Option("s", "scheme", true, "Elasticsearch scheme"));
-        options.addOption(new Option("h", "host", true, "Elasticsearch host"));
-        options.addOption(new Option("p", "port", true, "Elasticsearch port"));
-        options.addOption(new Option("c", "cluster", true, "Elasticsearch cluster"));
-        options.addOption(new Option("u", "username", true, "Elasticsearch username"));
-        options.addOption(new Option("w", "password", true, "Elasticsearch password"));
+        addConnectionOptions(options);
         options.addOption(new Option("j", "threads", true, "Thread count for ingesting raw data"));
+        options.addOption(new Option(null, "partitioner", true, "How to partition vertices between threads: auto (default, by label if there are enough labels, otherwise hash), label, hash (every thread reads every vertex), or the name of a VertexPartitioner class"));
+        options.addOption(new Option(null, "partitions", true, "Number of partitions to split vertices into (defaults to the thread count)"));
+        options.addOption(new Option(null, "virtualThreads", false, "Run work on virtual threads, where supported by the JVM"));
+        options.addOption(new Option(null, "rules", true, "Comma separated list of TransformRule classes, or packages containing them, to use (defaults to rules registered with ServiceLoader, or else scanning the classpath)"));
+        options.addOption(new Option(null, "ruleThreads", true, "Number of threads shared by the transform rules (defaults to the number of processors)"));
+        addBulkOptions(options);
+        options.addOption(new Option(null, "indexMode", true, "How to write documents which may already exist: create (skip existing), index (overwrite, default) or update (replace only if changed)"));
+        options.addOption(new Option(null, "noBootstrap", false, "Don't create indices up front, or disable refreshes and replicas whilst loading"));
+        options.addOption(new Option(null, "mappingSample", true, "Number of vertices per label to sample when inferring mappings for raw indices (default 1000, 0 for dynamic mapping)"));
+        options.addOption(new Option(null, "replicas", true, "Number of replicas for indices created by the transformation (default 1)"));
+        options.addOption(new Option(null, "forceMerge", true, "Number of segments to force merge indices down to once loading has finished (default 0, no force merge)"));
+        options.addOption(new Option(null, "checkpoint", true, "File in which to record progress, so that the transformation can be resumed"));
+        options.addOption(new Option(null, "resume", false, "Resume from the progress recorded in the checkpoint file, skipping work that has already been done"));
+        options.addOption(new Option(null, "incremental", true, "File holding the state of the last successful run, so that only changed vertices (and rules which read them) are transformed"));
+        options.addOption(new Option(null, "timestampProperty", true, "Property holding the last modified time of each vertex, used by --incremental (defaults to comparing content hashes)"));
+        options.addOption(new Option(null, "outputDir", true, "Write bulk files to this directory, for loading later with LoadBulkFilesToElasticsearch, rather than writing to Elasticsearch"));
+        addFilterOptions(options);
+        options.addOption(new Option(null, "maxFileBytes", true, "Maximum size in bytes of each bulk file before compression (default 1000000000)"));
+        addMetricsOptions(options);
 
         CommandLine cmd = parseCommandLine(args, options, TransformGraphToElasticsearch.class, "Transform a graph from a Gremlin graph into an Elasticsearch index, filtering data as required");
         if(cmd == null)
             return;
 
+        if(cmd.hasOption("resume") && !cmd.hasOption("checkpoint")) {
+            LOGGER.error("A checkpoint file must be specified in order to resume");
+            return;
+        }
+
         Graph graph = null;
         try{
             LOGGER.info("Connecting to Gremlin graph");
             graph = GraphFactory.open(cmd.getOptionValue('g'));
 
-            LOGGER.info("Connecting to Elasticsearch");
-            String host = cmd.getOptionValue('h', "localhost");
-
-            int port;
-            try {
-                port = Integer.parseInt(cmd.getOptionValue('p', "9200"));
-            } catch (NumberFormatException nfe) {
-                LOGGER.error("Unable to parse port, default will be used");
-                port = 9200;
-            }
-
-            String scheme = cmd.getOptionValue('s', "https");
-
-            Settings.Builder settings = Settings.builder();
-            settings.put("cluster.name", cmd.getOptionValue('c', "elasticsearch"));
-
-            String username = cmd.getOptionValue('u');
-            String password = cmd.getOptionValue('w');
-
-            RestClientBuilder builder = RestClient.builder(new HttpHost(host, port, scheme));
-            if (username != null && !username.isEmpty() && password != null && !password
-                .isEmpty()) {
-                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                credentialsProvider.setCredentials(AuthScope.ANY,
-                    new UsernamePasswordCredentials(username, password));
-
-                builder = builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
-                    .setDefaultCredentialsProvider(credentialsProvider)
-                );
-            }
-
             int threads;
             try {
                 threads = Integer.parseInt(cmd.getOptionValue('j', "4"));
@@ -104,9 +101,47 @@ public class TransformGraphToElasticsearch {
                 threads = 4;
             }
 
-            TransformToElasticsearch
-                .transformGraph(graph, builder, cmd.getOptionValue('r'), cmd.getOptionValue('o'),
-                    threads);
+            TransformToElasticsearchOptions defaults = new TransformToElasticsearchOptions();
+            TransformToElasticsearchOptions transformOptions = applyBulkOptions(cmd, new TransformToElasticsearchOptions())
+                .setRawIndexPrefix(cmd.getOptionValue('r'))
+                .setObjectIndexPrefix(cmd.getOptionValue('o'))
+                .setThreads(threads)
+                .setPartitioner(VertexPartitioners.create(cmd.getOptionValue("partitioner")))
+                .setPartitions((int) parseLong(cmd, "partitions", 0))
+                .setVirtualThreads(cmd.hasOption("virtualThreads"))
+                .setRules(cmd.hasOption("rules") ? Arrays.asList(cmd.getOptionValue("rules").split("\\s*,\\s*")) : null)
+                .setRuleThreads((int) parseLong(cmd, "ruleThreads", 0))
+                .setBootstrapIndices(!cmd.hasOption("noBootstrap"))
+                .setMappingSampleSize((int) parseLong(cmd, "mappingSample", defaults.getMappingSampleSize()))
+                .setReplicas((int) parseLong(cmd, "replicas", defaults.getReplicas()))
+                .setForceMergeSegments((int) parseLong(cmd, "forceMerge", defaults.getForceMergeSegments()))
+                .setCheckpointFile(cmd.hasOption("checkpoint") ? Paths.get(cmd.getOptionValue("checkpoint")) : null)
+                .setResume(cmd.hasOption("resume"))
+                .setDeltaStateFile(cmd.hasOption("incremental") ? Paths.get(cmd.getOptionValue("incremental")) : null)
+                .setTimestampProperty(cmd.getOptionValue("timestampProperty"))
+                .setBulkFileMaxBytes(parseLong(cmd, "maxFileBytes", defaults.getBulkFileMaxBytes()))
+                .setFilter(createFilter(cmd))
+                .setMetricsFile(getMetricsFile(cmd))
+                .setMetricsFormat(getMetricsFormat(cmd))
+                .setMetricsInterval(getMetricsInterval(cmd));
+
+            String indexMode = cmd.getOptionValue("indexMode", "index").toUpperCase();
+            try {
+                transformOptions.setIndexMode(IndexMode.valueOf("UPDATE".equals(indexMode) ? "UPDATE_IF_CHANGED" : indexMode));
+            } catch (IllegalArgumentException iae) {
+                LOGGER.error("Unrecognised index mode, default will be used");
+            }
+
+            TransformResult result;
+            if(cmd.hasOption("outputDir")) {
+                result = TransformToElasticsearch.transformGraphToFiles(graph, Paths.get(cmd.getOptionValue("outputDir")), transformOptions);
+            } else {
+                LOGGER.info("Connecting to Elasticsearch");
+                result = TransformToElasticsearch.transformGraph(graph, createClientBuilder(cmd), transformOptions);
+            }
+
+            if(!result.isSuccessful())
+                LOGGER.error("Transformation did not complete successfully: {}", result.getFailures());
         }finally {
             if(graph != null) {
                 LOGGER.info("Closing connection to Gremlin graph");
@@ -16,16 +16,27 @@ limitations under the License.
 
 package uk.gov.nca.graph.transform.cli;
 
+import static uk.gov.nca.graph.transform.cli.FilterCommandLine.addFilterOptions;
+import static uk.gov.nca.graph.transform.cli.FilterCommandLine.createFilter;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.addMetricsOptions;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFile;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsFormat;
+import static uk.gov.nca.graph.transform.cli.MetricsCommandLine.getMetricsInterval;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.createRequiredOption;
 import static uk.gov.nca.graph.utils.cli.CommandLineUtils.parseCommandLine;
 
+import java.nio.file.Paths;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.util.GraphFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
 import uk.gov.nca.graph.transform.TransformToGremlin;
+import uk.gov.nca.graph.transform.TransformToGremlinOptions;
+import uk.gov.nca.graph.transform.idmap.IdMapType;
+import uk.gov.nca.graph.transform.partition.VertexPartitioners;
 import uk.gov.nca.graph.utils.GraphUtils;
 
 public class TransformGraphToGremlin {
@@ -38,19 +49,86 @@ public class TransformGraphToGremlin {
         options.addOption(createRequiredOption("i", "inputgraph", true, "Configuration file to connect to source Gremlin graph"));
         options.addOption(createRequiredOption("o", "outputgraph", true, "Configuration file to connect to target Gremlin graph"));
         options.addOption("p", "preserveid", false, "Preserve the original ID (as a new property)");
+        options.addOption("m", "idmap", true, "Type of map to hold source to target IDs: hash, compact (default) or mapped (memory mapped to disk)");
+        options.addOption(null, "idmapdir", true, "Directory to hold memory mapped ID maps (defaults to the temporary directory)");
+        options.addOption("b", "batch", true, "Number of elements to commit at once to a transactional target graph (default 10000, 0 for no limit)");
+        options.addOption(null, "batchbytes", true, "Estimated size in bytes of elements to commit at once to a transactional target graph (default no limit)");
+        options.addOption(null, "cachesize", true, "Number of target vertices to cache whilst creating edges (default 100000, 0 to disable). For transactional target graphs the cache is cleared on every commit, so is bounded by --batch");
+        options.addOption(null, "scanedges", false, "Read edges through a single traversal on one thread, rather than grouped by their out vertex in each partition");
+        options.addOption(null, "writebatch", true, "Number of elements to write to the target graph in a single traversal, which reduces round trips to a remote graph (default 0, write elements individually)");
+        options.addOption(null, "inflight", true, "Number of write batches each thread can have in flight at once to a remote graph (default 4)");
+        options.addOption("j", "threads", true, "Thread count for transforming vertices and edges (default 1)");
+        options.addOption(null, "partitioner", true, "How to partition vertices between threads: auto (default, by label if there are enough labels, otherwise hash), label, hash (every thread reads every vertex), or the name of a VertexPartitioner class");
+        options.addOption(null, "partitions", true, "Number of partitions to split vertices into (defaults to the thread count)");
+        options.addOption(null, "checkpoint", true, "File in which to record progress, so that the transformation can be resumed");
+        options.addOption(null, "resume", false, "Resume from the progress recorded in the checkpoint file, skipping work that has already been done");
+        addFilterOptions(options);
+        addMetricsOptions(options);
 
         CommandLine cmd = parseCommandLine(args, options, TransformGraphToGremlin.class, "Transform a graph from a Gremlin graph into a different Gremlin graph, filtering data as required");
         if(cmd == null)
             return;
 
+        if(cmd.hasOption("resume") && !cmd.hasOption("checkpoint")) {
+            LOGGER.error("A checkpoint file must be specified in order to resume");
+            return;
+        }
+
         LOGGER.info("Connecting to source Gremlin graph");
         Graph sourceGraph = GraphFactory.open(cmd.getOptionValue('i'));
 
         LOGGER.info("Connecting to target Gremlin graph");
         Graph targetGraph = GraphFactory.open(cmd.getOptionValue('o'));
 
+        TransformToGremlinOptions transformOptions = new TransformToGremlinOptions()
+            .setPreserveOriginalId(cmd.hasOption('p'))
+            .setGroupEdgesByOutVertex(!cmd.hasOption("scanedges"))
+            .setPartitioner(VertexPartitioners.create(cmd.getOptionValue("partitioner")))
+            .setIdMapDirectory(cmd.hasOption("idmapdir") ? Paths.get(cmd.getOptionValue("idmapdir")) : null)
+            .setCheckpointFile(cmd.hasOption("checkpoint") ? Paths.get(cmd.getOptionValue("checkpoint")) : null)
+            .setResume(cmd.hasOption("resume"))
+            .setFilter(createFilter(cmd))
+            .setMetricsFile(getMetricsFile(cmd))
+            .setMetricsFormat(getMetricsFormat(cmd))
+            .setMetricsInterval(getMetricsInterval(cmd));
+
+        try {
+            transformOptions.setIdMapType(IdMapType.valueOf(cmd.getOptionValue('m', "compact").toUpperCase()));
+        } catch (IllegalArgumentException iae) {
+            LOGGER.error("Unrecognised ID map type, default will be used");
+        }
+
+        try {
+            transformOptions.setCommitElements(Long.parseLong(cmd.getOptionValue('b', "10000")));
+            transformOptions.setCommitBytes(Long.parseLong(cmd.getOptionValue("batchbytes", "0")));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse batch size, default will be used");
+        }
+
+        try {
+            transformOptions.setThreads(Integer.parseInt(cmd.getOptionValue('j', "1")));
+            transformOptions.setPartitions(Integer.parseInt(cmd.getOptionValue("partitions", "0")));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse threads or partitions, default will be used");
+        }
+
+        try {
+            transformOptions.setVertexCacheSize(Integer.parseInt(cmd.getOptionValue("cachesize", "100000")));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse cache size, default will be used");
+        }
+
+        try {
+            transformOptions.setWriteBatchSize(Integer.parseInt(cmd.getOptionValue("writebatch", "0")));
+            transformOptions.setWriteBatchesInFlight(Integer.parseInt(cmd.getOptionValue("inflight", "4")));
+        } catch (NumberFormatException nfe) {
+            LOGGER.error("Unable to parse write batch size or batches in flight, default will be used");
+        }
+
         try {
-            TransformToGremlin.transformGraph(sourceGraph, targetGraph, cmd.hasOption('p'));
+            TransformResult result = TransformToGremlin.transformGraph(sourceGraph, targetGraph, transformOptions);
+            if(!result.isSuccessful())
+                LOGGER.error("Transformation did not complete successfully: {}", result.getFailures());
         }catch (Exception e){
             LOGGER.error("Error thrown whilst transforming graph", e);
         }
@@ -0,0 +1,246 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.delta;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
+import org.apache.tinkerpop.shaded.kryo.io.Input;
+import org.apache.tinkerpop.shaded.kryo.io.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.idmap.LongIdMap;
+
+/**
+ * Records the state of a graph as of the last successful transformation, so that the next
+ * transformation can be limited to the vertices which have changed since.
+ *
+ * Changes are detected in one of two ways. If a timestamp property is configured, then a vertex
+ * has changed if that property is later than the start of the last successful run; vertices
+ * without the property are always treated as changed. Otherwise, a hash of the label and
+ * properties of each vertex is kept, and a vertex has changed if its hash differs from the
+ * previous run (or it didn't exist previously).
+ *
+ * Changes which only affect edges aren't detected. If there is no previous state, then every
+ * vertex is treated as changed.
+ *
+ * Hashes are held in {@link LongIdMap}s, so that graphs with numeric IDs use around 20-30 bytes
+ * per vertex for each of the previous and current states.
+ *
+ * This class is thread safe.
+ */
+public class DeltaState {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeltaState.class);
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String timestampProperty;
+  private final long runStart = System.currentTimeMillis();
+
+  private long lastRun = 0L;
+  private final LongIdMap previousHashes = LongIdMap.onHeap();
+  private final LongIdMap currentHashes = LongIdMap.onHeap();
+  private final Set<String> changedLabels = ConcurrentHashMap.newKeySet();
+
+  private DeltaState(String timestampProperty) {
+    this.timestampProperty = timestampProperty;
+  }
+
+  /**
+   * Load the state previously saved in file, using kryo to deserialise vertex IDs. If the file
+   * doesn't exist, then the returned state treats every vertex as changed.
+   *
+   * If timestampProperty is null, then changes are detected by content hashes.
+   */
+  public static DeltaState load(Path file, String timestampProperty, Kryo kryo) throws IOException {
+    DeltaState state = new DeltaState(timestampProperty);
+    if (!Files.exists(file)) {
+      LOGGER.info("No previous state found at {}, so all vertices will be treated as changed", file);
+      state.previousHashes.freeze();
+      return state;
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Input input = new Input(new GZIPInputStream(Channels.newInputStream(channel)), 64 * 1024)) {
+      state.lastRun = input.readLong();
+
+      long count = input.readLong();
+      if (timestampProperty == null) {
+        for (long i = 0; i < count; i++)
+          state.previousHashes.put(kryo.readClassAndObject(input), input.readLong());
+      }
+    }
+
+    //The previous state is only read from now on, by every worker
+    state.previousHashes.freeze();
+
+    LOGGER.info("Loaded previous state from {}, last successful run started at {}", file, new Date(state.lastRun));
+    return state;
+  }
+
+  /**
+   * Returns true if there is a previous state to compare against
+   */
+  public boolean hasPrevious() {
+    return lastRun > 0L;
+  }
+
+  /**
+   * Returns true if v has changed since the previous run, and records its current state
+   */
+  public boolean isChanged(Vertex v) {
+    boolean changed;
+
+    if (timestampProperty != null) {
+      Long timestamp = toMillis(v.property(timestampProperty).orElse(null));
+      changed = timestamp == null || timestamp >= lastRun;
+    } else {
+      long hash = hash(v);
+      Object previous = previousHashes.get(v.id());
+      currentHashes.put(v.id(), hash);
+
+      changed = previous == null || (Long) previous != hash;
+    }
+
+    if (!hasPrevious())
+      changed = true;
+
+    if (changed)
+      changedLabels.add(v.label());
+
+    return changed;
+  }
+
+  /**
+   * Record that the vertex with the given ID hasn't been looked at during this run (for instance,
+   * because it was transformed by a previous attempt at the run which is being resumed), so its
+   * previous state should be kept. If it has changed, it will be treated as changed by the next
+   * run as well.
+   */
+  public void carryForward(Object id) {
+    if (timestampProperty != null)
+      return;
+
+    Object previous = previousHashes.get(id);
+    if (previous != null)
+      currentHashes.put(id, previous);
+  }
+
+  /**
+   * Returns the labels of all the vertices which have changed so far
+   */
+  public Set<String> getChangedLabels() {
+    return Collections.unmodifiableSet(changedLabels);
+  }
+
+  /**
+   * Save the current state to file, using kryo to serialise vertex IDs. This should only be
+   * called once the run has completed successfully, and includes only the vertices seen during
+   * this run.
+   */
+  public void save(Path file, Kryo kryo) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent == null ? Paths.get(".") : parent, "delta", ".tmp");
+
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+        Output output = new Output(new GZIPOutputStream(Channels.newOutputStream(channel)), 64 * 1024)) {
+      output.writeLong(runStart);
+      output.writeLong(currentHashes.size());
+
+      currentHashes.forEach((id, hash) -> {
+        kryo.writeClassAndObject(output, id);
+        output.writeLong((Long) hash);
+      });
+    }
+
+    //Replace the previous state in one go, so that it is never left half written
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOGGER.info("Saved state of {} vertices to {}", currentHashes.size(), file);
+  }
+
+  private static Long toMillis(Object value) {
+    if (value instanceof Number)
+      return ((Number) value).longValue();
+
+    if (value instanceof Date)
+      return ((Date) value).getTime();
+
+    if (value instanceof Instant)
+      return ((Instant) value).toEpochMilli();
+
+    return null;
+  }
+
+  /**
+   * Returns a 64 bit FNV-1a hash of the label and properties of v, which is independent of the
+   * order in which properties are returned
+   */
+  static long hash(Vertex v) {
+    List<String> properties = new ArrayList<>();
+    v.properties().forEachRemaining(vp -> properties.add(vp.key() + "=" + valueToString(vp)));
+    Collections.sort(properties);
+
+    long hash = hash(FNV_OFFSET, v.label());
+    for (String property : properties)
+      hash = hash(hash, property);
+
+    return hash;
+  }
+
+  private static String valueToString(VertexProperty<?> vp) {
+    Object value = vp.value();
+
+    //Arrays don't have a stable toString(), so use their contents
+    if (value != null && value.getClass().isArray())
+      return Arrays.deepToString(new Object[]{value});
+
+    return String.valueOf(value);
+  }
+
+  private static long hash(long hash, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= FNV_PRIME;
+    }
+
+    //Separate strings, so that ["ab", "c"] and ["a", "bc"] hash differently
+    hash ^= 0xff;
+    hash *= FNV_PRIME;
+
+    return hash;
+  }
+}
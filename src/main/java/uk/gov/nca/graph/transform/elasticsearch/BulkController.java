@@ -0,0 +1,136 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+
+/**
+ * Controls the size of bulk requests, and how failed requests are retried.
+ *
+ * The size of bulk requests (in both bytes and number of actions) is adjusted in response to
+ * the observed latency and rejection rate. Each request that completes within the target latency
+ * without rejections increases the limits by a fixed step, whilst any request that is slower
+ * than the target or has items rejected halves the limits (additive increase, multiplicative
+ * decrease). Limits are always kept between the configured minimum and maximum.
+ *
+ * This class is thread safe.
+ */
+public class BulkController {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkController.class);
+
+  private static final long INITIAL_BYTES = 5000000;  //5MB Size
+  private static final long MAX_BACKOFF_MILLIS = 60000;
+
+  private final long minBytes;
+  private final long maxBytes;
+  private final int minActions;
+  private final int maxActions;
+  private final long bytesStep;
+  private final int actionsStep;
+  private final long targetLatencyMillis;
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+
+  private volatile long bytesLimit;
+  private volatile int actionsLimit;
+
+  /**
+   * Create a new controller, using the limits configured in options
+   */
+  public BulkController(TransformToElasticsearchOptions options) {
+    this.minBytes = Math.min(options.getBulkMinBytes(), options.getBulkMaxBytes());
+    this.maxBytes = options.getBulkMaxBytes();
+    this.minActions = Math.min(options.getBulkMinActions(), options.getBulkMaxActions());
+    this.maxActions = options.getBulkMaxActions();
+    this.targetLatencyMillis = options.getBulkTargetLatency();
+    this.maxRetries = options.getBulkRetries();
+    this.initialBackoffMillis = options.getBulkBackoff();
+
+    this.bytesStep = Math.max(1, (maxBytes - minBytes) / 20);
+    this.actionsStep = Math.max(1, (maxActions - minActions) / 20);
+
+    this.bytesLimit = Math.max(minBytes, Math.min(maxBytes, INITIAL_BYTES));
+    this.actionsLimit = maxActions;
+  }
+
+  /**
+   * Returns true if the bulk request has reached the current size limits, and should be submitted
+   */
+  public boolean isFull(BulkRequest bulkRequest) {
+    return bulkRequest.estimatedSizeInBytes() >= bytesLimit || bulkRequest.numberOfActions() >= actionsLimit;
+  }
+
+  /**
+   * Record the outcome of a bulk request, and adjust the limits accordingly
+   */
+  public synchronized void onResponse(long latencyMillis, int rejected) {
+    if (rejected > 0 || latencyMillis > targetLatencyMillis) {
+      bytesLimit = Math.max(minBytes, bytesLimit / 2);
+      actionsLimit = Math.max(minActions, actionsLimit / 2);
+
+      LOGGER.debug("Bulk request took {}ms with {} rejections, decreasing limits to {} bytes and {} actions",
+          latencyMillis, rejected, bytesLimit, actionsLimit);
+    } else {
+      bytesLimit = Math.min(maxBytes, bytesLimit + bytesStep);
+      actionsLimit = Math.min(maxActions, actionsLimit + actionsStep);
+    }
+  }
+
+  /**
+   * Record that a bulk request was rejected in its entirety, and decrease the limits
+   */
+  public void onRejected() {
+    onResponse(Long.MAX_VALUE, 1);
+  }
+
+  /**
+   * Returns true if a request that has already been attempted attempts times should be retried
+   */
+  public boolean shouldRetry(int attempts) {
+    return attempts <= maxRetries;
+  }
+
+  /**
+   * Returns the time to wait before the given retry attempt (counting from 1), which increases
+   * exponentially with some random jitter to avoid retries from different workers coinciding.
+   */
+  public long getBackoffMillis(int attempt) {
+    long backoff = initialBackoffMillis << Math.min(attempt - 1, 20);
+    backoff = Math.min(MAX_BACKOFF_MILLIS, backoff);
+
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  /**
+   * Returns the current limit on the size of a bulk request, in bytes
+   */
+  public long getBytesLimit() {
+    return bytesLimit;
+  }
+
+  /**
+   * Returns the current limit on the number of actions in a bulk request
+   */
+  public int getActionsLimit() {
+    return actionsLimit;
+  }
+}
@@ -0,0 +1,218 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+import uk.gov.nca.graph.transform.Workers;
+import uk.gov.nca.graph.transform.checkpoint.Checkpoint;
+import uk.gov.nca.graph.transform.metrics.MetricsPublisher;
+
+/**
+ * Loads bulk files written by {@link BulkFileSink} into Elasticsearch, using the same batching,
+ * back pressure and retries as a live transformation.
+ */
+public class BulkFileLoader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkFileLoader.class);
+
+  private static final String TASK_PREFIX = "file/";
+
+  private BulkFileLoader(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Load all the completed bulk files in directory into Elasticsearch, as configured by options.
+   * Files are loaded in parallel, using the configured number of threads.
+   *
+   * If a checkpoint file is configured, then each file is recorded in it once all of its
+   * documents have been written, and recorded files are skipped if loading is resumed.
+   */
+  public static TransformResult load(Path directory, RestClientBuilder targetClient, TransformToElasticsearchOptions options) {
+    TransformResult result = new TransformResult();
+
+    List<Path> files;
+    try {
+      files = listFiles(directory);
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to list bulk files in {}", directory, ioe);
+      result.addFailure("Unable to list bulk files in " + directory + ": " + ioe.getMessage());
+      return result;
+    }
+
+    Checkpoint opened;
+    try {
+      opened = options.getCheckpointFile() == null ? Checkpoint.disabled()
+          : Checkpoint.open(options.getCheckpointFile(), options.isResume());
+    } catch (IOException ioe) {
+      LOGGER.error("Unable to open checkpoint file {}", options.getCheckpointFile(), ioe);
+      result.addFailure("Unable to open checkpoint file " + options.getCheckpointFile() + ": " + ioe.getMessage());
+      return result;
+    }
+
+    RestHighLevelClient client = new RestHighLevelClient(targetClient);
+
+    MetricsPublisher metrics = MetricsPublisher.start(BulkFileLoader.class.getSimpleName(), result,
+        options.getMetricsFile(), options.getMetricsFormat(), options.getMetricsInterval());
+    try (Checkpoint checkpoint = opened) {
+      LOGGER.info("Checking connection to Elasticsearch");
+      try {
+        if (!client.ping(RequestOptions.DEFAULT)) {
+          throw new IOException("Unable to ping server");
+        }
+      } catch (IOException ioe) {
+        LOGGER.error("Unable to connect to Elasticsearch", ioe);
+        result.addFailure("Unable to connect to Elasticsearch: " + ioe.getMessage());
+        return result;
+      }
+
+      try (BulkPipeline pipeline = new BulkPipeline(client, options.getMaxInFlight(), new BulkController(options), result)) {
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (Path file : files) {
+          String task = TASK_PREFIX + file.getFileName();
+          if (checkpoint.isComplete(task)) {
+            LOGGER.info("Skipping bulk file {}, which has already been loaded", file);
+            continue;
+          }
+
+          tasks.put("Bulk file " + file.getFileName(), () -> {
+            List<CompletableFuture<Void>> submitted = checkpoint.isEnabled() ? new ArrayList<>() : null;
+            try {
+              result.increment("bulk.loaded", read(file, pipeline, submitted));
+            } catch (IOException ioe) {
+              throw new UncheckedIOException("Unable to read bulk file " + file, ioe);
+            }
+
+            if (submitted != null)
+              checkpoint.completeWhenDone(task, submitted);
+          });
+        }
+
+        LOGGER.info("Loading {} bulk files from {} using {} threads", tasks.size(), directory, options.getThreads());
+
+        //Files are independent of each other, so a corrupt file shouldn't stop the others loading
+        ExecutorService executor = Workers.newExecutor("bulk-file-loader", options.getThreads(), options.isVirtualThreads());
+        try {
+          Workers.runAll(executor, tasks, false, result);
+        } finally {
+          Workers.shutdown(executor);
+        }
+      }
+    } finally {
+      metrics.close();
+
+      try {
+        client.close();
+      } catch (IOException e) {
+        //Do nothing, closing client anyway
+      }
+    }
+
+    if (result.isSuccessful()) {
+      LOGGER.info("Finished loading bulk files into Elasticsearch");
+    } else {
+      LOGGER.warn("Finished loading bulk files into Elasticsearch, with {} failures", result.getFailures().size());
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the completed bulk files in directory, ordered by name
+   */
+  public static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(p -> p.getFileName().toString().endsWith(BulkFileSink.EXTENSION))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Read the bulk file, submitting its contents to sink in requests sized by the sink. If
+   * submitted isn't null, then the future of each submitted request is added to it.
+   *
+   * Returns the number of actions read from the file.
+   */
+  public static long read(Path file, BulkSink sink, Collection<CompletableFuture<Void>> submitted) throws IOException {
+    BulkRequest br = new BulkRequest();
+    long count = 0;
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Channels.newInputStream(FileChannel.open(file)), 65536), UTF_8))) {
+
+      String action;
+      while ((action = reader.readLine()) != null) {
+        if (action.isEmpty())
+          continue;
+
+        //Every action written by BulkFileSink is followed by a source
+        String source = reader.readLine();
+        if (source == null)
+          throw new IOException("Bulk file " + file + " ends with an action but no source");
+
+        byte[] pair = (action + "\n" + source + "\n").getBytes(UTF_8);
+        br.add(pair, 0, pair.length, XContentType.JSON);
+        count++;
+
+        if (sink.isFull(br)) {
+          submit(sink, br, submitted);
+          br = new BulkRequest();
+        }
+      }
+    }
+
+    submit(sink, br, submitted);
+    LOGGER.info("{} has read {} actions from bulk file {}", Thread.currentThread().getName(), count, file);
+
+    return count;
+  }
+
+  private static void submit(BulkSink sink, BulkRequest br, Collection<CompletableFuture<Void>> submitted) {
+    CompletableFuture<Void> future = sink.submit(br);
+    if (submitted != null)
+      submitted.add(future);
+  }
+}
@@ -0,0 +1,319 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+
+/**
+ * Writes bulk requests to gzip compressed files in the Elasticsearch <code>_bulk</code> (NDJSON)
+ * format, rather than to a live cluster, so that they can be loaded later or elsewhere by
+ * {@link BulkFileLoader}.
+ *
+ * Each concurrent caller of {@link #submit(BulkRequest)} writes to its own file, so workers
+ * don't contend on a single stream. Files are rotated once they reach a maximum (uncompressed)
+ * size, and are written with a <code>.partial</code> suffix which is only removed once the
+ * file has been completely written and forced to disk. The future of each request completes
+ * at that point, so checkpoints only record requests which are safely on disk.
+ *
+ * File names include the time the sink was created, so that runs writing to the same directory
+ * don't overwrite each other.
+ *
+ * This class is thread safe, and a single instance should be shared by all workers.
+ */
+public class BulkFileSink implements BulkSink {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkFileSink.class);
+
+  /**
+   * Extension of completed bulk files
+   */
+  public static final String EXTENSION = ".ndjson.gz";
+  private static final String PARTIAL = ".partial";
+
+  private final Path directory;
+  private final long maxFileBytes;
+  private final BulkController controller;
+  private final TransformResult result;
+  private final String prefix;
+
+  private final Queue<ChunkWriter> idle = new ConcurrentLinkedQueue<>();
+  private final Queue<ChunkWriter> writers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger writerCount = new AtomicInteger();
+
+  /**
+   * Create a new sink, writing files of up to maxFileBytes (before compression) into directory,
+   * which is created if it doesn't exist. The size of each request is limited by controller,
+   * and failures are recorded in result.
+   */
+  public BulkFileSink(Path directory, long maxFileBytes, BulkController controller, TransformResult result) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.maxFileBytes = Math.max(1, maxFileBytes);
+    this.controller = controller;
+    this.result = result;
+    this.prefix = "bulk-" + System.currentTimeMillis() + "-";
+  }
+
+  @Override
+  public boolean isFull(BulkRequest bulkRequest) {
+    return controller.isFull(bulkRequest);
+  }
+
+  /**
+   * Write the bulk request to a file. The returned future completes once the file it was written
+   * to has been completed, which may not be until this sink is flushed.
+   */
+  @Override
+  public CompletableFuture<Void> submit(BulkRequest bulkRequest) {
+    if (bulkRequest.numberOfActions() == 0)
+      return CompletableFuture.completedFuture(null);
+
+    ChunkWriter writer = idle.poll();
+    if (writer == null) {
+      writer = new ChunkWriter(writerCount.incrementAndGet());
+      writers.add(writer);
+    }
+
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      writer.write(bulkRequest, future);
+    } finally {
+      idle.add(writer);
+    }
+
+    return future;
+  }
+
+  /**
+   * Complete all the files currently being written, so that the futures of all requests
+   * submitted so far complete. Subsequent requests are written to new files.
+   */
+  @Override
+  public void flush() {
+    writers.forEach(ChunkWriter::finishFile);
+  }
+
+  @Override
+  public void close() {
+    flush();
+  }
+
+  /**
+   * Write request to out as a pair of NDJSON lines, an action and a source
+   */
+  static void writeRequest(DocWriteRequest<?> request, OutputStream out) throws IOException {
+    String action;
+    BytesReference source;
+    XContentType contentType;
+
+    if (request instanceof IndexRequest) {
+      IndexRequest indexRequest = (IndexRequest) request;
+      action = indexRequest.opType() == OpType.CREATE ? "create" : "index";
+      source = indexRequest.source();
+      contentType = indexRequest.getContentType();
+    } else if (request instanceof UpdateRequest) {
+      UpdateRequest updateRequest = (UpdateRequest) request;
+      action = "update";
+
+      XContentBuilder update = XContentFactory.jsonBuilder().startObject();
+      if (updateRequest.doc() != null) {
+        update.rawField("doc", updateRequest.doc().source().streamInput(), updateRequest.doc().getContentType());
+        if (updateRequest.docAsUpsert())
+          update.field("doc_as_upsert", true);
+        update.field("detect_noop", updateRequest.detectNoop());
+      }
+      if (updateRequest.script() != null)
+        update.field("script", updateRequest.script());
+      if (updateRequest.upsertRequest() != null)
+        update.rawField("upsert", updateRequest.upsertRequest().source().streamInput(), updateRequest.upsertRequest().getContentType());
+      update.endObject();
+
+      source = BytesReference.bytes(update);
+      contentType = XContentType.JSON;
+    } else {
+      throw new IOException("Unsupported request type " + request.getClass().getSimpleName());
+    }
+
+    XContentBuilder metadata = XContentFactory.jsonBuilder().startObject().startObject(action)
+        .field("_index", request.index())
+        .field("_type", request.type());
+    if (request.id() != null)
+      metadata.field("_id", request.id());
+    metadata.endObject().endObject();
+
+    BytesReference.bytes(metadata).writeTo(out);
+    out.write('\n');
+
+    if (contentType == XContentType.JSON) {
+      source.writeTo(out);
+    } else {
+      out.write(XContentHelper.convertToJson(source, false, contentType).getBytes(UTF_8));
+    }
+    out.write('\n');
+  }
+
+  /**
+   * Writes to a sequence of files, which are only used by one thread at a time
+   */
+  private class ChunkWriter {
+    private final int number;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+    private int sequence = 0;
+    private Path file = null;
+    private FileChannel channel = null;
+    private GZIPOutputStream out = null;
+    private long bytes = 0;
+    private long actions = 0;
+
+    ChunkWriter(int number) {
+      this.number = number;
+    }
+
+    synchronized void write(BulkRequest bulkRequest, CompletableFuture<Void> future) {
+      //Serialise first, so that a request which can't be serialised doesn't corrupt the file
+      buffer.reset();
+      try {
+        for (DocWriteRequest<?> request : bulkRequest.requests())
+          writeRequest(request, buffer);
+      } catch (IOException ioe) {
+        fail(bulkRequest.numberOfActions(), ioe, future);
+        return;
+      }
+
+      try {
+        if (out == null)
+          open();
+
+        buffer.writeTo(out);
+      } catch (IOException ioe) {
+        fail(actions + bulkRequest.numberOfActions(), ioe, future);
+        abort();
+        return;
+      }
+
+      bytes += buffer.size();
+      actions += bulkRequest.numberOfActions();
+      result.increment("bulk.items", bulkRequest.numberOfActions());
+      result.increment("bulk.bytes", buffer.size());
+      pending.add(future);
+
+      if (bytes >= maxFileBytes)
+        finishFile();
+    }
+
+    private void open() throws IOException {
+      sequence++;
+      file = directory.resolve(String.format("%s%05d-%05d%s", prefix, number, sequence, EXTENSION));
+
+      channel = FileChannel.open(partial(file), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      out = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 65536), 65536);
+    }
+
+    synchronized void finishFile() {
+      if (out == null)
+        return;
+
+      try {
+        out.finish();
+        out.flush();
+        channel.force(true);
+        out.close();
+
+        Files.move(partial(file), file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ioe) {
+        fail(actions, ioe, null);
+        abort();
+        return;
+      }
+
+      LOGGER.info("Finished writing {} actions to bulk file {}", actions, file);
+      result.increment("bulk.files", 1);
+      pending.forEach(f -> f.complete(null));
+      reset();
+    }
+
+    private void fail(long failed, IOException ioe, CompletableFuture<Void> future) {
+      LOGGER.error("Unable to write bulk file {}", file, ioe);
+      result.increment("bulk.failedItems", failed);
+      result.addFailure("Unable to write bulk file " + file + ": " + ioe.getMessage());
+
+      if (future != null)
+        future.completeExceptionally(ioe);
+    }
+
+    /**
+     * Abandon the current file, failing any requests that were written to it
+     */
+    private void abort() {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          //Do nothing, the file is being abandoned anyway
+        }
+      }
+
+      IOException ioe = new IOException("Bulk file " + file + " couldn't be completed");
+      pending.forEach(f -> f.completeExceptionally(ioe));
+      reset();
+    }
+
+    private void reset() {
+      pending.clear();
+      channel = null;
+      out = null;
+      bytes = 0;
+      actions = 0;
+    }
+  }
+
+  private static Path partial(Path file) {
+    return file.resolveSibling(file.getFileName() + PARTIAL);
+  }
+}
@@ -0,0 +1,309 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+
+/**
+ * Submits bulk requests to Elasticsearch asynchronously, allowing up to a fixed number of
+ * requests to be in flight at once. Once that limit is reached, callers of
+ * {@link #submit(BulkRequest)} block until an earlier request completes, so that the
+ * amount of data held in memory is bounded.
+ *
+ * Items rejected by Elasticsearch because it is overloaded (HTTP 429), and requests that fail
+ * entirely because of a rejection or a connection error, are retried with an exponential backoff
+ * as determined by the {@link BulkController}. A request remains in flight until it has succeeded
+ * or run out of retries, so retries also slow down submission of new requests.
+ *
+ * Each submitted request has a future, which is completed before the request stops counting
+ * towards the in flight limit, so anything chained on it has run by the time {@link #flush()}
+ * returns.
+ *
+ * The latency of each request, the number of items and (estimated) bytes sent, and the number
+ * of requests in flight and callers waiting to submit are recorded in the {@link TransformResult}
+ * as metrics.
+ *
+ * This class is thread safe, and a single instance should be shared by all workers.
+ */
+public class BulkPipeline implements BulkSink {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkPipeline.class);
+
+  private final Sender sender;
+  private final BulkController controller;
+  private final TransformResult result;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final ScheduledExecutorService retryScheduler;
+
+  /**
+   * Create a new pipeline, writing to client with up to maxInFlight concurrent requests, and
+   * sizing and retrying requests as directed by controller. Failures are recorded in result.
+   */
+  public BulkPipeline(RestHighLevelClient client, int maxInFlight, BulkController controller, TransformResult result) {
+    this((bulkRequest, listener) -> client.bulkAsync(bulkRequest, RequestOptions.DEFAULT, listener), maxInFlight, controller, result);
+  }
+
+  /**
+   * Create a new pipeline, sending requests through sender rather than a client
+   */
+  BulkPipeline(Sender sender, int maxInFlight, BulkController controller, TransformResult result) {
+    this.sender = sender;
+    this.controller = controller;
+    this.result = result;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.inFlight = new Semaphore(this.maxInFlight);
+
+    this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "bulk-retry");
+      t.setDaemon(true);
+      return t;
+    });
+
+    result.addGauge("bulk.inFlight", this::getInFlight);
+    result.addGauge("bulk.waitingSubmitters", inFlight::getQueueLength);
+  }
+
+  @Override
+  public boolean isFull(BulkRequest bulkRequest) {
+    return controller.isFull(bulkRequest);
+  }
+
+  /**
+   * Submit the bulk request, blocking whilst the maximum number of requests are already
+   * in flight. The request should not be modified after it has been submitted.
+   *
+   * If the calling thread is interrupted whilst waiting, a {@link CancellationException}
+   * is thrown.
+   *
+   * The returned future completes once the request is no longer in flight, and completes
+   * exceptionally if any items in the request couldn't be written.
+   */
+  @Override
+  public CompletableFuture<Void> submit(BulkRequest bulkRequest) {
+    if (bulkRequest.numberOfActions() == 0)
+      return CompletableFuture.completedFuture(null);
+
+    acquire(1);
+
+    result.increment("bulk.requests", 1);
+    result.increment("bulk.items", bulkRequest.numberOfActions());
+    result.increment("bulk.bytes", bulkRequest.estimatedSizeInBytes());
+
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      send(bulkRequest, 1, future);
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+
+    return future;
+  }
+
+  private void send(BulkRequest bulkRequest, int attempt, CompletableFuture<Void> future) {
+    long startTime = System.nanoTime();
+
+    sender.bulkAsync(bulkRequest, new ActionListener<BulkResponse>() {
+      @Override
+      public void onResponse(BulkResponse bulkResponse) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        result.recordLatency("bulk.latency", latency);
+        handleResponse(bulkRequest, bulkResponse, attempt, latency, future);
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        handleFailure(bulkRequest, e, attempt, future);
+      }
+    });
+  }
+
+  private void handleResponse(BulkRequest bulkRequest, BulkResponse bulkResponse, int attempt, long latency, CompletableFuture<Void> future) {
+    BulkRequest retryRequest = new BulkRequest();
+    long failed = 0;
+    long existing = 0;
+    long unchanged = 0;
+    String failureMessage = null;
+
+    for (BulkItemResponse item : bulkResponse.getItems()) {
+      if (!item.isFailed()) {
+        if (item.getResponse() != null && item.getResponse().getResult() == DocWriteResponse.Result.NOOP)
+          unchanged++;
+
+        continue;
+      }
+
+      if (item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+        retryRequest.add(bulkRequest.requests().get(item.getItemId()));
+      } else if (item.getFailure().getStatus() == RestStatus.CONFLICT && item.getOpType() == OpType.CREATE) {
+        //Documents which already exist aren't an error when only creating new documents
+        existing++;
+      } else {
+        failed++;
+        if (failureMessage == null)
+          failureMessage = item.getFailureMessage();
+      }
+    }
+
+    controller.onResponse(latency, retryRequest.numberOfActions());
+
+    if (existing > 0)
+      result.increment("bulk.existingItems", existing);
+    if (unchanged > 0)
+      result.increment("bulk.unchangedItems", unchanged);
+
+    if (failed > 0) {
+      LOGGER.error("{} items in bulk request failed, e.g. {}", failed, failureMessage);
+      result.increment("bulk.failedItems", failed);
+      result.addFailure(failed + " items in bulk request failed, e.g. " + failureMessage);
+
+      //Record the failure now, but keep retrying any rejected items
+      future.completeExceptionally(new IOException(failed + " items in bulk request failed, e.g. " + failureMessage));
+    }
+
+    if (retryRequest.numberOfActions() > 0) {
+      result.increment("bulk.rejectedItems", retryRequest.numberOfActions());
+
+      if (controller.shouldRetry(attempt)) {
+        result.increment("bulk.retriedItems", retryRequest.numberOfActions());
+        scheduleRetry(retryRequest, attempt, future);
+        return;
+      }
+
+      LOGGER.error("{} items in bulk request were rejected after {} attempts", retryRequest.numberOfActions(), attempt);
+      result.increment("bulk.failedItems", retryRequest.numberOfActions());
+      result.addFailure(retryRequest.numberOfActions() + " items in bulk request were rejected after " + attempt + " attempts");
+      future.completeExceptionally(new IOException(retryRequest.numberOfActions() + " items in bulk request were rejected"));
+    }
+
+    future.complete(null);
+    inFlight.release();
+  }
+
+  private void handleFailure(BulkRequest bulkRequest, Exception e, int attempt, CompletableFuture<Void> future) {
+    boolean rejected = e instanceof ElasticsearchException
+        && ((ElasticsearchException) e).status() == RestStatus.TOO_MANY_REQUESTS;
+
+    if (rejected)
+      controller.onRejected();
+
+    if ((rejected || e instanceof IOException) && controller.shouldRetry(attempt)) {
+      LOGGER.warn("Bulk request failed on attempt {}, and will be retried: {}", attempt, e.getMessage());
+      result.increment("bulk.retriedItems", bulkRequest.numberOfActions());
+      scheduleRetry(bulkRequest, attempt, future);
+      return;
+    }
+
+    LOGGER.error("Unable to write bulk request to Elasticsearch", e);
+    result.increment("bulk.failedItems", bulkRequest.numberOfActions());
+    result.addFailure("Unable to write bulk request to Elasticsearch: " + e.getMessage());
+
+    future.completeExceptionally(e);
+    inFlight.release();
+  }
+
+  private void scheduleRetry(BulkRequest bulkRequest, int attempt, CompletableFuture<Void> future) {
+    long backoff = controller.getBackoffMillis(attempt);
+
+    try {
+      retryScheduler.schedule(() -> {
+        try {
+          send(bulkRequest, attempt + 1, future);
+        } catch (RuntimeException e) {
+          handleFailure(bulkRequest, e, attempt + 1, future);
+        }
+      }, backoff, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ree) {
+      LOGGER.error("Unable to retry bulk request, as the pipeline has been closed");
+      result.increment("bulk.failedItems", bulkRequest.numberOfActions());
+      result.addFailure("Unable to retry bulk request, as the pipeline has been closed");
+
+      future.completeExceptionally(ree);
+      inFlight.release();
+    }
+  }
+
+  @Override
+  public void flush() {
+    acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+  }
+
+  private void acquire(int permits) {
+    try {
+      inFlight.acquire(permits);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted whilst waiting for bulk requests to complete");
+    }
+  }
+
+  /**
+   * Returns the number of requests currently in flight
+   */
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  /**
+   * Wait until all requests submitted so far have completed, unless the calling thread has
+   * been interrupted. The client is not closed.
+   */
+  @Override
+  public void close() {
+    try {
+      if (Thread.currentThread().isInterrupted()) {
+        LOGGER.warn("Interrupted, so not waiting for {} bulk requests to complete", getInFlight());
+        return;
+      }
+
+      flush();
+    } finally {
+      retryScheduler.shutdownNow();
+      result.removeGauge("bulk.inFlight");
+      result.removeGauge("bulk.waitingSubmitters");
+    }
+  }
+
+  /**
+   * Sends a bulk request asynchronously, notifying listener of the outcome
+   */
+  interface Sender {
+    void bulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.util.concurrent.CompletableFuture;
+import org.elasticsearch.action.bulk.BulkRequest;
+
+/**
+ * Destination for the bulk requests produced by a transformation, such as a live Elasticsearch
+ * cluster ({@link BulkPipeline}) or a directory of bulk files ({@link BulkFileSink}).
+ *
+ * Implementations must be thread safe, as a single instance is shared by all workers.
+ */
+public interface BulkSink extends AutoCloseable {
+
+  /**
+   * Returns true if the bulk request has reached the current size limits, and should be submitted
+   */
+  boolean isFull(BulkRequest bulkRequest);
+
+  /**
+   * Submit the bulk request, which should not be modified after it has been submitted.
+   *
+   * The returned future completes once the request has been durably written, and completes
+   * exceptionally if any items in the request couldn't be written.
+   */
+  CompletableFuture<Void> submit(BulkRequest bulkRequest);
+
+  /**
+   * Wait until all requests submitted so far have completed
+   */
+  void flush();
+
+  /**
+   * Wait until all requests submitted so far have completed, and release any resources held
+   */
+  @Override
+  void close();
+}
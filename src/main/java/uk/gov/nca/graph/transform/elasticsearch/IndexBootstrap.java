@@ -0,0 +1,195 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+
+/**
+ * Prepares indices for a bulk load, and restores them afterwards.
+ *
+ * Before any documents are written, each index is created (with a mapping, if one is available)
+ * or has its mapping updated if it already exists. Refreshes are disabled and the number of
+ * replicas is set to 0 whilst loading, as both slow down indexing considerably. Once loading has
+ * finished, the previous settings are restored (or, for new indices, the refresh interval is
+ * reset to the default and the configured number of replicas is set), the indices are refreshed,
+ * and optionally force merged.
+ *
+ * Preparing an index is retried, with backoff, if it fails with an I/O error such as a dropped
+ * connection; other errors, and I/O errors once retries have been exhausted, are thrown.
+ *
+ * This class is not thread safe.
+ */
+public class IndexBootstrap {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IndexBootstrap.class);
+
+  private static final String REFRESH_INTERVAL = "index.refresh_interval";
+  private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+  private static final Settings LOAD_SETTINGS = Settings.builder()
+      .put(REFRESH_INTERVAL, "-1")
+      .put(NUMBER_OF_REPLICAS, 0)
+      .build();
+
+  private final RestHighLevelClient client;
+  private final int replicas;
+  private final BulkController controller;
+  private final Map<String, Settings> previousSettings = new LinkedHashMap<>();
+
+  /**
+   * Create a new bootstrap, which will give new indices the specified number of replicas once
+   * loading has finished, and will retry failed requests as permitted by controller
+   */
+  public IndexBootstrap(RestHighLevelClient client, int replicas, BulkController controller) {
+    this.client = client;
+    this.replicas = replicas;
+    this.controller = controller;
+  }
+
+  /**
+   * Prepare index for loading, with the given mapping for type (which may be null, in which
+   * case dynamic mapping will be used). Indices which have already been prepared are skipped.
+   */
+  public void prepare(String index, String type, Map<String, Object> mapping) throws IOException {
+    if (previousSettings.containsKey(index))
+      return;
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        prepareIndex(index, type, mapping);
+        return;
+      } catch (IOException ioe) {
+        if (!controller.shouldRetry(attempt))
+          throw ioe;
+
+        long backoff = controller.getBackoffMillis(attempt);
+        LOGGER.warn("Unable to prepare index {}, retrying in {}ms", index, backoff, ioe);
+
+        try {
+          TimeUnit.MILLISECONDS.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw ioe;
+        }
+      }
+    }
+  }
+
+  private void prepareIndex(String index, String type, Map<String, Object> mapping) throws IOException {
+    if (client.indices().exists(new GetIndexRequest().indices(index), RequestOptions.DEFAULT)) {
+      GetSettingsResponse response = client.indices().getSettings(
+          new GetSettingsRequest().indices(index).names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS), RequestOptions.DEFAULT);
+
+      Settings.Builder previous = Settings.builder();
+
+      //If a previous load didn't finish, the refresh interval may still be disabled
+      String refreshInterval = response.getSetting(index, REFRESH_INTERVAL);
+      if (refreshInterval == null || "-1".equals(refreshInterval)) {
+        previous.putNull(REFRESH_INTERVAL);
+      } else {
+        previous.put(REFRESH_INTERVAL, refreshInterval);
+      }
+
+      //Likewise the number of replicas, in which case it is set as though the index were new
+      String numberOfReplicas = response.getSetting(index, NUMBER_OF_REPLICAS);
+      if ("-1".equals(refreshInterval) && "0".equals(numberOfReplicas))
+        numberOfReplicas = null;
+
+      previous.put(NUMBER_OF_REPLICAS, numberOfReplicas == null ? String.valueOf(replicas) : numberOfReplicas);
+
+      client.indices().putSettings(new UpdateSettingsRequest(index).settings(LOAD_SETTINGS), RequestOptions.DEFAULT);
+      previousSettings.put(index, previous.build());
+
+      if (mapping != null) {
+        try {
+          client.indices().putMapping(new PutMappingRequest(index).type(type).source(mapping), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+          LOGGER.warn("Unable to update mapping of existing index {}, so existing mapping will be used", index, e);
+        }
+      }
+
+      LOGGER.info("Prepared existing index {} for loading", index);
+    } else {
+      CreateIndexRequest request = new CreateIndexRequest(index).settings(LOAD_SETTINGS);
+      if (mapping != null)
+        request.mapping(type, mapping);
+
+      client.indices().create(request, RequestOptions.DEFAULT);
+      previousSettings.put(index, Settings.builder()
+          .putNull(REFRESH_INTERVAL)
+          .put(NUMBER_OF_REPLICAS, replicas)
+          .build());
+
+      LOGGER.info("Created index {} {} mapping", index, mapping == null ? "without" : "with");
+    }
+  }
+
+  /**
+   * Restore the settings of all prepared indices, refresh them, and force merge them down to
+   * maxSegments if it is greater than 0. Failures are recorded in result.
+   */
+  public void finish(int maxSegments, TransformResult result) {
+    if (previousSettings.isEmpty())
+      return;
+
+    for (Map.Entry<String, Settings> e : previousSettings.entrySet()) {
+      try {
+        client.indices().putSettings(new UpdateSettingsRequest(e.getKey()).settings(e.getValue()), RequestOptions.DEFAULT);
+      } catch (Exception ex) {
+        LOGGER.error("Unable to restore settings of index {}", e.getKey(), ex);
+        result.addFailure("Unable to restore settings of index " + e.getKey() + ": " + ex.getMessage());
+      }
+    }
+
+    String[] indices = previousSettings.keySet().toArray(new String[0]);
+
+    try {
+      LOGGER.info("Refreshing {} indices", indices.length);
+      client.indices().refresh(new RefreshRequest(indices), RequestOptions.DEFAULT);
+    } catch (Exception ex) {
+      LOGGER.warn("Unable to refresh indices", ex);
+    }
+
+    if (maxSegments > 0) {
+      try {
+        LOGGER.info("Force merging {} indices to {} segments", indices.length, maxSegments);
+        client.indices().forcemerge(new ForceMergeRequest(indices).maxNumSegments(maxSegments), RequestOptions.DEFAULT);
+      } catch (Exception ex) {
+        LOGGER.warn("Unable to force merge indices", ex);
+      }
+    }
+
+    previousSettings.clear();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.util.Collections;
+import java.util.Map;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+
+/**
+ * How documents are written to Elasticsearch when they have an ID, and so may already exist.
+ * Documents without an ID are always indexed with an ID generated by Elasticsearch.
+ */
+public enum IndexMode {
+  /**
+   * Only create documents which don't already exist, leaving existing documents untouched
+   */
+  CREATE,
+
+  /**
+   * Create documents, or overwrite them if they already exist
+   */
+  INDEX,
+
+  /**
+   * Create documents, or replace them if they already exist and their content has changed. This
+   * is done with a scripted update, so that Elasticsearch skips the write if the content is the
+   * same; unlike a partial update, fields which are no longer in the document are removed.
+   */
+  UPDATE_IF_CHANGED;
+
+  /**
+   * Replaces the existing source with the new document, unless they are equal
+   */
+  private static final String REPLACE_IF_CHANGED = "if (ctx._source.equals(params.doc)) { ctx.op = 'noop' } else { ctx._source = params.doc }";
+
+  /**
+   * Create the request to write doc into index with the given type and ID, which may be null
+   */
+  public DocWriteRequest<?> request(String index, String type, String id, Map<String, Object> doc) {
+    if (id == null)
+      return new IndexRequest(index, type).source(doc);
+
+    switch (this) {
+      case CREATE:
+        return new IndexRequest(index, type, id).source(doc).opType(OpType.CREATE);
+      case UPDATE_IF_CHANGED:
+        return replaceIfChanged(index, type, id, doc).upsert(doc);
+      case INDEX:
+      default:
+        return new IndexRequest(index, type, id).source(doc);
+    }
+  }
+
+  /**
+   * Create the request to write the already serialised JSON document source into index with
+   * the given type and ID, which may be null. In {@link #UPDATE_IF_CHANGED} mode the source has
+   * to be parsed for the script's parameters, so where the document is available as a Map,
+   * {@link #request(String, String, String, Map)} should be used instead.
+   */
+  public DocWriteRequest<?> request(String index, String type, String id, byte[] source) {
+    if (id == null)
+      return new IndexRequest(index, type).source(source, XContentType.JSON);
+
+    switch (this) {
+      case CREATE:
+        return new IndexRequest(index, type, id).source(source, XContentType.JSON).opType(OpType.CREATE);
+      case UPDATE_IF_CHANGED:
+        Map<String, Object> doc = XContentHelper.convertToMap(new BytesArray(source), false, XContentType.JSON).v2();
+        return replaceIfChanged(index, type, id, doc).upsert(source, XContentType.JSON);
+      case INDEX:
+      default:
+        return new IndexRequest(index, type, id).source(source, XContentType.JSON);
+    }
+  }
+
+  private static UpdateRequest replaceIfChanged(String index, String type, String id, Map<String, Object> doc) {
+    Script script = new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, REPLACE_IF_CHANGED, Collections.singletonMap("doc", doc));
+    return new UpdateRequest(index, type, id).script(script);
+  }
+}
@@ -0,0 +1,166 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+
+/**
+ * Serialises vertices into raw JSON documents, streaming properties directly into a reused
+ * buffer rather than building an intermediate Map for each vertex. The index and type names for
+ * each label are also cached, as they are needed for every document.
+ *
+ * Each document contains the originalId of the vertex, and its properties. If a vertex has more
+ * than one value for a property, the last value is used. Only the properties included by the
+ * {@link ElementFilter} are written.
+ *
+ * This class is not thread safe, and each thread should have its own instance.
+ */
+public class RawDocumentWriter {
+
+  private final String indexPrefix;
+  private final ElementFilter filter;
+  private final Map<String, String> indices = new HashMap<>();
+  private final Map<String, String> types = new HashMap<>();
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+  private final XContentBuilder builder;
+
+  private String[] keys = new String[16];
+  private Object[] values = new Object[16];
+
+  /**
+   * Create a new writer, for documents in indices prefixed with indexPrefix
+   */
+  public RawDocumentWriter(String indexPrefix) throws IOException {
+    this(indexPrefix, new ElementFilter());
+  }
+
+  /**
+   * Create a new writer, for documents in indices prefixed with indexPrefix, containing only the
+   * properties included by filter
+   */
+  public RawDocumentWriter(String indexPrefix, ElementFilter filter) throws IOException {
+    this.indexPrefix = indexPrefix;
+    this.filter = filter;
+
+    //A single builder is reused for every document, each of which is written as a new root object
+    this.builder = XContentFactory.jsonBuilder(buffer);
+  }
+
+  /**
+   * Returns the name of the index for vertices with label
+   */
+  public String getIndex(String label) {
+    return indices.computeIfAbsent(label, l -> (indexPrefix + l).toLowerCase());
+  }
+
+  /**
+   * Returns the document type for vertices with label
+   */
+  public String getType(String label) {
+    return types.computeIfAbsent(label, l -> "raw_" + l);
+  }
+
+  /**
+   * Serialise v as a JSON document, or return null if v has no properties to write
+   */
+  public byte[] write(Vertex v) throws IOException {
+    int size = collectProperties(v);
+    if (size == 0)
+      return null;
+
+    buffer.reset();
+
+    builder.startObject();
+    builder.field("originalId", v.id());
+    for (int i = 0; i < size; i++)
+      builder.field(keys[i], values[i]);
+    builder.endObject();
+    builder.flush();
+
+    //Release references to property values, so they can be garbage collected
+    Arrays.fill(values, 0, size, null);
+
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Returns the same document as {@link #write(Vertex)} as a Map, or null if v has no properties
+   * to write. This is for where the document is needed as an object, such as the parameters of
+   * a scripted update, so that it isn't serialised only to be parsed straight back.
+   */
+  public Map<String, Object> toMap(Vertex v) {
+    int size = collectProperties(v);
+    if (size == 0)
+      return null;
+
+    Map<String, Object> doc = new LinkedHashMap<>(size * 2);
+    doc.put("originalId", v.id());
+    for (int i = 0; i < size; i++)
+      doc.put(keys[i], values[i]);
+
+    Arrays.fill(values, 0, size, null);
+
+    return doc;
+  }
+
+  private int collectProperties(Vertex v) {
+    int size = 0;
+
+    Iterator<VertexProperty<Object>> properties = filter.properties(v);
+    while (properties.hasNext()) {
+      VertexProperty<Object> p = properties.next();
+
+      //Duplicate keys aren't allowed in a document, so later values replace earlier ones
+      int i = indexOf(p.key(), size);
+      if (i < 0) {
+        if (size == keys.length) {
+          keys = Arrays.copyOf(keys, size * 2);
+          values = Arrays.copyOf(values, size * 2);
+        }
+
+        i = size++;
+        keys[i] = p.key();
+      }
+
+      values[i] = p.value();
+    }
+
+    return size;
+  }
+
+  private int indexOf(String key, int size) {
+    //Vertices usually have few properties, so a linear search is cheaper than a hash lookup
+    for (int i = 0; i < size; i++) {
+      if (keys[i].equals(key))
+        return i;
+    }
+
+    return -1;
+  }
+}
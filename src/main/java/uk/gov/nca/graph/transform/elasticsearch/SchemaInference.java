@@ -0,0 +1,145 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+
+/**
+ * Infers Elasticsearch mappings for the raw documents of each vertex label, by sampling the
+ * property types of vertices with that label.
+ *
+ * Integral numbers are always mapped as long, as Elasticsearch's dynamic mapping does, so that
+ * larger values outside the sample can still be indexed. Where a property has different types
+ * across the sample, the type is widened (e.g. long and floating point numbers become double) and
+ * if that isn't possible it is mapped as text. Text is mapped in the same way as Elasticsearch's
+ * dynamic mapping, with a keyword sub-field.
+ */
+public class SchemaInference {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SchemaInference.class);
+
+  private static final List<String> NUMERIC_TYPES = Collections.unmodifiableList(
+      Arrays.asList("integer", "long", "float", "double"));
+
+  private SchemaInference(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Returns a mapping for the raw documents of vertices with the given label, sampling up to
+   * sampleSize vertices
+   */
+  public static Map<String, Object> inferRawMapping(Graph graph, String label, int sampleSize) {
+    return inferRawMapping(graph, label, sampleSize, new ElementFilter());
+  }
+
+  /**
+   * Returns a mapping for the raw documents of vertices with the given label, sampling up to
+   * sampleSize of the vertices included by filter. Only the properties included by the filter
+   * are mapped.
+   */
+  public static Map<String, Object> inferRawMapping(Graph graph, String label, int sampleSize, ElementFilter filter) {
+    Map<String, String> types = new TreeMap<>();
+    types.put("originalId", "keyword");
+
+    filter.vertices(graph.traversal().V().hasLabel(label)).limit(sampleSize)
+        .forEachRemaining(v -> addTypes(filter, v, types));
+
+    LOGGER.debug("Inferred property types {} for label {}", types, label);
+    return toMapping(types);
+  }
+
+  private static void addTypes(ElementFilter filter, Vertex v, Map<String, String> types) {
+    filter.properties(v).forEachRemaining(vp -> {
+      if (!vp.isPresent() || vp.value() == null)
+        return;
+
+      types.merge(vp.key(), typeOf(vp.value()), SchemaInference::widen);
+    });
+  }
+
+  /**
+   * Returns the Elasticsearch type used to index value
+   */
+  static String typeOf(Object value) {
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+      return "long";
+    if (value instanceof Float)
+      return "float";
+    if (value instanceof Double)
+      return "double";
+    if (value instanceof Boolean)
+      return "boolean";
+    if (value instanceof Date || value instanceof Instant)
+      return "date";
+
+    return "text";
+  }
+
+  /**
+   * Returns a type which can hold values of both type a and type b
+   */
+  static String widen(String a, String b) {
+    if (a.equals(b))
+      return a;
+
+    int ia = NUMERIC_TYPES.indexOf(a);
+    int ib = NUMERIC_TYPES.indexOf(b);
+    if (ia >= 0 && ib >= 0) {
+      //Floating point numbers and long integers together can only be held by double
+      if (Math.max(ia, ib) >= 2)
+        return "double";
+
+      return NUMERIC_TYPES.get(Math.max(ia, ib));
+    }
+
+    return "text";
+  }
+
+  private static Map<String, Object> toMapping(Map<String, String> types) {
+    Map<String, Object> properties = new TreeMap<>();
+
+    types.forEach((k, type) -> {
+      Map<String, Object> field = new HashMap<>();
+      field.put("type", type);
+
+      if ("text".equals(type)) {
+        Map<String, Object> keyword = new HashMap<>();
+        keyword.put("type", "keyword");
+        keyword.put("ignore_above", 256);
+
+        field.put("fields", Collections.singletonMap("keyword", keyword));
+      }
+
+      properties.put(k, field);
+    });
+
+    return Collections.singletonMap("properties", properties);
+  }
+}
@@ -0,0 +1,270 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+
+/**
+ * Describes which elements, and which of their properties, should be included in a
+ * transformation. Elements can be filtered by label and by predicates on their properties,
+ * and properties can be included or excluded by key. An empty filter includes everything.
+ *
+ * Wherever possible, the filter is applied by adding steps to the traversal which reads the
+ * source graph (for example, <code>hasLabel</code> and <code>has</code>), so that elements which
+ * are filtered out are never loaded from the graph. Properties are read only by the included
+ * keys, if any are given.
+ *
+ * The setters return this object, so that calls can be chained. A filter should not be
+ * modified once a transformation using it has started.
+ */
+public class ElementFilter {
+
+  private Set<String> vertexLabels = Collections.emptySet();
+  private Set<String> excludedVertexLabels = Collections.emptySet();
+  private Set<String> edgeLabels = Collections.emptySet();
+  private String[] edgeLabelArray = new String[0];
+  private Set<String> excludedEdgeLabels = Collections.emptySet();
+  private Set<String> propertyKeys = Collections.emptySet();
+  private String[] propertyKeyArray = new String[0];
+  private Set<String> excludedPropertyKeys = Collections.emptySet();
+  private final List<Condition> vertexConditions = new ArrayList<>();
+  private final List<Condition> edgeConditions = new ArrayList<>();
+
+  /**
+   * Labels of vertices to include, or empty to include vertices with any label
+   */
+  public Set<String> getVertexLabels() {
+    return vertexLabels;
+  }
+  public ElementFilter setVertexLabels(Collection<String> vertexLabels) {
+    this.vertexLabels = toSet(vertexLabels);
+    return this;
+  }
+
+  /**
+   * Labels of vertices to exclude
+   */
+  public Set<String> getExcludedVertexLabels() {
+    return excludedVertexLabels;
+  }
+  public ElementFilter setExcludedVertexLabels(Collection<String> excludedVertexLabels) {
+    this.excludedVertexLabels = toSet(excludedVertexLabels);
+    return this;
+  }
+
+  /**
+   * Labels of edges to include, or empty to include edges with any label
+   */
+  public Set<String> getEdgeLabels() {
+    return edgeLabels;
+  }
+  public ElementFilter setEdgeLabels(Collection<String> edgeLabels) {
+    this.edgeLabels = toSet(edgeLabels);
+    this.edgeLabelArray = this.edgeLabels.toArray(new String[0]);
+    return this;
+  }
+
+  /**
+   * Labels of edges to exclude
+   */
+  public Set<String> getExcludedEdgeLabels() {
+    return excludedEdgeLabels;
+  }
+  public ElementFilter setExcludedEdgeLabels(Collection<String> excludedEdgeLabels) {
+    this.excludedEdgeLabels = toSet(excludedEdgeLabels);
+    return this;
+  }
+
+  /**
+   * Keys of properties to include, or empty to include properties with any key
+   */
+  public Set<String> getPropertyKeys() {
+    return propertyKeys;
+  }
+  public ElementFilter setPropertyKeys(Collection<String> propertyKeys) {
+    this.propertyKeys = toSet(propertyKeys);
+    this.propertyKeyArray = this.propertyKeys.toArray(new String[0]);
+    return this;
+  }
+
+  /**
+   * Keys of properties to exclude
+   */
+  public Set<String> getExcludedPropertyKeys() {
+    return excludedPropertyKeys;
+  }
+  public ElementFilter setExcludedPropertyKeys(Collection<String> excludedPropertyKeys) {
+    this.excludedPropertyKeys = toSet(excludedPropertyKeys);
+    return this;
+  }
+
+  /**
+   * Only include vertices with a property key whose value matches predicate
+   */
+  public ElementFilter addVertexCondition(String key, P<?> predicate) {
+    vertexConditions.add(new Condition(key, predicate));
+    return this;
+  }
+
+  /**
+   * Only include edges with a property key whose value matches predicate
+   */
+  public ElementFilter addEdgeCondition(String key, P<?> predicate) {
+    edgeConditions.add(new Condition(key, predicate));
+    return this;
+  }
+
+  /**
+   * Returns true if this filter may exclude some vertices
+   */
+  public boolean filtersVertices() {
+    return !vertexLabels.isEmpty() || !excludedVertexLabels.isEmpty() || !vertexConditions.isEmpty();
+  }
+
+  /**
+   * Returns true if vertices with label may be included by this filter, depending on any
+   * conditions on their properties
+   */
+  public boolean includesLabel(String label) {
+    return (vertexLabels.isEmpty() || vertexLabels.contains(label)) && !excludedVertexLabels.contains(label);
+  }
+
+  /**
+   * Add steps to traversal which remove the vertices excluded by this filter
+   */
+  public GraphTraversal<Vertex, Vertex> vertices(GraphTraversal<Vertex, Vertex> traversal) {
+    return filter(traversal, vertexLabels, excludedVertexLabels, vertexConditions);
+  }
+
+  /**
+   * Returns a new traversal over the vertices in partition included by this filter. The filter's
+   * steps come directly after <code>g.V()</code> and before the partition's, so that they can be
+   * folded into the initial step by the graph's strategies (and so use its indices).
+   */
+  public GraphTraversal<Vertex, Vertex> vertices(GraphTraversalSource g, VertexPartition partition) {
+    return partition.restrict(vertices(g.V()));
+  }
+
+  /**
+   * Add steps to traversal, over edges, which remove the edges excluded by this filter. Edges
+   * attached to vertices excluded by this filter are not removed.
+   */
+  public GraphTraversal<Edge, Edge> edges(GraphTraversal<Edge, Edge> traversal) {
+    return filter(traversal, edgeLabels, excludedEdgeLabels, edgeConditions);
+  }
+
+  /**
+   * Add steps to traversal, over vertices which have already been filtered, which return the
+   * outgoing edges included by this filter
+   */
+  public GraphTraversal<Vertex, Edge> outEdges(GraphTraversal<Vertex, Vertex> traversal) {
+    return filter(traversal.outE(edgeLabelArray), Collections.emptySet(), excludedEdgeLabels, edgeConditions);
+  }
+
+  /**
+   * Returns the outgoing edges of v included by this filter. Edge labels are included when
+   * reading the edges, but other conditions are tested after they have been read.
+   */
+  public Iterator<Edge> outEdges(Vertex v) {
+    Iterator<Edge> edges = v.edges(Direction.OUT, edgeLabelArray);
+    if (excludedEdgeLabels.isEmpty() && edgeConditions.isEmpty())
+      return edges;
+
+    return IteratorUtils.filter(edges, e -> !excludedEdgeLabels.contains(e.label())
+        && edgeConditions.stream().allMatch(c -> c.test(e)));
+  }
+
+  /**
+   * Returns the properties of v included by this filter
+   */
+  public Iterator<VertexProperty<Object>> properties(Vertex v) {
+    return filterKeys(v.properties(propertyKeyArray));
+  }
+
+  /**
+   * Returns the properties of e included by this filter
+   */
+  public Iterator<Property<Object>> properties(Edge e) {
+    return filterKeys(e.properties(propertyKeyArray));
+  }
+
+  private <T extends Property<Object>> Iterator<T> filterKeys(Iterator<T> properties) {
+    if (excludedPropertyKeys.isEmpty())
+      return properties;
+
+    return IteratorUtils.filter(properties, p -> !excludedPropertyKeys.contains(p.key()));
+  }
+
+  private static <S, E extends Element> GraphTraversal<S, E> filter(GraphTraversal<S, E> traversal, Set<String> labels, Set<String> excludedLabels, List<Condition> conditions) {
+    if (!labels.isEmpty())
+      traversal = traversal.hasLabel(P.within(labels));
+    if (!excludedLabels.isEmpty())
+      traversal = traversal.hasLabel(P.without(excludedLabels));
+
+    for (Condition condition : conditions)
+      traversal = traversal.has(condition.key, condition.predicate);
+
+    return traversal;
+  }
+
+  private static Set<String> toSet(Collection<String> values) {
+    if (values == null || values.isEmpty())
+      return Collections.emptySet();
+
+    return Collections.unmodifiableSet(new LinkedHashSet<>(values));
+  }
+
+  private static class Condition implements Predicate<Element> {
+    private final String key;
+    private final P<?> predicate;
+
+    Condition(String key, P<?> predicate) {
+      this.key = key;
+      this.predicate = predicate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean test(Element element) {
+      Iterator<? extends Property<Object>> properties = element.properties(key);
+      while (properties.hasNext()) {
+        if (((P<Object>) predicate).test(properties.next().value()))
+          return true;
+      }
+
+      return false;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+/**
+ * {@link LongTable} held on the heap in primitive arrays, using 16 bytes per slot.
+ */
+class ArrayLongTable implements LongTable {
+
+  static final long MAX_CAPACITY = 1L << 30;
+
+  private long[] keys;
+  private long[] values;
+
+  ArrayLongTable(long capacity) {
+    if (capacity > MAX_CAPACITY)
+      throw new IllegalStateException("Capacity of " + capacity + " is too large to be held on the heap, use a memory mapped IdMap instead");
+
+    keys = new long[(int) capacity];
+    values = new long[(int) capacity];
+  }
+
+  @Override
+  public long capacity() {
+    return keys.length;
+  }
+
+  @Override
+  public long key(long slot) {
+    return keys[(int) slot];
+  }
+
+  @Override
+  public long value(long slot) {
+    return values[(int) slot];
+  }
+
+  @Override
+  public void set(long slot, long key, long value) {
+    keys[(int) slot] = key;
+    values[(int) slot] = value;
+  }
+
+  @Override
+  public void close() {
+    keys = new long[0];
+    values = new long[0];
+  }
+}
@@ -0,0 +1,51 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link IdMap} backed by a ConcurrentHashMap, which supports IDs of any type but uses a lot of
+ * memory per entry. Suitable for small graphs, or graphs whose IDs aren't numeric.
+ *
+ * This class is thread safe.
+ */
+public class HashIdMap implements IdMap {
+
+  private final Map<Object, Object> ids = new ConcurrentHashMap<>();
+
+  @Override
+  public void put(Object sourceId, Object targetId) {
+    ids.put(sourceId, targetId);
+  }
+
+  @Override
+  public Object get(Object sourceId) {
+    return ids.get(sourceId);
+  }
+
+  @Override
+  public long size() {
+    return ids.size();
+  }
+
+  @Override
+  public void close() {
+    ids.clear();
+  }
+}
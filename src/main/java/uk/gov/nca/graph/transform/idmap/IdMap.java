@@ -0,0 +1,55 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+/**
+ * Maps the IDs of elements in a source graph to the IDs of the corresponding elements
+ * in a target graph.
+ *
+ * Implementations must be thread safe.
+ */
+public interface IdMap extends AutoCloseable {
+
+  /**
+   * Record that sourceId in the source graph corresponds to targetId in the target graph
+   */
+  void put(Object sourceId, Object targetId);
+
+  /**
+   * Returns the target ID corresponding to sourceId, or null if there isn't one
+   */
+  Object get(Object sourceId);
+
+  /**
+   * Returns the number of IDs in the map
+   */
+  long size();
+
+  /**
+   * Record that no more IDs will be put into the map, so that implementations can make reads
+   * cheaper from then on. By default this does nothing.
+   */
+  default void freeze() {
+    //Do nothing
+  }
+
+  /**
+   * Release any resources held by this map
+   */
+  @Override
+  void close();
+}
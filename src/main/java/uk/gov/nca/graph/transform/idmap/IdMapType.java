@@ -0,0 +1,56 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The types of {@link IdMap} available
+ */
+public enum IdMapType {
+  /**
+   * A HashMap, supporting any type of ID
+   */
+  HASH,
+
+  /**
+   * A primitive hash table held on the heap, for Long IDs
+   */
+  COMPACT,
+
+  /**
+   * A primitive hash table held in a memory mapped file, for Long IDs
+   */
+  MAPPED;
+
+  /**
+   * Create a new IdMap of this type. The directory is only used by MAPPED, and if null
+   * the system temporary directory is used.
+   */
+  public IdMap create(Path directory) {
+    switch (this) {
+      case HASH:
+        return new HashIdMap();
+      case MAPPED:
+        return LongIdMap.mapped(directory == null ? Paths.get(System.getProperty("java.io.tmpdir")) : directory);
+      case COMPACT:
+      default:
+        return LongIdMap.onHeap();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * Compact {@link IdMap} for graphs with numeric (Long) IDs, which stores IDs as primitive longs
+ * in an open addressing hash table rather than as boxed objects. This uses around 20-30 bytes
+ * per entry, compared to 80 or more for a HashMap.
+ *
+ * The table can either be held on the heap, or in a memory mapped file on local disk for graphs
+ * too large to fit in memory. Any IDs which aren't Longs are held in a HashMap instead, so this
+ * map can be used safely with graphs of any ID type.
+ *
+ * Each source ID should only be put into the map once. This class is thread safe, allowing
+ * concurrent reads but only a single writer at a time. Once the map has been frozen, reads no
+ * longer take a lock, so that threads reading concurrently don't contend with each other.
+ */
+public class LongIdMap implements IdMap {
+
+  private static final long INITIAL_CAPACITY = 1L << 16;
+  private static final double LOAD_FACTOR = 0.7;
+
+  //Keys are stored as key + 1, so that 0 can mark an empty slot. The key -1 is held in the fallback map.
+  private static final long EMPTY = 0L;
+  private static final long UNSTORABLE_KEY = -1L;
+
+  private final LongFunction<LongTable> tableFactory;
+  private final Map<Object, Object> fallback = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private volatile boolean frozen = false;
+  private LongTable table;
+  private long tableSize = 0;
+  private long resizeThreshold;
+
+  LongIdMap(LongFunction<LongTable> tableFactory) {
+    this.tableFactory = tableFactory;
+    this.table = tableFactory.apply(INITIAL_CAPACITY);
+    this.resizeThreshold = (long) (INITIAL_CAPACITY * LOAD_FACTOR);
+  }
+
+  /**
+   * Create a new LongIdMap held on the heap
+   */
+  public static LongIdMap onHeap() {
+    return new LongIdMap(ArrayLongTable::new);
+  }
+
+  /**
+   * Create a new LongIdMap held in a memory mapped file within directory
+   */
+  public static LongIdMap mapped(Path directory) {
+    return new LongIdMap(capacity -> new MappedLongTable(directory, capacity));
+  }
+
+  @Override
+  public void put(Object sourceId, Object targetId) {
+    lock.writeLock().lock();
+    try {
+      if (frozen)
+        throw new IllegalStateException("IDs can't be put into a frozen map");
+
+      if (isStorable(sourceId) && targetId instanceof Long) {
+        putLong((Long) sourceId, (Long) targetId);
+      } else {
+        fallback.put(sourceId, targetId);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object get(Object sourceId) {
+    if (frozen)
+      return lookup(sourceId);
+
+    lock.readLock().lock();
+    try {
+      return lookup(sourceId);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Object lookup(Object sourceId) {
+    if (isStorable(sourceId)) {
+      long slot = findSlot(table, (Long) sourceId + 1);
+      if (table.key(slot) != EMPTY)
+        return table.value(slot);
+    }
+
+    return fallback.isEmpty() ? null : fallback.get(sourceId);
+  }
+
+  @Override
+  public long size() {
+    if (frozen)
+      return tableSize + fallback.size();
+
+    lock.readLock().lock();
+    try {
+      return tableSize + fallback.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stop any more IDs being put into the map, after which reads don't take a lock. Writes made
+   * before this is called are visible to reads made after it, on any thread.
+   */
+  @Override
+  public void freeze() {
+    lock.writeLock().lock();
+    try {
+      frozen = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Pass every source ID and target ID in the map to action, in no particular order. The map
+   * mustn't be modified by action.
+   */
+  public void forEach(BiConsumer<Object, Object> action) {
+    lock.readLock().lock();
+    try {
+      for (long i = 0; i < table.capacity(); i++) {
+        long k = table.key(i);
+        if (k != EMPTY)
+          action.accept(k - 1, table.value(i));
+      }
+
+      fallback.forEach(action);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static boolean isStorable(Object id) {
+    return id instanceof Long && (Long) id != UNSTORABLE_KEY;
+  }
+
+  private void putLong(long key, long value) {
+    long storedKey = key + 1;
+
+    long slot = findSlot(table, storedKey);
+    if (table.key(slot) == EMPTY) {
+      if (tableSize >= resizeThreshold) {
+        resize();
+        slot = findSlot(table, storedKey);
+      }
+
+      tableSize++;
+    }
+
+    table.set(slot, storedKey, value);
+  }
+
+  /**
+   * Returns the slot containing storedKey, or the empty slot where it should be inserted
+   */
+  private static long findSlot(LongTable table, long storedKey) {
+    long mask = table.capacity() - 1;
+    long slot = hash(storedKey) & mask;
+
+    long k;
+    while ((k = table.key(slot)) != EMPTY && k != storedKey)
+      slot = (slot + 1) & mask;
+
+    return slot;
+  }
+
+  private static long hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+
+  private void resize() {
+    LongTable oldTable = table;
+    LongTable newTable = tableFactory.apply(oldTable.capacity() * 2);
+
+    for (long i = 0; i < oldTable.capacity(); i++) {
+      long k = oldTable.key(i);
+      if (k != EMPTY)
+        newTable.set(findSlot(newTable, k), k, oldTable.value(i));
+    }
+
+    table = newTable;
+    resizeThreshold = (long) (newTable.capacity() * LOAD_FACTOR);
+
+    oldTable.close();
+  }
+
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      table.close();
+      fallback.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
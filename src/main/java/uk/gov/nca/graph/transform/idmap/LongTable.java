@@ -0,0 +1,50 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+/**
+ * Fixed capacity storage for the slots of a {@link LongIdMap}, each of which holds a key and a
+ * value. A key of 0 indicates an empty slot, and all slots are initially empty.
+ */
+interface LongTable extends AutoCloseable {
+
+  /**
+   * Returns the number of slots in the table
+   */
+  long capacity();
+
+  /**
+   * Returns the key held in slot
+   */
+  long key(long slot);
+
+  /**
+   * Returns the value held in slot
+   */
+  long value(long slot);
+
+  /**
+   * Set the key and value held in slot
+   */
+  void set(long slot, long key, long value);
+
+  /**
+   * Release the storage used by the table
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,155 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LongTable} held in a memory mapped file on local disk, so that it uses very little
+ * heap and the operating system can page it to and from disk as required. The file is split
+ * into segments of up to 1GB, as a single buffer can't map more than 2GB.
+ *
+ * The file is unmapped and deleted when the table is closed, rather than waiting for the buffers
+ * to be garbage collected, so that the disk space and address space are released straight away.
+ * The table must not be used once it has been closed.
+ */
+class MappedLongTable implements LongTable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MappedLongTable.class);
+
+  private static final int SLOT_BYTES = 16;
+  private static final int SEGMENT_SHIFT = 26;
+  private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+  private static final long SEGMENT_MASK = SEGMENT_SLOTS - 1;
+
+  private static final Consumer<ByteBuffer> UNMAPPER = createUnmapper();
+
+  private final Path file;
+  private final long capacity;
+  private final MappedByteBuffer[] segments;
+
+  MappedLongTable(Path directory, long capacity) {
+    this.capacity = capacity;
+
+    try {
+      file = Files.createTempFile(directory, "idmap", ".bin");
+
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        int segmentCount = (int) ((capacity + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+        segments = new MappedByteBuffer[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++) {
+          long slots = Math.min(SEGMENT_SLOTS, capacity - i * SEGMENT_SLOTS);
+          segments[i] = channel.map(MapMode.READ_WRITE, i * SEGMENT_SLOTS * SLOT_BYTES, slots * SLOT_BYTES);
+        }
+      }
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Unable to create memory mapped IdMap in " + directory, ioe);
+    }
+  }
+
+  @Override
+  public long capacity() {
+    return capacity;
+  }
+
+  @Override
+  public long key(long slot) {
+    return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong(offset(slot));
+  }
+
+  @Override
+  public long value(long slot) {
+    return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong(offset(slot) + 8);
+  }
+
+  @Override
+  public void set(long slot, long key, long value) {
+    MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+    int offset = offset(slot);
+
+    segment.putLong(offset, key);
+    segment.putLong(offset + 8, value);
+  }
+
+  private static int offset(long slot) {
+    return (int) ((slot & SEGMENT_MASK) * SLOT_BYTES);
+  }
+
+  @Override
+  public void close() {
+    for (int i = 0; i < segments.length; i++) {
+      if (segments[i] != null) {
+        UNMAPPER.accept(segments[i]);
+        segments[i] = null;
+      }
+    }
+
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ioe) {
+      //The file may still be mapped if unmapping isn't supported
+      file.toFile().deleteOnExit();
+    }
+  }
+
+  private static Consumer<ByteBuffer> createUnmapper() {
+    try {
+      //Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+
+      return buffer -> invoke(invokeCleaner, unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      //Fall through to Java 8
+    }
+
+    try {
+      Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+      return buffer -> invoke(clean, invoke(cleaner, buffer));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.warn("Unable to unmap buffers explicitly, so memory mapped files will be released when garbage collected", e);
+      return buffer -> {};
+    }
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) {
+    try {
+      return method.invoke(target, args);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to unmap buffer", e);
+    }
+  }
+}
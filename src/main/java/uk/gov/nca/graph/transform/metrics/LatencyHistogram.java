@@ -0,0 +1,101 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of latencies, in milliseconds, in a fixed set of exponential
+ * buckets. Percentiles are approximated by the upper bound of the bucket they fall in, which
+ * is accurate enough to tell whether a phase is bound by latency without the cost of recording
+ * every value.
+ *
+ * This class is thread safe.
+ */
+public class LatencyHistogram {
+
+  private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000};
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a single latency, in milliseconds
+   */
+  public void record(long millis) {
+    long value = Math.max(0, millis);
+
+    buckets.incrementAndGet(bucket(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  private static int bucket(long value) {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      if (value <= BOUNDS[i])
+        return i;
+    }
+
+    return BOUNDS.length;
+  }
+
+  /**
+   * Returns the number of latencies recorded
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the mean latency, or 0 if nothing has been recorded
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0.0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Returns the largest latency recorded
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns an upper bound on the latency below which the given fraction (between 0 and 1) of
+   * recorded latencies fall, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double fraction) {
+    long n = count.get();
+    if (n == 0)
+      return 0;
+
+    long target = (long) Math.ceil(fraction * n);
+    long seen = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      seen += buckets.get(i);
+      if (seen >= target)
+        return Math.min(BOUNDS[i], getMax());
+    }
+
+    return getMax();
+  }
+}
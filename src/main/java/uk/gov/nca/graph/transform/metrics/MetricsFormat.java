@@ -0,0 +1,32 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.metrics;
+
+/**
+ * Format of the file that metrics are periodically written to
+ */
+public enum MetricsFormat {
+  /**
+   * One JSON object per line, containing every metric at that time
+   */
+  JSON,
+
+  /**
+   * One row per metric, with columns timestamp, metric and value
+   */
+  CSV
+}
@@ -0,0 +1,259 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+
+/**
+ * Publishes the metrics of a running transformation, recorded in its {@link TransformResult},
+ * over JMX and optionally by periodically appending them to a file.
+ *
+ * Metrics comprise every counter, the current value of every gauge, and the count, mean,
+ * approximate 50th, 95th and 99th percentiles, and maximum of every latency histogram. Each
+ * counter also has a rate per second, which over JMX is averaged since the transformation
+ * started and in the file is averaged over the interval since the previous report.
+ */
+public class MetricsPublisher implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsPublisher.class);
+
+  private static final String DOMAIN = "uk.gov.nca.graph.transform";
+  private static final String RATE_SUFFIX = ".ratePerSecond";
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+  private final TransformResult result;
+  private final long startTime = System.nanoTime();
+  private final ObjectName objectName;
+
+  private final Path file;
+  private final MetricsFormat format;
+  private final ScheduledExecutorService scheduler;
+
+  private Map<String, Long> previousCounts = new HashMap<>();
+  private long previousTime = startTime;
+
+  private MetricsPublisher(String name, TransformResult result, Path file, MetricsFormat format, long intervalMillis) {
+    this.result = result;
+    this.file = file;
+    this.format = format == null ? MetricsFormat.JSON : format;
+    this.objectName = register(name);
+
+    if (file != null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-reporter");
+        t.setDaemon(true);
+        return t;
+      });
+
+      long interval = Math.max(1, intervalMillis);
+      scheduler.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.MILLISECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Start publishing the metrics in result over JMX, under the given name. If file isn't null,
+   * then metrics are also appended to it in format every intervalMillis, and once more when
+   * the publisher is closed.
+   */
+  public static MetricsPublisher start(String name, TransformResult result, Path file, MetricsFormat format, long intervalMillis) {
+    return new MetricsPublisher(name, result, file, format, intervalMillis);
+  }
+
+  /**
+   * Returns the current value of every metric in result, sorted by name, excluding rates
+   */
+  public static Map<String, Number> snapshot(TransformResult result) {
+    Map<String, Number> metrics = new TreeMap<>(result.getCounts());
+    metrics.putAll(result.getGauges());
+
+    result.getHistograms().forEach((name, histogram) -> {
+      metrics.put(name + ".count", histogram.getCount());
+      metrics.put(name + ".mean", histogram.getMean());
+      metrics.put(name + ".p50", histogram.getPercentile(0.5));
+      metrics.put(name + ".p95", histogram.getPercentile(0.95));
+      metrics.put(name + ".p99", histogram.getPercentile(0.99));
+      metrics.put(name + ".max", histogram.getMax());
+    });
+
+    return metrics;
+  }
+
+  private ObjectName register(String name) {
+    try {
+      ObjectName on = new ObjectName(DOMAIN + ":type=Transformation,name=" + ObjectName.quote(name + "-" + INSTANCES.incrementAndGet()));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), on);
+
+      LOGGER.info("Metrics are available over JMX as {}", on);
+      return on;
+    } catch (JMException | RuntimeException e) {
+      LOGGER.warn("Unable to register metrics with JMX", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns every metric, with counter rates averaged since the transformation started
+   */
+  private Map<String, Number> currentMetrics() {
+    Map<String, Number> metrics = snapshot(result);
+
+    double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+    result.getCounts().forEach((name, count) -> metrics.put(name + RATE_SUFFIX, elapsedSeconds > 0 ? count / elapsedSeconds : 0.0));
+    metrics.put("elapsedSeconds", elapsedSeconds);
+
+    return metrics;
+  }
+
+  private synchronized void report() {
+    long now = System.nanoTime();
+    double intervalSeconds = (now - previousTime) / 1e9;
+
+    Map<String, Long> counts = result.getCounts();
+    Map<String, Number> metrics = snapshot(result);
+    counts.forEach((name, count) -> metrics.put(name + RATE_SUFFIX,
+        intervalSeconds > 0 ? (count - previousCounts.getOrDefault(name, 0L)) / intervalSeconds : 0.0));
+    metrics.put("elapsedSeconds", (now - startTime) / 1e9);
+
+    previousCounts = counts;
+    previousTime = now;
+
+    String timestamp = Instant.now().toString();
+    try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      if (format == MetricsFormat.CSV) {
+        if (Files.size(file) == 0)
+          writer.write("timestamp,metric,value\n");
+
+        for (Map.Entry<String, Number> e : metrics.entrySet())
+          writer.write(timestamp + "," + e.getKey() + "," + e.getValue() + "\n");
+      } else {
+        StringBuilder sb = new StringBuilder("{\"timestamp\":\"").append(timestamp).append('"');
+        metrics.forEach((k, v) -> sb.append(",\"").append(escape(k)).append("\":").append(v));
+        writer.write(sb.append("}\n").toString());
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to write metrics to {}", file, e);
+    }
+  }
+
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  /**
+   * Write a final report, if writing to a file, and stop publishing metrics
+   */
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      report();
+    }
+
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException e) {
+        LOGGER.debug("Unable to unregister {}", objectName, e);
+      }
+    }
+  }
+
+  /**
+   * Exposes each metric as a read only attribute. The set of attributes grows as new counters,
+   * gauges and histograms are created.
+   */
+  private class MetricsMBean implements DynamicMBean {
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Number value = currentMetrics().get(attribute);
+      if (value == null)
+        throw new AttributeNotFoundException(attribute);
+
+      return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      Map<String, Number> metrics = currentMetrics();
+
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        if (metrics.containsKey(attribute))
+          list.add(new Attribute(attribute, metrics.get(attribute)));
+      }
+
+      return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+      throw new UnsupportedOperationException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> attributes = new ArrayList<>();
+      currentMetrics().forEach((name, value) ->
+          attributes.add(new MBeanAttributeInfo(name, value.getClass().getName(), name, true, false, false)));
+
+      return new MBeanInfo(MetricsPublisher.class.getName(), "Metrics of a running transformation",
+          attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+  }
+}
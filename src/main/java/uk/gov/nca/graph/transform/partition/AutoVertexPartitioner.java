@@ -0,0 +1,64 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import java.util.Collection;
+import java.util.List;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses how to partition vertices from the shape of the graph, so that where possible each
+ * partition only reads its own vertices rather than filtering a scan of the whole graph.
+ *
+ * A request for a single partition reads the whole graph. Otherwise, if the graph has at least as
+ * many vertex labels as the requested number of partitions, vertices are partitioned by label
+ * (see {@link LabelVertexPartitioner}). Otherwise they fall back to being partitioned by the hash
+ * of their ID (see {@link HashVertexPartitioner}), which reads every vertex in every partition,
+ * and a warning is logged. Graphs with a native way of splitting their data should be given a
+ * {@link VertexPartitioner} of their own.
+ *
+ * Finding the labels requires reading the label of every vertex once, unless they are passed to
+ * {@link #partition(Graph, int, Collection)}. The choice depends on the
+ * labels in the graph, so a resumed transformation will only see the same partitions if the
+ * labels haven't changed.
+ */
+public class AutoVertexPartitioner implements VertexPartitioner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AutoVertexPartitioner.class);
+
+  @Override
+  public List<VertexPartition> partition(Graph graph, int count) {
+    if (count <= 1)
+      return new HashVertexPartitioner().partition(graph, 1);
+
+    return partition(graph, count, graph.traversal().V().label().dedup().toList());
+  }
+
+  @Override
+  public List<VertexPartition> partition(Graph graph, int count, Collection<String> labels) {
+    if (count <= 1)
+      return new HashVertexPartitioner().partition(graph, 1);
+
+    if (labels.size() >= count)
+      return new LabelVertexPartitioner().partition(graph, count, labels);
+
+    LOGGER.warn("Graph has {} vertex labels, fewer than the {} partitions requested, so vertices will be partitioned by hash and every partition will read every vertex", labels.size(), count);
+    return new HashVertexPartitioner().partition(graph, count);
+  }
+}
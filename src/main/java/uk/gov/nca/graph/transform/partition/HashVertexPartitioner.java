@@ -0,0 +1,70 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * Partitions vertices by the hash of their ID, producing exactly the requested number of
+ * partitions of roughly equal size.
+ *
+ * This works for any embedded graph, but each partition has to read all vertex IDs to filter
+ * them, so read I/O grows with the number of partitions. It is best used only where there is no
+ * better way of splitting the graph, and with a number of partitions close to the number of
+ * workers.
+ */
+public class HashVertexPartitioner implements VertexPartitioner {
+
+  @Override
+  public List<VertexPartition> partition(Graph graph, int count) {
+    int partitionCount = Math.max(1, count);
+
+    List<VertexPartition> partitions = new ArrayList<>(partitionCount);
+    for (int i = 0; i < partitionCount; i++)
+      partitions.add(new HashVertexPartition(i, partitionCount));
+
+    return partitions;
+  }
+
+  private static class HashVertexPartition implements VertexPartition {
+
+    private final int partition;
+    private final int partitionCount;
+
+    public HashVertexPartition(int partition, int partitionCount) {
+      this.partition = partition;
+      this.partitionCount = partitionCount;
+    }
+
+    @Override
+    public String getName() {
+      return "hash-" + partition + "-of-" + partitionCount;
+    }
+
+    @Override
+    public GraphTraversal<Vertex, Vertex> restrict(GraphTraversal<Vertex, Vertex> vertices) {
+      if (partitionCount == 1)
+        return vertices;
+
+      return vertices.filter(t -> Math.floorMod(t.get().id().hashCode(), partitionCount) == partition);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * Partitions vertices by their label, producing one partition per label regardless of the
+ * requested count.
+ *
+ * This is efficient on graphs which index vertices by label, but the partitions may differ
+ * greatly in size.
+ */
+public class LabelVertexPartitioner implements VertexPartitioner {
+
+  @Override
+  public List<VertexPartition> partition(Graph graph, int count) {
+    return partition(graph, count, graph.traversal().V().label().dedup().toList());
+  }
+
+  @Override
+  public List<VertexPartition> partition(Graph graph, int count, Collection<String> labels) {
+    List<VertexPartition> partitions = new ArrayList<>();
+    labels.forEach(l -> partitions.add(new LabelVertexPartition(l)));
+
+    return partitions;
+  }
+
+  private static class LabelVertexPartition implements VertexPartition {
+
+    private final String label;
+
+    public LabelVertexPartition(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String getName() {
+      return "label-" + label;
+    }
+
+    @Override
+    public GraphTraversal<Vertex, Vertex> restrict(GraphTraversal<Vertex, Vertex> vertices) {
+      return vertices.hasLabel(label);
+    }
+  }
+}
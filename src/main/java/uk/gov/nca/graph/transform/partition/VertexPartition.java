@@ -0,0 +1,52 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * A disjoint slice of the vertices in a graph, which can be streamed independently of any
+ * other partition of the same graph.
+ */
+public interface VertexPartition {
+
+  /**
+   * A name for this partition, which is unique amongst the partitions produced by a partitioner
+   * and stable between runs over the same graph
+   */
+  String getName();
+
+  /**
+   * Returns a new traversal over the vertices in this partition, starting from g.
+   * Each call returns a new traversal, so partitions can be read from any thread.
+   */
+  default GraphTraversal<Vertex, Vertex> traversal(GraphTraversalSource g) {
+    return restrict(g.V());
+  }
+
+  /**
+   * Add steps to vertices, a traversal over some or all of the vertices in the graph, which
+   * restrict it to the vertices in this partition.
+   *
+   * Callers with their own conditions on vertices (such as <code>hasLabel</code>) should add
+   * them to <code>g.V()</code> before calling this method, so that the graph can still fold
+   * them into the initial step even if the partition is applied with a lambda.
+   */
+  GraphTraversal<Vertex, Vertex> restrict(GraphTraversal<Vertex, Vertex> vertices);
+}
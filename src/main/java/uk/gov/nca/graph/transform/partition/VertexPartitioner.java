@@ -0,0 +1,47 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import java.util.Collection;
+import java.util.List;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+
+/**
+ * Splits the vertices of a graph into disjoint partitions, so that they can be processed by
+ * multiple workers without sharing an iterator.
+ *
+ * Implementations must have a public no-argument constructor, so that they can be specified
+ * by class name. Graph providers with a native way of splitting their data (for example, by
+ * storage shard) can implement this interface to make use of it.
+ */
+public interface VertexPartitioner {
+
+  /**
+   * Split the vertices of graph into partitions. The requested count is a hint; implementations
+   * may return more or fewer partitions if that better suits the graph.
+   */
+  List<VertexPartition> partition(Graph graph, int count);
+
+  /**
+   * Split the vertices of graph into partitions as {@link #partition(Graph, int)} does, where
+   * the labels of all vertices in graph are already known, so that partitioners which use them
+   * don't have to read every vertex to find them again. By default the labels are ignored.
+   */
+  default List<VertexPartition> partition(Graph graph, int count, Collection<String> labels) {
+    return partition(graph, count);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+/**
+ * Utility for creating {@link VertexPartitioner}s by name
+ */
+public class VertexPartitioners {
+
+  private VertexPartitioners(){
+    //Private constructor for utility class
+  }
+
+  /**
+   * Create a partitioner from its name, which is either "auto" (the default, if name is null or
+   * empty), "hash", "label", or the fully qualified name of a class implementing
+   * {@link VertexPartitioner}.
+   */
+  public static VertexPartitioner create(String name) {
+    if (name == null || name.isEmpty() || "auto".equalsIgnoreCase(name))
+      return new AutoVertexPartitioner();
+
+    if ("hash".equalsIgnoreCase(name))
+      return new HashVertexPartitioner();
+
+    if ("label".equalsIgnoreCase(name))
+      return new LabelVertexPartitioner();
+
+    try {
+      return Class.forName(name).asSubclass(VertexPartitioner.class).getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unable to create VertexPartitioner " + name, e);
+    }
+  }
+}
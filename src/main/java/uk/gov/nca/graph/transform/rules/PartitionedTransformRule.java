@@ -0,0 +1,51 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.rules;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import uk.gov.nca.graph.transform.partition.HashVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+
+/**
+ * A {@link TransformRule} whose work can be split up by the vertices it starts from, so that it
+ * can be run on several partitions of the graph in parallel.
+ *
+ * Each call to {@link #transform(Graph, VertexPartition, Consumer)} should only produce objects
+ * starting from the vertices in the given partition (for instance, by passing a traversal such as
+ * <code>g.V().hasLabel(...)</code> to {@link VertexPartition#restrict}, which keeps the label
+ * where the graph can make use of it). Partitions may be transformed concurrently
+ * from several threads, so implementations must be thread safe. Rules which need to aggregate
+ * across the whole graph should implement {@link VisitorTransformRule} instead.
+ */
+public interface PartitionedTransformRule extends TransformRule {
+
+  /**
+   * Passes the objects produced from the vertices in partition to the sink
+   */
+  void transform(Graph graph, VertexPartition partition, Consumer<Map<String, Object>> sink);
+
+  /**
+   * Runs the rule on its own, treating the whole graph as a single partition
+   */
+  @Override
+  default void transform(Graph graph, Consumer<Map<String, Object>> sink) {
+    for (VertexPartition partition : new HashVertexPartitioner().partition(graph, 1))
+      transform(graph, partition, sink);
+  }
+}
@@ -16,21 +16,52 @@ limitations under the License.
 
 package uk.gov.nca.graph.transform.rules;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 
 /**
  * Interface describing how to transform a graph into flat objects for
- * storing in mediums such as Elasticsearch
+ * storing in mediums such as Elasticsearch.
+ *
+ * Implementations must override at least one of the two transform methods. Rules which
+ * produce a large number of objects should override {@link #transform(Graph, Consumer)},
+ * so that objects can be passed on as they are produced rather than being held in memory.
+ *
+ * Implementations must have a public no-argument constructor. Registering them with
+ * {@link java.util.ServiceLoader} (in a
+ * <code>META-INF/services/uk.gov.nca.graph.transform.rules.TransformRule</code> file) lets
+ * them be found without scanning the whole classpath.
  */
 public interface TransformRule {
 
   /**
    * Returns a collection of Map objects representing the content in the graph
    * to be processed by this rule.
+   *
+   * By default, this collects the output of {@link #transform(Graph, Consumer)} into a list.
    */
-  Collection<Map<String, Object>> transform(Graph graph);
+  default Collection<Map<String, Object>> transform(Graph graph) {
+    List<Map<String, Object>> results = new ArrayList<>();
+    transform(graph, results::add);
+
+    return results;
+  }
+
+  /**
+   * Passes Map objects representing the content in the graph to be processed by this rule
+   * to the sink, one at a time as they are produced.
+   *
+   * By default, this passes each object returned by {@link #transform(Graph)} to the sink.
+   */
+  default void transform(Graph graph, Consumer<Map<String, Object>> sink) {
+    transform(graph).forEach(sink);
+  }
 
   /**
    * The name of the index into which this rule should output results
@@ -41,4 +72,36 @@ public interface TransformRule {
    * The document type to associate with the outputs of this rule
    */
   String getType();
+
+  /**
+   * The Elasticsearch mapping for the output of this rule (e.g. a map containing "properties"),
+   * used when the index is created.
+   *
+   * By default this returns null, and Elasticsearch will infer a mapping from the documents.
+   */
+  default Map<String, Object> getMapping() {
+    return null;
+  }
+
+  /**
+   * Returns a stable ID for an object produced by this rule, so that re-running the rule
+   * replaces previous output rather than duplicating it. The ID must be unique within the index.
+   *
+   * By default this returns null, and Elasticsearch will generate an ID for each object. Rules
+   * must override this to be run by an incremental transformation, as otherwise each run would
+   * add another copy of their output; rules which don't are skipped in incremental runs.
+   */
+  default String getId(Map<String, Object> object) {
+    return null;
+  }
+
+  /**
+   * The labels of the vertices that this rule reads, so that in an incremental transformation
+   * the rule is only run if vertices with one of these labels have changed.
+   *
+   * By default this is empty, meaning the rule may read any part of the graph and is always run.
+   */
+  default Set<String> getInputLabels() {
+    return Collections.emptySet();
+  }
 }
@@ -0,0 +1,80 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.rules;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * A {@link TransformRule} which, rather than traversing the graph itself, is passed each vertex
+ * with one of the labels it is interested in. This allows a single scan of the graph to be
+ * shared between all visitor rules, rather than each rule scanning the graph separately.
+ *
+ * Each vertex is passed to {@link #visit(Vertex, Consumer)}, from which its adjacent edges and
+ * vertices can also be read. Once every vertex has been visited, {@link #finish(Consumer)} is
+ * called so that the rule can output anything it has aggregated.
+ *
+ * Vertices may be visited concurrently from several threads, so implementations must be thread
+ * safe. A new instance of the rule is used for each transformation.
+ */
+public interface VisitorTransformRule extends TransformRule {
+
+  /**
+   * The labels of the vertices this rule should visit. If empty, every vertex is visited.
+   */
+  Set<String> getLabels();
+
+  /**
+   * Visit a vertex, passing any objects produced from it to the sink
+   */
+  void visit(Vertex vertex, Consumer<Map<String, Object>> sink);
+
+  /**
+   * Called once all vertices have been visited, passing any remaining objects (for instance,
+   * aggregations) to the sink. By default, this does nothing.
+   */
+  default void finish(Consumer<Map<String, Object>> sink) {
+    //Do nothing by default
+  }
+
+  /**
+   * Visitor rules read the vertices with their declared labels
+   */
+  @Override
+  default Set<String> getInputLabels() {
+    return getLabels();
+  }
+
+  /**
+   * Runs the rule on its own, by visiting each matching vertex in graph on the current thread
+   * and then finishing
+   */
+  @Override
+  default void transform(Graph graph, Consumer<Map<String, Object>> sink) {
+    GraphTraversal<Vertex, Vertex> traversal = graph.traversal().V();
+    if (!getLabels().isEmpty())
+      traversal = traversal.hasLabel(P.within(getLabels()));
+
+    traversal.forEachRemaining(v -> visit(v, sink));
+    finish(sink);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+
+public class BatchedWriterTest {
+
+    @Test
+    public void testMissingVertexInBatch() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex a = graph.addVertex(T.label, "Person", "name", "a");
+        Vertex b = graph.addVertex(T.label, "Person", "name", "b");
+        Vertex c = graph.addVertex(T.label, "Person", "name", "c");
+
+        //A single batch, with an edge to a missing in vertex in the middle
+        BatchedWriter writer = new BatchedWriter(graph.traversal(), 10, 1, null);
+
+        List<Object> ids = new ArrayList<>();
+        List<Exception> exceptions = new ArrayList<>();
+        writer.add(BatchedWriter.addEdge(a.id(), "knows", b.id()).property("index", 0), (id, e) -> { ids.add(id); exceptions.add(e); });
+        writer.add(BatchedWriter.addEdge(a.id(), "knows", -1L).property("index", 1), (id, e) -> { ids.add(id); exceptions.add(e); });
+        writer.add(BatchedWriter.addEdge(-1L, "knows", c.id()).property("index", 2), (id, e) -> { ids.add(id); exceptions.add(e); });
+        writer.add(BatchedWriter.addEdge(b.id(), "knows", c.id()).property("index", 3), (id, e) -> { ids.add(id); exceptions.add(e); });
+        writer.add(BatchedWriter.addVertex("Person").property("name", "d"), (id, e) -> { ids.add(id); exceptions.add(e); });
+        writer.flush();
+
+        assertEquals(5, ids.size());
+        assertNotNull(ids.get(0));
+        assertNull(ids.get(1));
+        assertNull(ids.get(2));
+        assertNotNull(ids.get(3));
+        assertNotNull(ids.get(4));
+        exceptions.forEach(e -> assertNull(e));
+
+        assertEquals(2L, (long) graph.traversal().E().count().next());
+        assertEquals(0L, (long) graph.traversal().E().has("index", 1).count().next());
+        assertEquals(1L, (long) graph.traversal().V(a.id()).out("knows").has("name", "b").count().next());
+        assertEquals(1L, (long) graph.traversal().V(b.id()).out("knows").has("name", "c").count().next());
+        assertEquals(4L, (long) graph.traversal().V().count().next());
+
+        graph.close();
+    }
+
+    @Test
+    public void testSmallBatches() throws Exception{
+        Graph graph = TinkerGraph.open();
+
+        BatchedWriter writer = new BatchedWriter(graph.traversal(), 3, 2, new Object());
+
+        List<Object> ids = new ArrayList<>();
+        for(int i = 0; i < 10; i++)
+            writer.add(BatchedWriter.addVertex("Thing").property("index", i), (id, e) -> ids.add(id));
+
+        //Three full batches should already have been written, leaving one element outstanding
+        assertEquals(9, ids.size());
+
+        writer.flush();
+        assertEquals(10, ids.size());
+        ids.forEach(id -> assertNotNull(id));
+        assertEquals(10L, (long) graph.traversal().V().hasLabel("Thing").count().next());
+
+        graph.close();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.CopyGraph.Mode;
+
+public class CopyGraphTest {
+
+    @Test
+    public void testStream() throws Exception{
+        testCopy(Mode.STREAM);
+    }
+
+    @Test
+    public void testTempFile() throws Exception{
+        testCopy(Mode.TEMP_FILE);
+    }
+
+    @Test
+    public void testChunked() throws Exception{
+        testCopy(Mode.CHUNKED);
+    }
+
+    @Test
+    public void testNonEmptyTarget() throws Exception{
+        Graph source = createGraph();
+        Graph target = TinkerGraph.open();
+        target.addVertex(T.label, "Existing");
+
+        assertFalse(CopyGraph.copyGraph(source, target, false));
+
+        source.close();
+        target.close();
+    }
+
+    private static void testCopy(Mode mode) throws Exception{
+        Graph source = createGraph();
+        Graph target = TinkerGraph.open();
+
+        assertTrue(CopyGraph.copyGraph(source, target, false, mode));
+
+        assertEquals(2000L, (long) target.traversal().V().count().next());
+        assertEquals(1000L, (long) target.traversal().E().count().next());
+        assertEquals(1000L, (long) target.traversal().V().hasLabel("Person").out("uses").hasLabel("IPAddress").count().next());
+
+        source.close();
+        target.close();
+    }
+
+    private static Graph createGraph(){
+        Graph graph = TinkerGraph.open();
+        for(int i = 0; i < 1000; i++) {
+            Vertex p = graph.addVertex(T.label, "Person", "name", "Person " + i);
+            Vertex ip = graph.addVertex(T.label, "IPAddress", "identifier", "10.0.0." + i);
+            p.addEdge("uses", ip, "count", i);
+        }
+
+        return graph;
+    }
+}
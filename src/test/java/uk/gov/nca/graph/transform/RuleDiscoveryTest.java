@@ -0,0 +1,66 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.rules.TransformRule;
+
+public class RuleDiscoveryTest {
+
+    @Test
+    public void testClasses() {
+        List<Class<? extends TransformRule>> rules = RuleDiscovery.discover(Arrays.asList(
+            EmptyRule.class.getName(), String.class.getName(), TransformRule.class.getName()));
+
+        assertEquals(Collections.singletonList(EmptyRule.class), rules);
+    }
+
+    @Test
+    public void testPackages() {
+        List<Class<? extends TransformRule>> rules = RuleDiscovery.discover(Collections.singletonList("uk.gov.nca.graph.transform"));
+        assertTrue(rules.contains(EmptyRule.class));
+        assertTrue(rules.stream().noneMatch(c -> c.equals(TransformRule.class)));
+        assertEquals(rules, RuleDiscovery.discover(Collections.singletonList("uk.gov.nca.graph.transform")));
+    }
+
+    public static class EmptyRule implements TransformRule {
+
+        @Override
+        public void transform(Graph graph, Consumer<Map<String, Object>> sink) {
+            //Do nothing
+        }
+
+        @Override
+        public String getIndex() {
+            return "empty";
+        }
+
+        @Override
+        public String getType() {
+            return "empty";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.rules.TransformRule;
+
+public class TransformToElasticsearchTest {
+
+    @Test
+    public void testIncrementalRulesNeedIds() throws Exception{
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "name", "Alice");
+        graph.addVertex(T.label, "Person", "name", "Bob");
+
+        Path dir = Files.createTempDirectory("transformtest");
+        TransformToElasticsearchOptions options = new TransformToElasticsearchOptions()
+            .setRules(Arrays.asList(IdRule.class.getName(), NoIdRule.class.getName()));
+
+        //A full transformation runs both rules
+        TransformResult result = TransformToElasticsearch.transformGraphToFiles(graph, dir.resolve("full"), options);
+        assertTrue(result.getFailures().toString(), result.isSuccessful());
+        assertEquals(2, result.getCount("rule.IdRule"));
+        assertEquals(2, result.getCount("rule.NoIdRule"));
+
+        //An incremental transformation skips the rule without IDs, which would duplicate its output
+        result = TransformToElasticsearch.transformGraphToFiles(graph, dir.resolve("delta"), options.setDeltaStateFile(dir.resolve("delta.state")));
+        assertTrue(result.getFailures().toString(), result.isSuccessful());
+        assertEquals(2, result.getCount("rule.IdRule"));
+        assertEquals(0, result.getCount("rule.NoIdRule"));
+        assertEquals(1, result.getCount("rule.skipped"));
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+
+        graph.close();
+    }
+
+    public static class NoIdRule implements TransformRule {
+
+        @Override
+        public void transform(Graph graph, Consumer<Map<String, Object>> sink) {
+            graph.traversal().V().hasLabel("Person").values("name").forEachRemaining(n -> sink.accept(Collections.singletonMap("name", n)));
+        }
+
+        @Override
+        public String getIndex() {
+            return "people";
+        }
+
+        @Override
+        public String getType() {
+            return "person";
+        }
+    }
+
+    public static class IdRule extends NoIdRule {
+
+        @Override
+        public String getId(Map<String, Object> object) {
+            return (String) object.get("name");
+        }
+    }
+}
@@ -20,16 +20,23 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static uk.gov.nca.graph.utils.ElementUtils.getProperty;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 import org.junit.Test;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
 
 public class TransformToGremlinTest {
 
@@ -49,7 +56,10 @@ public class TransformToGremlinTest {
         vP3.addEdge("uses", vI3);
 
         Graph target = TinkerGraph.open();
-        TransformToGremlin.transformGraph(source, target, true);
+        TransformResult result = TransformToGremlin.transformGraph(source, target, true);
+        assertTrue(result.isSuccessful());
+        assertEquals(6, result.getCount("vertex"));
+        assertEquals(3, result.getCount("edge"));
 
         //People
         List<Vertex> peopleVertices = new ArrayList<>();
@@ -98,4 +108,156 @@ public class TransformToGremlinTest {
         source.close();
         target.close();
     }
+
+    @Test
+    public void testMultiThreaded() throws Exception{
+        Graph source = createHubGraph(1000);
+
+        Graph target = TinkerGraph.open();
+        TransformResult result = TransformToGremlin.transformGraph(source, target,
+            new TransformToGremlinOptions().setThreads(4).setPreserveOriginalId(true));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(1001L, (long) target.traversal().V().count().next());
+        assertEquals(1000L, (long) target.traversal().E().count().next());
+        assertEquals(1000L, (long) target.traversal().V().has("name", "hub").inE("links").count().next());
+        assertEquals(1000L, (long) target.traversal().V().hasLabel("Spoke").out("links").has("name", "hub").count().next());
+
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void testBatched() throws Exception{
+        Graph source = createHubGraph(1000);
+
+        Graph target = TinkerGraph.open();
+        TransformResult result = TransformToGremlin.transformGraph(source, target.traversal(),
+            new TransformToGremlinOptions().setThreads(4).setWriteBatchSize(64).setPreserveOriginalId(true));
+
+        assertTrue(result.getFailures().toString(), result.isSuccessful());
+        assertEquals(1001, result.getCount("vertex"));
+        assertEquals(1000, result.getCount("edge"));
+        assertEquals(1001L, (long) target.traversal().V().count().next());
+        assertEquals(1000L, (long) target.traversal().V().has("name", "hub").inE("links").count().next());
+        assertEquals(999L * 1000 / 2, (long) target.traversal().E().values("weight").sum().next().longValue());
+        assertEquals(1000L, (long) target.traversal().V().hasLabel("Spoke").has("originalId").out("links").has("name", "hub").count().next());
+
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void testScanEdges() throws Exception{
+        Graph source = createHubGraph(100);
+        Vertex hub = source.traversal().V().hasLabel("Hub").next();
+        source.traversal().V().hasLabel("Spoke").forEachRemaining(v -> hub.addEdge("contains", v));
+
+        Graph target = TinkerGraph.open();
+        TransformResult result = TransformToGremlin.transformGraph(source, target, new TransformToGremlinOptions()
+            .setThreads(2)
+            .setPartitions(4)
+            .setGroupEdgesByOutVertex(false)
+            .setFilter(new ElementFilter().setEdgeLabels(Collections.singleton("links"))));
+
+        assertTrue(result.getFailures().toString(), result.isSuccessful());
+        assertEquals(101, result.getCount("vertex"));
+        assertEquals(100, result.getCount("edge"));
+        assertEquals(100L, (long) target.traversal().E().hasLabel("links").count().next());
+        assertEquals(0L, (long) target.traversal().E().hasLabel("contains").count().next());
+
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void testResume() throws Exception{
+        Graph source = createHubGraph(100);
+
+        Path dir = Files.createTempDirectory("checkpointtest");
+        Path checkpoint = dir.resolve("transform.checkpoint");
+
+        TransformToGremlinOptions options = new TransformToGremlinOptions()
+            .setThreads(2)
+            .setPartitions(4)
+            .setCheckpointFile(checkpoint);
+
+        Graph target = TinkerGraph.open();
+        TransformResult result = TransformToGremlin.transformGraph(source, target, options);
+        assertTrue(result.isSuccessful());
+        assertEquals(8, Files.readAllLines(checkpoint, StandardCharsets.UTF_8).size());
+
+        //Pretend that the transformation stopped after the first vertex partition had been recorded
+        Files.write(checkpoint, Collections.singletonList("vertex/hash-0-of-4"), StandardCharsets.UTF_8);
+
+        result = TransformToGremlin.transformGraph(source, target, options.setResume(true));
+        assertTrue(result.isSuccessful());
+        assertEquals(0, result.getCount("vertex"));
+        assertEquals(0, result.getCount("edge"));
+        assertEquals(100, result.getCount("edge.resumed"));
+
+        assertEquals(101L, (long) target.traversal().V().count().next());
+        assertEquals(100L, (long) target.traversal().E().count().next());
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void testFilter() throws Exception{
+        Graph source = TinkerGraph.open();
+        Vertex vP1 = source.addVertex(T.label, "Person", "name", "James", "email", "james@example.com", "notes", "Secret");
+        Vertex vP2 = source.addVertex(T.label, "Person", "name", "Simon", "email", "simon@example.com");
+        Vertex vI1 = source.addVertex(T.label, "IPAddress", "identifier", "127.0.0.1");
+        Vertex vD1 = source.addVertex(T.label, "Document", "title", "Report");
+
+        vP1.addEdge("uses", vI1);
+        vP2.addEdge("uses", vI1);
+        vP1.addEdge("wrote", vD1, "since", 2000);
+        vP1.addEdge("knows", vP2, "since", 2010);
+        vP2.addEdge("knows", vP1, "since", 2015);
+
+        ElementFilter filter = new ElementFilter()
+            .setExcludedVertexLabels(Collections.singleton("Document"))
+            .setExcludedEdgeLabels(Collections.singleton("uses"))
+            .setExcludedPropertyKeys(Collections.singleton("notes"))
+            .addEdgeCondition("since", P.lt(2012));
+
+        for (boolean groupEdges : new boolean[]{true, false}) {
+            Graph target = TinkerGraph.open();
+            TransformResult result = TransformToGremlin.transformGraph(source, target, new TransformToGremlinOptions()
+                .setFilter(filter)
+                .setGroupEdgesByOutVertex(groupEdges));
+            assertTrue(result.isSuccessful());
+
+            assertEquals(3, result.getCount("vertex"));
+            assertEquals(0, (long) target.traversal().V().hasLabel("Document").count().next());
+            assertEquals(0, (long) target.traversal().V().has("notes").count().next());
+            assertEquals("james@example.com", target.traversal().V().has("name", "James").values("email").next());
+
+            //Only the knows edge from 2010 is included, and the edge to the Document is skipped
+            assertEquals(1, result.getCount("edge"));
+            assertEquals(1, result.getCount("edge.skipped"));
+            assertEquals(2010, target.traversal().E().hasLabel("knows").values("since").next());
+
+            target.close();
+        }
+
+        source.close();
+    }
+
+    private static Graph createHubGraph(int spokes){
+        Graph graph = TinkerGraph.open();
+        Vertex hub = graph.addVertex(T.label, "Hub", "name", "hub");
+        for(int i = 0; i < spokes; i++) {
+            Vertex v = graph.addVertex(T.label, "Spoke", "index", i);
+            v.addEdge("links", hub, "weight", i);
+        }
+
+        return graph;
+    }
 }
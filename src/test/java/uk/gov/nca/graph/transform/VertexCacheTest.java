@@ -0,0 +1,91 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+
+public class VertexCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.id, 1L);
+        Vertex v2 = graph.addVertex(T.id, 2L);
+        Vertex v3 = graph.addVertex(T.id, 3L);
+
+        VertexCache cache = new VertexCache(graph, 2);
+        assertEquals(v1, cache.get(1L));    //Miss
+        assertEquals(v2, cache.get(2L));    //Miss
+        assertEquals(v1, cache.get(1L));    //Hit, so 2 is now the least recently used
+        assertEquals(v3, cache.get(3L));    //Miss, evicting 2
+        assertEquals(v1, cache.get(1L));    //Hit
+        assertEquals(v2, cache.get(2L));    //Miss, evicting 3
+        assertEquals(v3, cache.get(3L));    //Miss, evicting 1
+
+        //2 hits out of 7 lookups
+        assertEquals(100.0 * 2 / 7, cache.getHitRate(), 0.0001);
+
+        graph.close();
+    }
+
+    @Test
+    public void testDisabled() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.id, 1L);
+
+        for (int capacity : new int[]{0, -1}) {
+            VertexCache cache = new VertexCache(graph, capacity);
+            assertEquals(v1, cache.get(1L));
+            assertEquals(v1, cache.get(1L));
+            assertEquals(0.0, cache.getHitRate(), 0.0);
+        }
+
+        graph.close();
+    }
+
+    @Test
+    public void testMissingVertex() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.id, 1L);
+
+        VertexCache cache = new VertexCache(graph, 10);
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+
+        //Nonexistent vertices are misses every time, and aren't cached
+        assertNull(cache.get(2L));
+        assertNull(cache.get(2L));
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+
+        assertEquals(v1, cache.get(1L));
+        assertEquals(v1, cache.get(1L));
+        assertEquals(25.0, cache.getHitRate(), 0.0);
+
+        //Clearing the cache means the vertex has to be looked up again
+        cache.clear();
+        assertEquals(v1, cache.get(1L));
+        assertEquals(20.0, cache.getHitRate(), 0.0);
+
+        graph.close();
+    }
+}
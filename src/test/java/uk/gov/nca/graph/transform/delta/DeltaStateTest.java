@@ -0,0 +1,130 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.shaded.kryo.Kryo;
+import org.junit.Test;
+
+public class DeltaStateTest {
+
+    @Test
+    public void testContentHash() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.label, "Person", "name", "James");
+        Vertex v2 = graph.addVertex(T.label, "Email", "identifier", "james@example.com");
+
+        Kryo kryo = graph.io(IoCore.gryo()).mapper().create().createMapper();
+        Path dir = Files.createTempDirectory("deltatest");
+        Path file = dir.resolve("delta.state");
+
+        DeltaState state = DeltaState.load(file, null, kryo);
+        assertFalse(state.hasPrevious());
+        assertTrue(state.isChanged(v1));
+        assertTrue(state.isChanged(v2));
+        state.save(file, kryo);
+
+        v1.property("name", "Jim");
+
+        state = DeltaState.load(file, null, kryo);
+        assertTrue(state.hasPrevious());
+        assertTrue(state.isChanged(v1));
+        assertFalse(state.isChanged(v2));
+        assertEquals(Collections.singleton("Person"), state.getChangedLabels());
+
+        Files.delete(file);
+        Files.delete(dir);
+        graph.close();
+    }
+
+    @Test
+    public void testCarryForward() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.label, "Person", "name", "James");
+        Vertex v2 = graph.addVertex(T.label, "Email", "identifier", "james@example.com");
+
+        Kryo kryo = graph.io(IoCore.gryo()).mapper().create().createMapper();
+        Path dir = Files.createTempDirectory("deltatest");
+        Path file = dir.resolve("delta.state");
+
+        DeltaState state = DeltaState.load(file, null, kryo);
+        state.isChanged(v1);
+        state.isChanged(v2);
+        state.save(file, kryo);
+
+        //A resumed run which skips v2, because it was transformed before the run was interrupted
+        state = DeltaState.load(file, null, kryo);
+        assertFalse(state.isChanged(v1));
+        state.carryForward(v2.id());
+        state.save(file, kryo);
+
+        state = DeltaState.load(file, null, kryo);
+        assertFalse(state.isChanged(v1));
+        assertFalse(state.isChanged(v2));
+        assertTrue(state.getChangedLabels().isEmpty());
+
+        Files.delete(file);
+        Files.delete(dir);
+        graph.close();
+    }
+
+    @Test
+    public void testTimestamp() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.label, "Person", "name", "James", "modified", 1L);
+        Vertex v2 = graph.addVertex(T.label, "Person", "name", "Simon");
+
+        Kryo kryo = graph.io(IoCore.gryo()).mapper().create().createMapper();
+        Path dir = Files.createTempDirectory("deltatest");
+        Path file = dir.resolve("delta.state");
+
+        DeltaState.load(file, "modified", kryo).save(file, kryo);
+
+        DeltaState state = DeltaState.load(file, "modified", kryo);
+        assertFalse(state.isChanged(v1));
+        assertTrue(state.isChanged(v2));
+
+        v1.property("modified", System.currentTimeMillis());
+        assertTrue(state.isChanged(v1));
+
+        Files.delete(file);
+        Files.delete(dir);
+        graph.close();
+    }
+
+    @Test
+    public void testHashIgnoresPropertyOrder() {
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.label, "Person", "name", "James", "email", "james@example.com");
+        Vertex v2 = graph.addVertex(T.label, "Person", "email", "james@example.com", "name", "James");
+        Vertex v3 = graph.addVertex(T.label, "Person", "email", "james@example.co", "name", "mJames");
+
+        assertEquals(DeltaState.hash(v1), DeltaState.hash(v2));
+        assertFalse(DeltaState.hash(v1) == DeltaState.hash(v3));
+    }
+}
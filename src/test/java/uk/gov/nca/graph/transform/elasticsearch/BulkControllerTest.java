@@ -0,0 +1,109 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+
+public class BulkControllerTest {
+
+    private static TransformToElasticsearchOptions options() {
+        return new TransformToElasticsearchOptions()
+            .setBulkMinBytes(1000)
+            .setBulkMaxBytes(21000)
+            .setBulkMinActions(10)
+            .setBulkMaxActions(210)
+            .setBulkTargetLatency(1000)
+            .setBulkRetries(3)
+            .setBulkBackoff(100);
+    }
+
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() {
+        BulkController controller = new BulkController(options());
+        assertEquals(21000, controller.getBytesLimit());
+        assertEquals(210, controller.getActionsLimit());
+
+        //Fast responses can't increase the limits beyond the maximum
+        controller.onResponse(10, 0);
+        assertEquals(21000, controller.getBytesLimit());
+        assertEquals(210, controller.getActionsLimit());
+
+        //Slow responses and rejections halve the limits
+        controller.onResponse(2000, 0);
+        assertEquals(10500, controller.getBytesLimit());
+        assertEquals(105, controller.getActionsLimit());
+
+        controller.onResponse(10, 3);
+        assertEquals(5250, controller.getBytesLimit());
+        assertEquals(52, controller.getActionsLimit());
+
+        //But not below the minimum
+        for (int i = 0; i < 10; i++)
+            controller.onRejected();
+        assertEquals(1000, controller.getBytesLimit());
+        assertEquals(10, controller.getActionsLimit());
+
+        //Fast responses increase the limits by a twentieth of the range each time
+        controller.onResponse(10, 0);
+        controller.onResponse(10, 0);
+        assertEquals(3000, controller.getBytesLimit());
+        assertEquals(30, controller.getActionsLimit());
+    }
+
+    @Test
+    public void testIsFull() {
+        BulkController controller = new BulkController(options());
+        for (int i = 0; i < 10; i++)
+            controller.onRejected();
+
+        BulkRequest br = new BulkRequest();
+        for (int i = 0; i < 9; i++)
+            br.add(new IndexRequest("index", "type", String.valueOf(i)).source(Collections.singletonMap("n", i)));
+        assertFalse(controller.isFull(br));
+
+        br.add(new IndexRequest("index", "type", "9").source(Collections.singletonMap("n", 9)));
+        assertTrue(controller.isFull(br));
+    }
+
+    @Test
+    public void testRetries() {
+        BulkController controller = new BulkController(options());
+
+        assertTrue(controller.shouldRetry(1));
+        assertTrue(controller.shouldRetry(3));
+        assertFalse(controller.shouldRetry(4));
+
+        for (int i = 0; i < 100; i++) {
+            long first = controller.getBackoffMillis(1);
+            assertTrue(first >= 50 && first <= 100);
+
+            long third = controller.getBackoffMillis(3);
+            assertTrue(third >= 200 && third <= 400);
+
+            long capped = controller.getBackoffMillis(30);
+            assertTrue(capped >= 30000 && capped <= 60000);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+
+public class BulkFileSinkTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception{
+        Path dir = Files.createTempDirectory("bulkfiletest");
+        TransformResult result = new TransformResult();
+        BulkController controller = new BulkController(new TransformToElasticsearchOptions());
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (BulkFileSink sink = new BulkFileSink(dir, 100, controller, result)) {
+            for (int i = 0; i < 3; i++) {
+                BulkRequest br = new BulkRequest();
+                for (IndexMode mode : IndexMode.values())
+                    br.add(mode.request("people", "person", mode.name() + i, Collections.singletonMap("name", "Person " + i)));
+                br.add(IndexMode.INDEX.request("people", "person", null, Collections.singletonMap("name", "Anonymous")));
+
+                futures.add(sink.submit(br));
+            }
+        }
+
+        assertTrue(result.isSuccessful());
+        futures.forEach(f -> assertTrue(f.isDone() && !f.isCompletedExceptionally()));
+
+        //Each request is bigger than the maximum file size, so should be in its own file
+        List<Path> files = BulkFileLoader.listFiles(dir);
+        assertEquals(3, files.size());
+
+        CollectingSink collector = new CollectingSink();
+        long count = 0;
+        for (Path file : files)
+            count += BulkFileLoader.read(file, collector, null);
+
+        assertEquals(12, count);
+        assertEquals(12, collector.requests.size());
+
+        DocWriteRequest<?> create = collector.requests.get(0);
+        assertEquals("people", create.index());
+        assertEquals("person", create.type());
+        assertEquals("CREATE0", create.id());
+        assertEquals(OpType.CREATE, create.opType());
+        assertEquals("{\"name\":\"Person 0\"}", XContentHelper.convertToJson(((IndexRequest) create).source(), false, ((IndexRequest) create).getContentType()));
+
+        DocWriteRequest<?> update = collector.requests.get(2);
+        assertTrue(update instanceof UpdateRequest);
+        assertEquals("UPDATE_IF_CHANGED0", update.id());
+        assertEquals(Collections.singletonMap("doc", Collections.singletonMap("name", "Person 0")), ((UpdateRequest) update).script().getParams());
+        assertEquals(Collections.singletonMap("name", "Person 0"), ((UpdateRequest) update).upsertRequest().sourceAsMap());
+
+        DocWriteRequest<?> anonymous = collector.requests.get(3);
+        assertEquals(null, anonymous.id());
+        assertEquals(OpType.INDEX, anonymous.opType());
+
+        for (Path file : files)
+            Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testEmpty() throws Exception{
+        Path dir = Files.createTempDirectory("bulkfiletest");
+        TransformResult result = new TransformResult();
+
+        try (BulkFileSink sink = new BulkFileSink(dir, 100, new BulkController(new TransformToElasticsearchOptions()), result)) {
+            assertTrue(sink.submit(new BulkRequest()).isDone());
+        }
+
+        assertTrue(BulkFileLoader.listFiles(dir).isEmpty());
+        assertFalse(Files.list(dir).findAny().isPresent());
+
+        Files.delete(dir);
+    }
+
+    private static class CollectingSink implements BulkSink {
+
+        private final List<DocWriteRequest<?>> requests = new ArrayList<>();
+
+        @Override
+        public boolean isFull(BulkRequest bulkRequest) {
+            return bulkRequest.numberOfActions() >= 2;
+        }
+
+        @Override
+        public CompletableFuture<Void> submit(BulkRequest bulkRequest) {
+            bulkRequest.requests().forEach(requests::add);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void flush() {
+            //Do nothing
+        }
+
+        @Override
+        public void close() {
+            //Do nothing
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+
+public class BulkPipelineTest {
+
+    private static final TransformToElasticsearchOptions OPTIONS = new TransformToElasticsearchOptions()
+        .setBulkRetries(2)
+        .setBulkBackoff(1)
+        .setBulkTargetLatency(60000);
+
+    @Test(timeout = 10000)
+    public void testRejectedItemsRetried() throws Exception{
+        ScriptedSender sender = new ScriptedSender();
+        sender.then(rejectItems(1));
+
+        TransformResult result = new TransformResult();
+        BulkController controller = new BulkController(OPTIONS);
+        long bytesLimit = controller.getBytesLimit();
+
+        try (BulkPipeline pipeline = new BulkPipeline(sender, 2, controller, result)) {
+            pipeline.submit(request(3)).get(5, TimeUnit.SECONDS);
+
+            //The future completes just before the permit is released
+            pipeline.flush();
+            assertEquals(0, pipeline.getInFlight());
+        }
+
+        //Only the rejected item is sent again
+        assertEquals(2, sender.received.size());
+        assertEquals(3, sender.received.get(0).numberOfActions());
+        assertEquals(1, sender.received.get(1).numberOfActions());
+        assertEquals("1", sender.received.get(1).requests().get(0).id());
+
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getCount("bulk.rejectedItems"));
+        assertEquals(1, result.getCount("bulk.retriedItems"));
+        assertEquals(0, result.getCount("bulk.failedItems"));
+        assertTrue(controller.getBytesLimit() < bytesLimit);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedRequestsRetried() throws Exception{
+        ScriptedSender sender = new ScriptedSender();
+        sender.then((br, listener) -> listener.onFailure(new ElasticsearchStatusException("rejected", RestStatus.TOO_MANY_REQUESTS)));
+        sender.then((br, listener) -> listener.onFailure(new IOException("Connection reset")));
+
+        TransformResult result = new TransformResult();
+        try (BulkPipeline pipeline = new BulkPipeline(sender, 2, new BulkController(OPTIONS), result)) {
+            pipeline.submit(request(3)).get(5, TimeUnit.SECONDS);
+
+            //The future completes just before the permit is released
+            pipeline.flush();
+            assertEquals(0, pipeline.getInFlight());
+        }
+
+        //The whole request is sent again each time
+        assertEquals(3, sender.received.size());
+        sender.received.forEach(br -> assertEquals(3, br.numberOfActions()));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(6, result.getCount("bulk.retriedItems"));
+        assertEquals(0, result.getCount("bulk.failedItems"));
+    }
+
+    @Test(timeout = 10000)
+    public void testRetriesExhausted() throws Exception{
+        ScriptedSender sender = new ScriptedSender();
+        for (int i = 0; i < 3; i++)
+            sender.then(rejectItems(0));
+
+        TransformResult result = new TransformResult();
+        try (BulkPipeline pipeline = new BulkPipeline(sender, 2, new BulkController(OPTIONS), result)) {
+            CompletableFuture<Void> future = pipeline.submit(request(2));
+            assertFailed(future);
+
+            pipeline.flush();
+            assertEquals(0, pipeline.getInFlight());
+        }
+
+        //The first attempt and two retries
+        assertEquals(3, sender.received.size());
+        assertFalse(result.isSuccessful());
+        assertEquals(3, result.getCount("bulk.rejectedItems"));
+        assertEquals(2, result.getCount("bulk.retriedItems"));
+        assertEquals(1, result.getCount("bulk.failedItems"));
+    }
+
+    @Test(timeout = 10000)
+    public void testPermitsReleased() throws Exception{
+        ScriptedSender sender = new ScriptedSender();
+        for (int i = 0; i < 5; i++)
+            sender.then((br, listener) -> listener.onFailure(new ElasticsearchStatusException("bad request", RestStatus.BAD_REQUEST)));
+        sender.then((br, listener) -> { throw new IllegalStateException("Client closed"); });
+
+        TransformResult result = new TransformResult();
+        try (BulkPipeline pipeline = new BulkPipeline(sender, 2, new BulkController(OPTIONS), result)) {
+            //More failed requests than there are permits, so this would block if any weren't released
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+                futures.add(pipeline.submit(request(1)));
+
+            for (CompletableFuture<Void> future : futures)
+                assertFailed(future);
+
+            try {
+                pipeline.submit(request(1));
+                fail("Expected exception thrown by the client");
+            } catch (IllegalStateException ise) {
+                //Expected
+            }
+
+            pipeline.flush();
+            assertEquals(0, pipeline.getInFlight());
+        }
+
+        //Requests which fail outright aren't retried
+        assertEquals(6, sender.received.size());
+        assertEquals(5, result.getCount("bulk.failedItems"));
+        assertEquals(0, result.getCount("bulk.retriedItems"));
+    }
+
+    private static void assertFailed(CompletableFuture<Void> future) throws Exception{
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected future to complete exceptionally");
+        } catch (ExecutionException ee) {
+            //Expected
+        }
+    }
+
+    private static BulkRequest request(int size) {
+        BulkRequest br = new BulkRequest();
+        for (int i = 0; i < size; i++)
+            br.add(new IndexRequest("index", "type", String.valueOf(i)).source(Collections.singletonMap("n", i)));
+
+        return br;
+    }
+
+    /**
+     * Responds to a request with the given items rejected, and the rest successful
+     */
+    private static BiConsumer<BulkRequest, ActionListener<BulkResponse>> rejectItems(Integer... rejected) {
+        return (br, listener) -> {
+            BulkItemResponse[] items = new BulkItemResponse[br.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                DocWriteRequest<?> request = br.requests().get(i);
+                if (Arrays.asList(rejected).contains(i)) {
+                    items[i] = new BulkItemResponse(i, OpType.INDEX, new BulkItemResponse.Failure(request.index(), request.type(), request.id(),
+                        new EsRejectedExecutionException("rejected"), RestStatus.TOO_MANY_REQUESTS));
+                } else {
+                    items[i] = success(i, request);
+                }
+            }
+
+            listener.onResponse(new BulkResponse(items, 1));
+        };
+    }
+
+    private static BulkItemResponse success(int i, DocWriteRequest<?> request) {
+        return new BulkItemResponse(i, OpType.INDEX, new IndexResponse(new ShardId(request.index(), "_na_", 0), request.type(), request.id(), 1, 1, 1, true));
+    }
+
+    /**
+     * Responds to each request with the next scripted response, or with success once the script
+     * has run out
+     */
+    private static class ScriptedSender implements BulkPipeline.Sender {
+        private final Queue<BiConsumer<BulkRequest, ActionListener<BulkResponse>>> script = new ConcurrentLinkedQueue<>();
+        private final List<BulkRequest> received = new CopyOnWriteArrayList<>();
+
+        void then(BiConsumer<BulkRequest, ActionListener<BulkResponse>> response) {
+            script.add(response);
+        }
+
+        @Override
+        public void bulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
+            received.add(bulkRequest);
+
+            BiConsumer<BulkRequest, ActionListener<BulkResponse>> response = script.poll();
+            if (response == null)
+                response = rejectItems();
+
+            response.accept(bulkRequest, listener);
+        }
+    }
+}
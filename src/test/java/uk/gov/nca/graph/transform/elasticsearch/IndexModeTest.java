@@ -0,0 +1,85 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.script.Script;
+import org.junit.Test;
+
+public class IndexModeTest {
+
+    private static final Map<String, Object> DOC = Collections.singletonMap("name", "James");
+
+    @Test
+    public void testWithoutId() {
+        for(IndexMode mode : IndexMode.values()) {
+            DocWriteRequest<?> request = mode.request("index", "type", null, DOC);
+            assertTrue(request instanceof IndexRequest);
+            assertNull(request.id());
+            assertEquals(OpType.INDEX, request.opType());
+        }
+    }
+
+    @Test
+    public void testWithId() {
+        DocWriteRequest<?> create = IndexMode.CREATE.request("index", "type", "1", DOC);
+        assertEquals("1", create.id());
+        assertEquals(OpType.CREATE, create.opType());
+
+        DocWriteRequest<?> index = IndexMode.INDEX.request("index", "type", "1", DOC);
+        assertEquals("1", index.id());
+        assertEquals(OpType.INDEX, index.opType());
+
+        DocWriteRequest<?> update = IndexMode.UPDATE_IF_CHANGED.request("index", "type", "1", DOC);
+        assertTrue(update instanceof UpdateRequest);
+        assertEquals("1", update.id());
+        assertEquals(DOC, ((UpdateRequest) update).upsertRequest().sourceAsMap());
+    }
+
+    @Test
+    public void testUpdateRemovesFields() {
+        //The document no longer has an email field, which must be removed rather than merged with the existing document
+        Map<String, Object> doc = Collections.singletonMap("name", "James");
+        byte[] source = "{\"name\":\"James\"}".getBytes(StandardCharsets.UTF_8);
+
+        for(DocWriteRequest<?> request : Arrays.asList(IndexMode.UPDATE_IF_CHANGED.request("index", "type", "1", doc),
+                IndexMode.UPDATE_IF_CHANGED.request("index", "type", "1", source))) {
+            UpdateRequest update = (UpdateRequest) request;
+            assertNull(update.doc());
+            assertFalse(update.docAsUpsert());
+
+            Script script = update.script();
+            assertNotNull(script);
+            assertTrue(script.getIdOrCode().contains("ctx._source = params.doc"));
+            assertEquals(doc, script.getParams().get("doc"));
+            assertEquals(doc, update.upsertRequest().sourceAsMap());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty.Cardinality;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+
+public class RawDocumentWriterTest {
+
+    @Test
+    public void testWrite() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.id, 1L, T.label, "Person", "name", "James", "age", 30);
+        Vertex v2 = graph.addVertex(T.id, 2L, T.label, "Person", "name", "Simon");
+        v2.property(Cardinality.list, "email", "simon@example.com");
+        v2.property(Cardinality.list, "email", "simon@example.org");
+
+        RawDocumentWriter writer = new RawDocumentWriter("Raw_");
+        assertEquals("raw_person", writer.getIndex("Person"));
+        assertSame(writer.getIndex("Person"), writer.getIndex("Person"));
+        assertEquals("raw_Person", writer.getType("Person"));
+
+        Map<String, Object> doc1 = parse(writer.write(v1));
+        assertEquals(3, doc1.size());
+        assertEquals(1, doc1.get("originalId"));
+        assertEquals("James", doc1.get("name"));
+        assertEquals(30, doc1.get("age"));
+
+        //Documents after the first are written by the same builder, so check they are still valid
+        Map<String, Object> doc2 = parse(writer.write(v2));
+        assertEquals(3, doc2.size());
+        assertEquals(2, doc2.get("originalId"));
+        assertEquals("Simon", doc2.get("name"));
+        assertEquals("simon@example.org", doc2.get("email"));
+
+        graph.close();
+    }
+
+    @Test
+    public void testToMap() throws Exception{
+        Graph graph = TinkerGraph.open();
+        Vertex v1 = graph.addVertex(T.id, 1L, T.label, "Person", "name", "James", "age", 30);
+        Vertex v2 = graph.addVertex(T.id, 2L, T.label, "Person");
+
+        RawDocumentWriter writer = new RawDocumentWriter("raw_");
+
+        Map<String, Object> doc1 = writer.toMap(v1);
+        assertEquals(3, doc1.size());
+        assertEquals(1L, doc1.get("originalId"));
+        assertEquals("James", doc1.get("name"));
+        assertEquals(30, doc1.get("age"));
+
+        //The same document as would have been serialised
+        assertEquals(parse(writer.write(v1)).keySet(), doc1.keySet());
+
+        assertNull(writer.toMap(v2));
+
+        graph.close();
+    }
+
+    private static Map<String, Object> parse(byte[] doc) {
+        return XContentHelper.convertToMap(new BytesArray(doc), false, XContentType.JSON).v2();
+    }
+}
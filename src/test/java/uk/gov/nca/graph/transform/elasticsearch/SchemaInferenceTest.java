@@ -0,0 +1,95 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.filter.ElementFilter;
+
+public class SchemaInferenceTest {
+
+    @Test
+    public void testWiden() {
+        assertEquals("long", SchemaInference.widen("integer", "long"));
+        assertEquals("double", SchemaInference.widen("long", "float"));
+        assertEquals("text", SchemaInference.widen("long", "boolean"));
+        assertEquals("date", SchemaInference.widen("date", "date"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInferRawMapping() {
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "name", "James", "age", 30, "height", 1.8);
+        graph.addVertex(T.label, "Person", "name", "Simon", "age", 40L, "height", 2);
+        graph.addVertex(T.label, "Email", "identifier", "james@example.com");
+
+        Map<String, Object> mapping = SchemaInference.inferRawMapping(graph, "Person", 10);
+        Map<String, Map<String, Object>> properties = (Map<String, Map<String, Object>>) mapping.get("properties");
+
+        assertEquals(4, properties.size());
+        assertEquals("keyword", properties.get("originalId").get("type"));
+        assertEquals("text", properties.get("name").get("type"));
+        assertNotNull(properties.get("name").get("fields"));
+        assertEquals("long", properties.get("age").get("type"));
+        assertEquals("double", properties.get("height").get("type"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIntegersMappedAsLong() {
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "age", 30, "rank", (short) 2, "flag", (byte) 1);
+
+        Map<String, Object> mapping = SchemaInference.inferRawMapping(graph, "Person", 10);
+        Map<String, Map<String, Object>> properties = (Map<String, Map<String, Object>>) mapping.get("properties");
+
+        assertEquals("long", properties.get("age").get("type"));
+        assertEquals("long", properties.get("rank").get("type"));
+        assertEquals("long", properties.get("flag").get("type"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInferRawMappingWithFilter() {
+        Graph graph = TinkerGraph.open();
+        graph.addVertex(T.label, "Person", "name", "James", "age", 30, "notes", "Secret");
+        graph.addVertex(T.label, "Person", "name", "Simon", "age", 40, "height", 1.8, "notes", "Secret");
+
+        ElementFilter filter = new ElementFilter()
+            .setExcludedPropertyKeys(Collections.singleton("notes"))
+            .addVertexCondition("age", P.lt(35));
+
+        Map<String, Object> mapping = SchemaInference.inferRawMapping(graph, "Person", 10, filter);
+        Map<String, Map<String, Object>> properties = (Map<String, Map<String, Object>>) mapping.get("properties");
+
+        //Simon is excluded by the filter, so height isn't sampled
+        assertEquals(3, properties.size());
+        assertFalse(properties.containsKey("notes"));
+        assertFalse(properties.containsKey("height"));
+        assertEquals("long", properties.get("age").get("type"));
+    }
+}
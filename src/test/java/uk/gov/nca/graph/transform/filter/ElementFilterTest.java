@@ -0,0 +1,143 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.TraversalStrategy;
+import org.apache.tinkerpop.gremlin.process.traversal.step.HasContainerHolder;
+import org.apache.tinkerpop.gremlin.process.traversal.step.map.GraphStep;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.javatuples.Pair;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.partition.HashVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+
+public class ElementFilterTest {
+
+    @Test
+    public void testEmpty() {
+        Graph graph = createGraph();
+        ElementFilter filter = new ElementFilter();
+
+        assertFalse(filter.filtersVertices());
+        assertEquals(4, IteratorUtils.count(filter.vertices(graph.traversal().V())));
+        assertEquals(3, IteratorUtils.count(filter.outEdges(graph.traversal().V())));
+
+        Vertex james = graph.traversal().V().has("name", "James").next();
+        assertEquals(3, IteratorUtils.count(filter.properties(james)));
+    }
+
+    @Test
+    public void testVertices() {
+        Graph graph = createGraph();
+        ElementFilter filter = new ElementFilter()
+            .setVertexLabels(Arrays.asList("Person", "Email"))
+            .setExcludedVertexLabels(Collections.singleton("Email"))
+            .addVertexCondition("age", P.gt(30));
+
+        assertTrue(filter.filtersVertices());
+        assertEquals(Collections.singletonList("James"), filter.vertices(graph.traversal().V()).values("name").toList());
+    }
+
+    @Test
+    public void testEdges() {
+        Graph graph = createGraph();
+        Vertex james = graph.traversal().V().has("name", "James").next();
+
+        ElementFilter filter = new ElementFilter().setEdgeLabels(Collections.singleton("has"));
+        assertEquals(2, IteratorUtils.count(filter.outEdges(graph.traversal().V())));
+        assertEquals(1, IteratorUtils.count(filter.outEdges(james)));
+
+        filter = new ElementFilter().setExcludedEdgeLabels(Collections.singleton("has"));
+        assertEquals(1, IteratorUtils.count(filter.outEdges(graph.traversal().V())));
+        assertEquals(1, IteratorUtils.count(filter.outEdges(james)));
+
+        filter = new ElementFilter().addEdgeCondition("primary", P.eq(true));
+        assertEquals(1, IteratorUtils.count(filter.outEdges(graph.traversal().V())));
+        assertEquals(1, IteratorUtils.count(filter.outEdges(james)));
+    }
+
+    @Test
+    public void testProperties() {
+        Graph graph = createGraph();
+        Vertex james = graph.traversal().V().has("name", "James").next();
+
+        ElementFilter filter = new ElementFilter().setPropertyKeys(Arrays.asList("name", "age"));
+        assertEquals(new HashSet<>(Arrays.asList("name", "age")), keys(filter, james));
+
+        filter.setExcludedPropertyKeys(Collections.singleton("age"));
+        assertEquals(Collections.singleton("name"), keys(filter, james));
+    }
+
+    @Test
+    public void testPartitionedVerticesFoldIntoGraphStep() {
+        Graph graph = createGraph();
+        ElementFilter filter = new ElementFilter()
+            .setVertexLabels(Collections.singleton("Person"))
+            .addVertexCondition("age", P.gt(30));
+
+        Set<Object> names = new HashSet<>();
+        for (VertexPartition partition : new HashVertexPartitioner().partition(graph, 4)) {
+            //The filter's conditions should be folded into the graph step, ahead of the partition's lambda
+            List<Pair<TraversalStrategy, Traversal.Admin<?, ?>>> applied = filter.vertices(graph.traversal(), partition).explain().getStrategyTraversals();
+            Step<?, ?> start = applied.get(applied.size() - 1).getValue1().getStartStep();
+
+            assertTrue(start instanceof GraphStep);
+            assertTrue(start instanceof HasContainerHolder);
+            assertEquals(2, ((HasContainerHolder) start).getHasContainers().size());
+
+            filter.vertices(graph.traversal(), partition).values("name").forEachRemaining(names::add);
+        }
+
+        assertEquals(Collections.singleton("James"), names);
+    }
+
+    private static Set<String> keys(ElementFilter filter, Vertex v) {
+        Set<String> keys = new HashSet<>();
+        filter.properties(v).forEachRemaining(p -> keys.add(p.key()));
+        return keys;
+    }
+
+    private static Graph createGraph() {
+        Graph graph = TinkerGraph.open();
+        Vertex vP1 = graph.addVertex(T.label, "Person", "name", "James", "age", 35, "notes", "Secret");
+        Vertex vP2 = graph.addVertex(T.label, "Person", "name", "Simon", "age", 25);
+        Vertex vE1 = graph.addVertex(T.label, "Email", "identifier", "james@example.com", "age", 40);
+        Vertex vE2 = graph.addVertex(T.label, "Email", "identifier", "simon@example.com");
+
+        vP1.addEdge("has", vE1, "primary", true);
+        vP2.addEdge("has", vE2);
+        vP1.addEdge("knows", vP2);
+
+        return graph;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.idmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class LongIdMapTest {
+
+    @Test
+    public void testOnHeap() {
+        try(IdMap ids = LongIdMap.onHeap()) {
+            testIdMap(ids);
+        }
+    }
+
+    @Test
+    public void testMapped() throws Exception{
+        Path dir = Files.createTempDirectory("idmaptest");
+
+        try(IdMap ids = LongIdMap.mapped(dir)) {
+            testIdMap(ids);
+        }
+
+        assertEquals(0, dir.toFile().list().length);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testForEach() {
+        try(LongIdMap ids = LongIdMap.onHeap()) {
+            for(long i = -10; i < 1000; i++)
+                ids.put(i, i * 3);
+            ids.put("string", "value");
+
+            Map<Object, Object> entries = new HashMap<>();
+            ids.forEach(entries::put);
+
+            assertEquals(1011, entries.size());
+            for(long i = -10; i < 1000; i++)
+                assertEquals(i * 3, entries.get(i));
+            assertEquals("value", entries.get("string"));
+        }
+    }
+
+    @Test
+    public void testFreeze() {
+        try(LongIdMap ids = LongIdMap.onHeap()) {
+            ids.put(1L, 2L);
+            ids.put("string", "value");
+            ids.freeze();
+
+            assertEquals(2L, ids.get(1L));
+            assertEquals("value", ids.get("string"));
+            assertNull(ids.get(3L));
+            assertEquals(2, ids.size());
+
+            try {
+                ids.put(3L, 4L);
+                fail("Expected exception when putting into a frozen map");
+            } catch (IllegalStateException ise) {
+                //Expected
+            }
+        }
+    }
+
+    private static void testIdMap(IdMap ids){
+        //Enough IDs to force the table to be resized several times
+        for(long i = -10; i < 200000; i++)
+            ids.put(i, i * 3);
+
+        ids.put("string", "value");
+        ids.put(500000L, "value");
+
+        assertEquals(200012, ids.size());
+
+        for(long i = -10; i < 200000; i++)
+            assertEquals(i * 3, ids.get(i));
+
+        assertEquals("value", ids.get("string"));
+        assertEquals("value", ids.get(500000L));
+        assertNull(ids.get(300000L));
+        assertNull(ids.get("missing"));
+    }
+}
@@ -0,0 +1,313 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * A lightweight stand in for an Elasticsearch cluster, so that transformations to Elasticsearch
+ * can be load tested without one. It answers pings, the index APIs used by IndexBootstrap, and
+ * the bulk API, discarding documents but counting them.
+ *
+ * Every request body is read in full, and every request gets a complete response, so that
+ * pooled keep-alive connections remain usable by the client.
+ *
+ * Each bulk request can be delayed by a fixed latency, and a proportion of items, or of whole
+ * requests, can be rejected with HTTP 429 as an overloaded cluster would, to test the behaviour
+ * of batching and back pressure.
+ *
+ * The setters must be called before {@link #start()}, and return this object so that calls can
+ * be chained.
+ */
+public class ElasticsearchStub implements AutoCloseable {
+
+    private long latency = 0;
+    private double rejectionRate = 0.0;
+    private double requestRejectionRate = 0.0;
+    private int threads = 8;
+
+    private final Set<String> indices = ConcurrentHashMap.newKeySet();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong rejectedItems = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Time in milliseconds to wait before responding to each bulk request
+     */
+    public ElasticsearchStub setLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Proportion (between 0 and 1) of bulk items to reject
+     */
+    public ElasticsearchStub setRejectionRate(double rejectionRate) {
+        this.rejectionRate = rejectionRate;
+        return this;
+    }
+
+    /**
+     * Proportion (between 0 and 1) of whole bulk requests to reject
+     */
+    public ElasticsearchStub setRequestRejectionRate(double requestRejectionRate) {
+        this.requestRejectionRate = requestRejectionRate;
+        return this;
+    }
+
+    /**
+     * Number of threads handling requests, and so the number of requests handled concurrently
+     */
+    public ElasticsearchStub setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Start listening on a free port on the loopback interface
+     */
+    public ElasticsearchStub start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        return this;
+    }
+
+    /**
+     * Returns the port the stub is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of documents successfully written
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Returns the number of bulk requests received, including rejected requests
+     */
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    /**
+     * Returns the number of bulk items rejected
+     */
+    public long getRejectedItems() {
+        return rejectedItems.get();
+    }
+
+    /**
+     * Returns the number of whole bulk requests rejected
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Returns the indices which have been created, either explicitly or by writing documents
+     * to them
+     */
+    public Set<String> getIndices() {
+        return indices;
+    }
+
+    @Override
+    public void close() {
+        if (server != null)
+            server.stop(0);
+
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            //Read the whole body before responding, whether or not it is needed
+            byte[] body = readBody(exchange);
+
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+
+            if (path[0].isEmpty()) {
+                //Ping, or cluster information
+                respond(exchange, 200, json(b -> b.field("cluster_name", "stub").startObject("version").field("number", "6.4.3").endObject()));
+            } else if ("_bulk".equals(path[path.length - 1])) {
+                bulk(exchange, body);
+            } else if (path.length == 1 && "HEAD".equals(method)) {
+                respond(exchange, indices.contains(path[0]) ? 200 : 404, null);
+            } else if (path.length == 1 && "PUT".equals(method)) {
+                indices.add(path[0]);
+                respond(exchange, 200, json(b -> b.field("acknowledged", true).field("shards_acknowledged", true).field("index", path[0])));
+            } else if (path.length > 1 && "_settings".equals(path[1]) && "GET".equals(method)) {
+                respond(exchange, 200, json(b -> b.startObject(path[0]).startObject("settings").endObject().endObject()));
+            } else if ("_refresh".equals(path[path.length - 1]) || "_forcemerge".equals(path[path.length - 1])) {
+                respond(exchange, 200, json(b -> b.startObject("_shards").field("total", 1).field("successful", 1).field("failed", 0).endObject()));
+            } else {
+                //Settings and mapping updates
+                respond(exchange, 200, json(b -> b.field("acknowledged", true)));
+            }
+        } catch (Exception e) {
+            //If a response has already been started, then it can't be replaced
+            if (exchange.getResponseCode() == -1)
+                respond(exchange, 500, json(b -> b.startObject("error").field("type", "exception").field("reason", String.valueOf(e.getMessage())).endObject().field("status", 500)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void bulk(HttpExchange exchange, byte[] body) throws IOException, InterruptedException {
+        bulkRequests.incrementAndGet();
+
+        if (latency > 0)
+            TimeUnit.MILLISECONDS.sleep(latency);
+
+        if (ThreadLocalRandom.current().nextDouble() < requestRejectionRate) {
+            rejectedRequests.incrementAndGet();
+            respond(exchange, 429, json(b -> b.startObject("error").field("type", "es_rejected_execution_exception")
+                .field("reason", "rejected execution by stub").endObject().field("status", 429)));
+            return;
+        }
+
+        long start = System.nanoTime();
+        XContentBuilder response = XContentFactory.jsonBuilder().startObject();
+        response.startArray("items");
+
+        boolean errors = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+
+                Map<String, Object> action = XContentHelper.convertToMap(XContentType.JSON.xContent(), line, false);
+                String opType = action.keySet().iterator().next();
+
+                //Every action apart from delete is followed by a source line
+                if (!"delete".equals(opType))
+                    reader.readLine();
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> metadata = (Map<String, Object>) action.get(opType);
+                Object id = metadata.get("_id");
+
+                //Writing to an index which doesn't exist creates it
+                indices.add(String.valueOf(metadata.get("_index")));
+
+                response.startObject().startObject(opType)
+                    .field("_index", metadata.get("_index"))
+                    .field("_type", metadata.get("_type"))
+                    .field("_id", id == null ? UUID.randomUUID().toString() : id);
+
+                if (ThreadLocalRandom.current().nextDouble() < rejectionRate) {
+                    errors = true;
+                    rejectedItems.incrementAndGet();
+                    response.field("status", 429)
+                        .startObject("error").field("type", "es_rejected_execution_exception").field("reason", "rejected execution by stub").endObject();
+                } else {
+                    documents.incrementAndGet();
+                    response.field("_version", 1).field("result", "created")
+                        .startObject("_shards").field("total", 1).field("successful", 1).field("failed", 0).endObject()
+                        .field("_seq_no", 0).field("_primary_term", 1).field("status", 201);
+                }
+
+                response.endObject().endObject();
+            }
+        }
+
+        response.endArray();
+        response.field("took", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + latency);
+        response.field("errors", errors);
+        response.endObject();
+
+        respond(exchange, 200, Strings.toString(response));
+    }
+
+    private interface ResponseBody {
+        void build(XContentBuilder builder) throws IOException;
+    }
+
+    private static String json(ResponseBody body) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        body.build(builder);
+        return Strings.toString(builder.endObject());
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+        }
+
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
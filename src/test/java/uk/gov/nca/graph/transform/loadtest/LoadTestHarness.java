@@ -0,0 +1,208 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.loadtest;
+
+import static uk.gov.nca.graph.utils.cli.CommandLineUtils.parseCommandLine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.http.HttpHost;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.nca.graph.transform.TransformResult;
+import uk.gov.nca.graph.transform.TransformToElasticsearch;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+import uk.gov.nca.graph.transform.loadtest.SyntheticGraphGenerator.Degree;
+
+/**
+ * Runs {@link TransformToElasticsearch} end to end against an {@link ElasticsearchStub}, and
+ * reports the throughput in documents per second and the peak heap usage, so that the effect of
+ * concurrency and batching settings can be measured without a cluster.
+ *
+ * Can be run from the command line (on the test classpath), or from tests via
+ * {@link #run(Graph, ElasticsearchStub, TransformToElasticsearchOptions)}.
+ */
+public class LoadTestHarness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final long HEAP_SAMPLE_INTERVAL = 20;
+
+    private LoadTestHarness(){
+        //Private constructor for utility class
+    }
+
+    /**
+     * The outcome of a load test
+     */
+    public static class Report {
+        private final TransformResult result;
+        private final long documents;
+        private final long elapsedMillis;
+        private final long peakHeapBytes;
+        private final long bulkRequests;
+        private final long rejectedItems;
+        private final long rejectedRequests;
+
+        Report(TransformResult result, ElasticsearchStub stub, long elapsedMillis, long peakHeapBytes) {
+            this.result = result;
+            this.documents = stub.getDocuments();
+            this.elapsedMillis = elapsedMillis;
+            this.peakHeapBytes = peakHeapBytes;
+            this.bulkRequests = stub.getBulkRequests();
+            this.rejectedItems = stub.getRejectedItems();
+            this.rejectedRequests = stub.getRejectedRequests();
+        }
+
+        public TransformResult getResult() {
+            return result;
+        }
+
+        /**
+         * Returns the number of documents written to the stub
+         */
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Returns the number of documents written per second, end to end
+         */
+        public double getDocumentsPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : documents * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Returns the highest heap usage sampled whilst the transformation was running
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        public long getBulkRequests() {
+            return bulkRequests;
+        }
+
+        public long getRejectedItems() {
+            return rejectedItems;
+        }
+
+        public long getRejectedRequests() {
+            return rejectedRequests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents in %d ms (%.0f docs/sec), peak heap %.1f MB, %d bulk requests, %d items and %d requests rejected",
+                documents, elapsedMillis, getDocumentsPerSecond(), peakHeapBytes / 1048576.0, bulkRequests, rejectedItems, rejectedRequests);
+        }
+    }
+
+    /**
+     * Transform graph into the (already started) stub with the given options, and report on it
+     */
+    public static Report run(Graph graph, ElasticsearchStub stub, TransformToElasticsearchOptions options) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heap-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+            0, HEAP_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        TransformResult result;
+        try {
+            result = TransformToElasticsearch.transformGraph(graph,
+                RestClient.builder(new HttpHost("localhost", stub.getPort(), "http")), options);
+        } finally {
+            sampler.shutdownNow();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        return new Report(result, stub, elapsed, peakHeap.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+
+        options.addOption(new Option(null, "scale", true, "Scale factor of the synthetic graph, where 1 is " + SyntheticGraphGenerator.VERTICES_PER_SCALE + " vertices (default 1)"));
+        options.addOption(new Option(null, "properties", true, "Number of properties on each vertex (default 8)"));
+        options.addOption(new Option(null, "degree", true, "Mean out degree of each vertex (default 5)"));
+        options.addOption(new Option(null, "uniform", false, "Distribute degree uniformly, rather than by a power law"));
+        options.addOption(new Option(null, "latency", true, "Latency in milliseconds of each bulk request (default 0)"));
+        options.addOption(new Option(null, "rejectionRate", true, "Proportion of bulk items to reject with HTTP 429 (default 0)"));
+        options.addOption(new Option(null, "requestRejectionRate", true, "Proportion of whole bulk requests to reject with HTTP 429 (default 0)"));
+        options.addOption(new Option(null, "serverThreads", true, "Number of bulk requests the stub handles concurrently (default 8)"));
+        options.addOption(new Option("j", "threads", true, "Thread count for ingesting raw data (default 4)"));
+        options.addOption(new Option(null, "maxInFlight", true, "Maximum number of concurrent bulk requests (default 4)"));
+        options.addOption(new Option(null, "bulkMaxActions", true, "Maximum number of actions in a bulk request (default 10000)"));
+
+        CommandLine cmd = parseCommandLine(args, options, LoadTestHarness.class, "Load test the transformation to Elasticsearch against a local stub");
+        if(cmd == null)
+            return;
+
+        TransformToElasticsearchOptions defaults = new TransformToElasticsearchOptions();
+        TransformToElasticsearchOptions transformOptions = new TransformToElasticsearchOptions()
+            .setThreads(Integer.parseInt(cmd.getOptionValue('j', "4")))
+            .setMaxInFlight(Integer.parseInt(cmd.getOptionValue("maxInFlight", String.valueOf(defaults.getMaxInFlight()))))
+            .setBulkMaxActions(Integer.parseInt(cmd.getOptionValue("bulkMaxActions", String.valueOf(defaults.getBulkMaxActions()))))
+            .setRules(Collections.singletonList(LoadTestRule.class.getName()));
+
+        LOGGER.info("Generating synthetic graph");
+        Graph graph = new SyntheticGraphGenerator()
+            .setScale(Double.parseDouble(cmd.getOptionValue("scale", "1")))
+            .setProperties(Integer.parseInt(cmd.getOptionValue("properties", "8")))
+            .setMeanDegree(Integer.parseInt(cmd.getOptionValue("degree", "5")))
+            .setDegree(cmd.hasOption("uniform") ? Degree.UNIFORM : Degree.POWER_LAW)
+            .generate();
+
+        try (ElasticsearchStub stub = new ElasticsearchStub()
+            .setLatency(Long.parseLong(cmd.getOptionValue("latency", "0")))
+            .setRejectionRate(Double.parseDouble(cmd.getOptionValue("rejectionRate", "0")))
+            .setRequestRejectionRate(Double.parseDouble(cmd.getOptionValue("requestRejectionRate", "0")))
+            .setThreads(Integer.parseInt(cmd.getOptionValue("serverThreads", "8")))
+            .start()) {
+
+            Report report = run(graph, stub, transformOptions);
+            LOGGER.info("{}", report);
+
+            if(!report.getResult().isSuccessful())
+                LOGGER.error("Transformation did not complete successfully: {}", report.getResult().getFailures());
+        } finally {
+            graph.close();
+        }
+    }
+}
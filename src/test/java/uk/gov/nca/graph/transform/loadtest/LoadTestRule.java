@@ -0,0 +1,67 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.loadtest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+import uk.gov.nca.graph.transform.rules.PartitionedTransformRule;
+
+/**
+ * A rule used by load tests, which produces a document for every Person vertex containing its
+ * first property and its out degree, so that the rule phase is exercised as well as the raw phase
+ */
+public class LoadTestRule implements PartitionedTransformRule {
+
+    @Override
+    public Set<String> getInputLabels() {
+        return Collections.singleton("Person");
+    }
+
+    @Override
+    public void transform(Graph graph, VertexPartition partition, Consumer<Map<String, Object>> sink) {
+        partition.restrict(graph.traversal().V().hasLabel("Person")).forEachRemaining(v -> {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("id", v.id());
+            doc.put("property0", v.property("property0").orElse(null));
+            doc.put("outDegree", IteratorUtils.count(v.edges(Direction.OUT)));
+
+            sink.accept(doc);
+        });
+    }
+
+    @Override
+    public String getIndex() {
+        return "loadtest";
+    }
+
+    @Override
+    public String getType() {
+        return "person";
+    }
+
+    @Override
+    public String getId(Map<String, Object> object) {
+        return String.valueOf(object.get("id"));
+    }
+}
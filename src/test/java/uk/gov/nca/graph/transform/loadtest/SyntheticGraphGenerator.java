@@ -0,0 +1,215 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+
+/**
+ * Generates synthetic graphs for load testing and benchmarking. The size of the graph is set
+ * directly or by a scale factor, and the labels, number of properties on each vertex, and mean
+ * and distribution of vertex out degree are all configurable. Properties are a mix of strings,
+ * longs, doubles and booleans.
+ *
+ * Graphs are generated from a seed, so the same settings always produce the same graph. The
+ * setters return this object, so that calls can be chained.
+ */
+public class SyntheticGraphGenerator {
+
+    /**
+     * Number of vertices in a graph with a scale factor of 1
+     */
+    public static final int VERTICES_PER_SCALE = 10000;
+
+    /**
+     * How out degree is distributed between vertices
+     */
+    public enum Degree {
+        /**
+         * Every vertex has the mean degree, and edges are spread evenly across the graph
+         */
+        UNIFORM,
+
+        /**
+         * Degree follows a power law, with most vertices having few edges and a few having very
+         * many, and edges are concentrated on a small number of hub vertices
+         */
+        POWER_LAW
+    }
+
+    private int vertices = VERTICES_PER_SCALE;
+    private List<String> labels = Arrays.asList("Person", "Email", "Phone", "Address");
+    private List<String> edgeLabels = Arrays.asList("linkedTo", "sameAs");
+    private int properties = 8;
+    private int meanDegree = 5;
+    private Degree degree = Degree.POWER_LAW;
+    private long seed = 42;
+
+    /**
+     * Number of vertices to generate
+     */
+    public int getVertices() {
+        return vertices;
+    }
+    public SyntheticGraphGenerator setVertices(int vertices) {
+        this.vertices = Math.max(1, vertices);
+        return this;
+    }
+
+    /**
+     * Set the number of vertices as a multiple of {@link #VERTICES_PER_SCALE}
+     */
+    public SyntheticGraphGenerator setScale(double scale) {
+        return setVertices((int) Math.round(scale * VERTICES_PER_SCALE));
+    }
+
+    /**
+     * Vertex labels, which are assigned to vertices in turn
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+    public SyntheticGraphGenerator setLabels(List<String> labels) {
+        this.labels = new ArrayList<>(labels);
+        return this;
+    }
+
+    /**
+     * Edge labels, which are assigned to edges at random
+     */
+    public List<String> getEdgeLabels() {
+        return edgeLabels;
+    }
+    public SyntheticGraphGenerator setEdgeLabels(List<String> edgeLabels) {
+        this.edgeLabels = new ArrayList<>(edgeLabels);
+        return this;
+    }
+
+    /**
+     * Number of properties on each vertex
+     */
+    public int getProperties() {
+        return properties;
+    }
+    public SyntheticGraphGenerator setProperties(int properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    /**
+     * Mean out degree of each vertex
+     */
+    public int getMeanDegree() {
+        return meanDegree;
+    }
+    public SyntheticGraphGenerator setMeanDegree(int meanDegree) {
+        this.meanDegree = meanDegree;
+        return this;
+    }
+
+    /**
+     * Distribution of out degree between vertices
+     */
+    public Degree getDegree() {
+        return degree;
+    }
+    public SyntheticGraphGenerator setDegree(Degree degree) {
+        this.degree = degree;
+        return this;
+    }
+
+    /**
+     * Seed for the random numbers used to generate the graph
+     */
+    public long getSeed() {
+        return seed;
+    }
+    public SyntheticGraphGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generate a new TinkerGraph
+     */
+    public Graph generate() {
+        Graph graph = TinkerGraph.open();
+        generate(graph);
+
+        return graph;
+    }
+
+    /**
+     * Add the generated vertices and edges to graph
+     */
+    public void generate(Graph graph) {
+        Random random = new Random(seed);
+
+        List<Vertex> created = new ArrayList<>(vertices);
+        for (int i = 0; i < vertices; i++) {
+            Vertex v = graph.addVertex(T.label, labels.get(i % labels.size()));
+            for (int p = 0; p < properties; p++)
+                v.property("property" + p, value(random, p));
+
+            created.add(v);
+        }
+
+        for (Vertex v : created) {
+            int edges = degree == Degree.POWER_LAW ? powerLawDegree(random) : meanDegree;
+            for (int e = 0; e < edges; e++) {
+                Vertex target = created.get(target(random));
+                v.addEdge(edgeLabels.get(random.nextInt(edgeLabels.size())), target, "weight", random.nextInt(100));
+            }
+        }
+    }
+
+    private static Object value(Random random, int property) {
+        switch (property % 4) {
+            case 0:
+                return "value " + random.nextInt(1000000);
+            case 1:
+                return random.nextLong();
+            case 2:
+                return random.nextDouble() * 1000;
+            default:
+                return random.nextBoolean();
+        }
+    }
+
+    private int powerLawDegree(Random random) {
+        //Pareto distribution with shape 2, which has a mean of twice its minimum
+        double minimum = meanDegree / 2.0;
+        double sample = minimum / Math.sqrt(1.0 - random.nextDouble());
+
+        return (int) Math.min(vertices, Math.round(sample));
+    }
+
+    private int target(Random random) {
+        if (degree == Degree.UNIFORM)
+            return random.nextInt(vertices);
+
+        //Skew targets towards the first vertices, so that they become hubs
+        double r = random.nextDouble();
+        return (int) (vertices * r * r * r);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.TransformToElasticsearchOptions;
+import uk.gov.nca.graph.transform.loadtest.LoadTestHarness.Report;
+
+public class TransformToElasticsearchLoadTest {
+
+    private static final int VERTICES = 2000;
+    private static final int PEOPLE = VERTICES / 4;
+
+    @Test
+    public void testLoad() throws Exception {
+        Graph graph = new SyntheticGraphGenerator().setVertices(VERTICES).generate();
+
+        try (ElasticsearchStub stub = new ElasticsearchStub().setLatency(5).start()) {
+            Report report = LoadTestHarness.run(graph, stub, createOptions());
+
+            assertTrue(report.getResult().getFailures().toString(), report.getResult().isSuccessful());
+            assertEquals(VERTICES + PEOPLE, report.getDocuments());
+            //Every index is written to, so is recorded by the stub even if it wasn't created up front
+            assertEquals(new HashSet<>(Arrays.asList("raw_person", "raw_email", "raw_phone", "raw_address", "loadtest")), stub.getIndices());
+            assertTrue(report.getDocumentsPerSecond() > 0);
+            assertTrue(report.getPeakHeapBytes() > 0);
+        }
+
+        graph.close();
+    }
+
+    @Test
+    public void testRejections() throws Exception {
+        Graph graph = new SyntheticGraphGenerator().setVertices(VERTICES).generate();
+
+        try (ElasticsearchStub stub = new ElasticsearchStub().setRejectionRate(0.1).setRequestRejectionRate(0.1).start()) {
+            Report report = LoadTestHarness.run(graph, stub, createOptions().setBulkRetries(20).setBulkBackoff(1));
+
+            //Every rejected item and request should be retried until it succeeds
+            assertTrue(report.getResult().getFailures().toString(), report.getResult().isSuccessful());
+            assertEquals(VERTICES + PEOPLE, report.getDocuments());
+            assertTrue(report.getRejectedItems() > 0);
+            assertTrue(report.getResult().getCount("bulk.retriedItems") > 0);
+        }
+
+        graph.close();
+    }
+
+    private static TransformToElasticsearchOptions createOptions() {
+        return new TransformToElasticsearchOptions()
+            .setRawIndexPrefix("raw_")
+            .setBulkMaxActions(100)
+            .setBulkMinActions(10)
+            .setRules(Collections.singletonList(LoadTestRule.class.getName()));
+    }
+}
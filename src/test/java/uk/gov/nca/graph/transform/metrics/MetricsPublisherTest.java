@@ -0,0 +1,123 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import javax.management.ObjectName;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.TransformResult;
+
+public class MetricsPublisherTest {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(100, histogram.getMax());
+        assertEquals(50, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void testSnapshot() {
+        TransformResult result = new TransformResult();
+        result.increment("raw", 10);
+        result.recordLatency("bulk.latency", 20);
+        result.addGauge("queue", () -> 3);
+        result.addGauge("broken", () -> {
+            throw new IllegalStateException();
+        });
+
+        Map<String, Number> snapshot = MetricsPublisher.snapshot(result);
+        assertEquals(10L, snapshot.get("raw"));
+        assertEquals(3, snapshot.get("queue"));
+        assertEquals(1L, snapshot.get("bulk.latency.count"));
+        assertEquals(20L, snapshot.get("bulk.latency.p99"));
+        assertFalse(snapshot.containsKey("broken"));
+
+        result.removeGauge("queue");
+        assertFalse(MetricsPublisher.snapshot(result).containsKey("queue"));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        TransformResult result = new TransformResult();
+        result.increment("raw", 5);
+
+        MetricsPublisher publisher = MetricsPublisher.start("jmxtest", result, null, MetricsFormat.JSON, 1000);
+        try {
+            ObjectName name = ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName("uk.gov.nca.graph.transform:type=Transformation,*"), null).stream()
+                .filter(n -> n.getKeyProperty("name").contains("jmxtest"))
+                .findFirst().orElseThrow(AssertionError::new);
+
+            assertEquals(5L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "raw"));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testJsonFile() throws IOException {
+        Path file = Files.createTempFile("metrics", ".json");
+        TransformResult result = new TransformResult();
+
+        //Closing the publisher writes a final report
+        MetricsPublisher publisher = MetricsPublisher.start("jsontest", result, file, MetricsFormat.JSON, 60000);
+        result.increment("raw", 7);
+        publisher.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"timestamp\":\""));
+        assertTrue(lines.get(0).contains("\"raw\":7"));
+        assertTrue(lines.get(0).contains("\"raw.ratePerSecond\":"));
+
+        Files.delete(file);
+    }
+
+    @Test
+    public void testCsvFile() throws IOException {
+        Path file = Files.createTempFile("metrics", ".csv");
+        TransformResult result = new TransformResult();
+
+        MetricsPublisher publisher = MetricsPublisher.start("csvtest", result, file, MetricsFormat.CSV, 60000);
+        result.increment("raw", 7);
+        publisher.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals("timestamp,metric,value", lines.get(0));
+        assertTrue(lines.stream().anyMatch(l -> l.endsWith(",raw,7")));
+
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+
+public class VertexPartitionersTest {
+
+    @Test
+    public void testHash() throws Exception{
+        Graph graph = createGraph();
+
+        List<VertexPartition> partitions = VertexPartitioners.create("hash").partition(graph, 4);
+        assertEquals(4, partitions.size());
+
+        assertDisjointAndComplete(graph, partitions);
+
+        graph.close();
+    }
+
+    @Test
+    public void testLabel() throws Exception{
+        Graph graph = createGraph();
+
+        List<VertexPartition> partitions = VertexPartitioners.create("label").partition(graph, 4);
+        assertEquals(3, partitions.size());
+
+        assertDisjointAndComplete(graph, partitions);
+
+        graph.close();
+    }
+
+    @Test
+    public void testAuto() throws Exception{
+        Graph graph = createGraph();
+
+        assertTrue(VertexPartitioners.create(null) instanceof AutoVertexPartitioner);
+
+        //Enough labels, so partitioned by label
+        List<VertexPartition> partitions = VertexPartitioners.create("auto").partition(graph, 3);
+        assertEquals(3, partitions.size());
+        partitions.forEach(p -> assertTrue(p.getName().startsWith("label-")));
+        assertDisjointAndComplete(graph, partitions);
+
+        //Too few labels, so partitioned by hash
+        partitions = VertexPartitioners.create("auto").partition(graph, 4);
+        assertEquals(4, partitions.size());
+        partitions.forEach(p -> assertTrue(p.getName().startsWith("hash-")));
+        assertDisjointAndComplete(graph, partitions);
+
+        partitions = VertexPartitioners.create("auto").partition(graph, 1);
+        assertEquals(1, partitions.size());
+        assertDisjointAndComplete(graph, partitions);
+
+        graph.close();
+    }
+
+    @Test
+    public void testKnownLabels() throws Exception{
+        Graph graph = createGraph();
+        List<String> labels = Arrays.asList("Label0", "Label1", "Label2");
+
+        //The given labels are used, rather than being found again
+        List<VertexPartition> partitions = VertexPartitioners.create("auto").partition(graph, 3, labels);
+        assertEquals(Arrays.asList("label-Label0", "label-Label1", "label-Label2"), partitions.stream().map(VertexPartition::getName).collect(Collectors.toList()));
+        assertDisjointAndComplete(graph, partitions);
+
+        partitions = VertexPartitioners.create("auto").partition(graph, 4, labels);
+        assertEquals(4, partitions.size());
+        partitions.forEach(p -> assertTrue(p.getName().startsWith("hash-")));
+
+        partitions = VertexPartitioners.create("hash").partition(graph, 2, labels);
+        assertEquals(2, partitions.size());
+        assertDisjointAndComplete(graph, partitions);
+
+        graph.close();
+    }
+
+    private static Graph createGraph(){
+        Graph graph = TinkerGraph.open();
+        for(int i = 0; i < 100; i++)
+            graph.addVertex(T.label, "Label" + (i % 3), "index", i);
+
+        return graph;
+    }
+
+    private static void assertDisjointAndComplete(Graph graph, List<VertexPartition> partitions){
+        Set<Object> ids = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        long count = 0;
+
+        for(VertexPartition partition : partitions) {
+            assertTrue(names.add(partition.getName()));
+
+            List<Object> partitionIds = partition.traversal(graph.traversal()).id().toList();
+            ids.addAll(partitionIds);
+            count += partitionIds.size();
+        }
+
+        assertEquals(100, count);
+        assertEquals(100, ids.size());
+    }
+}
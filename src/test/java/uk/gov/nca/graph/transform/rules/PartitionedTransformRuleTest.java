@@ -0,0 +1,92 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import uk.gov.nca.graph.transform.partition.HashVertexPartitioner;
+import uk.gov.nca.graph.transform.partition.VertexPartition;
+
+public class PartitionedTransformRuleTest {
+
+    @Test
+    public void testTransform() {
+        Graph graph = createGraph();
+
+        Collection<Map<String, Object>> objects = new NameRule().transform(graph);
+        assertEquals(20, objects.size());
+    }
+
+    @Test
+    public void testPartitions() {
+        Graph graph = createGraph();
+        NameRule rule = new NameRule();
+
+        List<Object> names = new ArrayList<>();
+        for (VertexPartition partition : new HashVertexPartitioner().partition(graph, 4))
+            rule.transform(graph, partition, o -> names.add(o.get("name")));
+
+        //Each vertex should be transformed exactly once across all the partitions
+        assertEquals(20, names.size());
+        assertEquals(20, new HashSet<>(names).size());
+    }
+
+    private static Graph createGraph() {
+        Graph graph = TinkerGraph.open();
+        for (int i = 0; i < 20; i++)
+            graph.addVertex(T.label, "Person", "name", "Person " + i);
+        graph.addVertex(T.label, "Email", "identifier", "james@example.com");
+
+        return graph;
+    }
+
+    private static class NameRule implements PartitionedTransformRule {
+
+        @Override
+        public Set<String> getInputLabels() {
+            return Collections.singleton("Person");
+        }
+
+        @Override
+        public void transform(Graph graph, VertexPartition partition, Consumer<Map<String, Object>> sink) {
+            partition.restrict(graph.traversal().V().hasLabel("Person"))
+                .forEachRemaining(v -> sink.accept(Collections.singletonMap("name", v.value("name"))));
+        }
+
+        @Override
+        public String getIndex() {
+            return "people";
+        }
+
+        @Override
+        public String getType() {
+            return "person";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+National Crime Agency (c) Crown Copyright 2018
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package uk.gov.nca.graph.transform.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.junit.Test;
+
+public class VisitorTransformRuleTest {
+
+    @Test
+    public void testTransform() {
+        Graph graph = TinkerGraph.open();
+        Vertex vP1 = graph.addVertex(T.label, "Person", "name", "James");
+        Vertex vP2 = graph.addVertex(T.label, "Person", "name", "Simon");
+        Vertex vE = graph.addVertex(T.label, "Email", "identifier", "james@example.com");
+        vP1.addEdge("has", vE);
+
+        EmailCountRule rule = new EmailCountRule();
+        assertEquals(Collections.singleton("Person"), rule.getInputLabels());
+
+        Collection<Map<String, Object>> objects = rule.transform(graph);
+        assertEquals(3, objects.size());
+
+        Map<Object, Object> emailCounts = new HashMap<>();
+        objects.stream().filter(o -> o.containsKey("name")).forEach(o -> emailCounts.put(o.get("name"), o.get("emails")));
+        assertEquals(1L, emailCounts.get("James"));
+        assertEquals(0L, emailCounts.get("Simon"));
+
+        assertEquals(1L, objects.stream().filter(o -> o.containsKey("people")).findFirst().get().get("people"));
+    }
+
+    private static class EmailCountRule implements VisitorTransformRule {
+
+        private final AtomicLong peopleWithEmail = new AtomicLong();
+
+        @Override
+        public Set<String> getLabels() {
+            return Collections.singleton("Person");
+        }
+
+        @Override
+        public void visit(Vertex vertex, Consumer<Map<String, Object>> sink) {
+            long emails = IteratorUtils.count(vertex.vertices(Direction.OUT, "has"));
+            if (emails > 0)
+                peopleWithEmail.incrementAndGet();
+
+            Map<String, Object> obj = new HashMap<>();
+            obj.put("name", vertex.value("name"));
+            obj.put("emails", emails);
+            sink.accept(obj);
+        }
+
+        @Override
+        public void finish(Consumer<Map<String, Object>> sink) {
+            sink.accept(Collections.singletonMap("people", peopleWithEmail.get()));
+        }
+
+        @Override
+        public String getIndex() {
+            return "people";
+        }
+
+        @Override
+        public String getType() {
+            return "person";
+        }
+    }
+}